@@ -0,0 +1,27 @@
+package rezide.staffmode.discord;
+
+import rezide.staffmode.NotificationSink;
+import rezide.staffmode.NotificationSinkProvider;
+import rezide.staffmode.StaffModeConfig;
+
+/**
+ * Registered under the {@code staff-mode:notification-sink} entrypoint. Only {@link #create()} touches
+ * JDA, so JDA classes are not loaded while the bot token is unset.
+ */
+public class DiscordNotificationSinkProvider implements NotificationSinkProvider {
+
+    @Override
+    public String getName() {
+        return "Discord";
+    }
+
+    @Override
+    public boolean isEnabled(StaffModeConfig config) {
+        return !config.isWebhookTransport() && config.isDiscordBotTokenSet();
+    }
+
+    @Override
+    public NotificationSink create() {
+        return new JdaNotificationSink(StaffModeConfig.getInstance().getDiscordBotToken());
+    }
+}
@@ -0,0 +1,168 @@
+package rezide.staffmode.discord;
+
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.JDABuilder;
+import net.dv8tion.jda.api.entities.Activity;
+import net.dv8tion.jda.api.entities.channel.concrete.TextChannel;
+import net.dv8tion.jda.api.utils.cache.CacheFlag;
+import rezide.staffmode.DiscordBotManager;
+import rezide.staffmode.NotificationSink;
+import rezide.staffmode.StaffMode;
+import rezide.staffmode.StaffModeConfig;
+import rezide.staffmode.StaffModeEvents;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Delivers messages to Discord text channels through a JDA bot.
+ */
+public class JdaNotificationSink implements NotificationSink {
+
+    private volatile JDA jda;
+    private volatile String botToken;
+    private volatile Runnable onReady;
+
+    // Messages queued to Discord that have not been acknowledged yet, so shutdown can wait for them
+    private final Set<CompletableFuture<?>> pendingMessages = ConcurrentHashMap.newKeySet();
+
+    public JdaNotificationSink(String botToken) {
+        this.botToken = botToken;
+    }
+
+    @Override
+    public boolean isConnected() {
+        JDA current = jda;
+        return current != null && current.getStatus() == JDA.Status.CONNECTED;
+    }
+
+    @Override
+    public void start(Runnable onReady) {
+        this.onReady = onReady;
+        connectBot(true);
+    }
+
+    /**
+     * Connects JDA on a background thread.
+     *
+     * @param initialStartup Whether to run the ready callback (server start message) once connected
+     *                       (false when reconnecting after a config change).
+     */
+    private void connectBot(boolean initialStartup) {
+        String token = botToken;
+        new Thread(() -> {
+            try {
+                jda = JDABuilder.createDefault(token)
+                        .disableCache(CacheFlag.MEMBER_OVERRIDES, CacheFlag.VOICE_STATE)
+                        .setActivity(Activity.playing("Starting up..."))
+                        .addEventListeners(new StaffSlashCommands())
+                        .build();
+                jda.awaitReady(); // This line blocks until the bot is connected and ready
+                StaffMode.LOGGER.info("Discord Bot is online!");
+                DiscordBotManager.logToFile("Discord Bot is online!"); // Log to file
+                StaffSlashCommands.register(jda);
+
+                if (initialStartup && onReady != null) {
+                    onReady.run();
+                } else {
+                    updatePresence(DiscordBotManager.currentPlayerCount.get());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                StaffMode.LOGGER.error("Discord Bot connection interrupted: {}", e.getMessage());
+                DiscordBotManager.logToFile("Discord Bot connection interrupted: " + e.getMessage()); // Log to file
+            } catch (Exception e) {
+                StaffMode.LOGGER.error("Error starting Discord Bot: {}", e.getMessage());
+                DiscordBotManager.logToFile("Error starting Discord Bot: " + e.getMessage()); // Log to file
+            }
+        }, "DiscordBot-ConnectThread").start();
+    }
+
+    @Override
+    public void onConfigReloaded(StaffModeConfig previous, StaffModeConfig current) {
+        if (!previous.getDiscordBotToken().equals(current.getDiscordBotToken())) {
+            StaffMode.LOGGER.info("Discord bot token changed in config. Reconnecting Discord Bot...");
+            DiscordBotManager.logToFile("Discord bot token changed in config. Reconnecting Discord Bot..."); // Log to file
+            JDA previousJda = jda;
+            jda = null;
+            if (previousJda != null) {
+                previousJda.shutdown();
+            }
+            botToken = current.getDiscordBotToken();
+            connectBot(false);
+        }
+    }
+
+    @Override
+    public void stop() {
+        JDA current = jda;
+        jda = null;
+        if (current != null) {
+            StaffMode.LOGGER.info("Shutting down Discord Bot...");
+            DiscordBotManager.logToFile("Shutting down Discord Bot..."); // Log to file
+            current.shutdownNow(); // Use shutdownNow for faster exit
+            StaffMode.LOGGER.info("Discord Bot offline.");
+            DiscordBotManager.logToFile("Discord Bot offline."); // Log to file
+        }
+    }
+
+    @Override
+    public void updatePresence(int playerCount) {
+        JDA current = jda;
+        if (current != null && current.getStatus() == JDA.Status.CONNECTED) {
+            current.getPresence().setActivity(Activity.playing("Players: " + playerCount));
+        }
+    }
+
+    @Override
+    public void sendMessage(long channelId, String message) {
+        JDA current = jda;
+        TextChannel channel = current != null ? current.getTextChannelById(channelId) : null;
+        if (channel == null) {
+            DiscordBotManager.reportDeliveryFailure(channelId, "Unknown text channel");
+            return;
+        }
+
+        StaffModeEvents.DiscordDispatch dispatchEvent = new StaffModeEvents.DiscordDispatch();
+        dispatchEvent.channelId = channelId;
+        dispatchEvent.begin();
+        CompletableFuture<?> future = channel
+                .sendMessage(message)
+                .submit()
+                .whenComplete((sent, throwable) -> {
+                    dispatchEvent.success = throwable == null;
+                    dispatchEvent.commit();
+                    if (throwable != null) {
+                        DiscordBotManager.reportDeliveryFailure(channelId, throwable.getMessage());
+                    }
+                });
+        pendingMessages.add(future);
+        future.whenComplete((sent, throwable) -> pendingMessages.remove(future));
+    }
+
+    /**
+     * Waits until every queued Discord message has been acknowledged, or the timeout elapses.
+     */
+    @Override
+    public void flush(long timeoutMs) {
+        if (pendingMessages.isEmpty()) {
+            return;
+        }
+        try {
+            CompletableFuture.allOf(pendingMessages.toArray(new CompletableFuture[0])).get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            StaffMode.LOGGER.warn("Interrupted while waiting for Discord 'Server Stopping' message to send.");
+            DiscordBotManager.logToFile("Interrupted while waiting for Discord 'Server Stopping' message to send."); // Log to file
+        } catch (TimeoutException e) {
+            StaffMode.LOGGER.warn("Timed out waiting for {} Discord message(s) to send.", pendingMessages.size());
+            DiscordBotManager.logToFile(String.format("Timed out waiting for %d Discord message(s) to send.", pendingMessages.size())); // Log to file
+        } catch (ExecutionException e) {
+            // Individual failures are already logged by sendMessage
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package rezide.staffmode.discord;
+
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.Permission;
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.entities.Member;
+import net.dv8tion.jda.api.entities.Role;
+import net.dv8tion.jda.api.entities.channel.concrete.TextChannel;
+import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
+import net.dv8tion.jda.api.hooks.ListenerAdapter;
+import net.dv8tion.jda.api.interactions.InteractionContextType;
+import net.dv8tion.jda.api.interactions.commands.DefaultMemberPermissions;
+import net.dv8tion.jda.api.interactions.commands.OptionMapping;
+import net.dv8tion.jda.api.interactions.commands.OptionType;
+import net.dv8tion.jda.api.interactions.commands.build.Commands;
+import net.dv8tion.jda.api.interactions.commands.build.OptionData;
+import net.dv8tion.jda.api.utils.MarkdownSanitizer;
+import rezide.staffmode.DiscordBotManager;
+import rezide.staffmode.StaffMode;
+import rezide.staffmode.StaffModeConfig;
+import rezide.staffmode.StaffStateView;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Slash commands for moderators who are not in game: {@code /staffstatus}, {@code /history <player>}
+ * and {@code /restore <player> <index> [part]}. Queries are answered on the JDA event thread from
+ * {@link StaffStateView}; restores are queued to the server thread and reply when they are done.
+ * {@code /restore} picks the snapshot the index referred to in the moderator's last {@code /history}
+ * of that player, since newer snapshots shift the indexes.
+ * <p>
+ * The commands are registered in the guild of the admin log channel only, and only members with one of
+ * the configured {@code discordCommandRoleIds} may use them. The default permissions just hide them from
+ * everyone else in the client.
+ */
+public class StaffSlashCommands extends ListenerAdapter {
+
+    // Discord rejects messages longer than this
+    private static final int MAX_MESSAGE_LENGTH = 2000;
+
+    private record ListedHistory(UUID playerUuid, List<StaffStateView.HistoryEntry> entries) {
+    }
+
+    // The history each moderator was last shown, by Discord user ID
+    private final Map<Long, ListedHistory> listedHistories = new ConcurrentHashMap<>();
+
+    /**
+     * Registers the commands in the admin log channel's guild and removes any global commands left by
+     * older versions.
+     */
+    public static void register(JDA jda) {
+        jda.updateCommands().queue(null, throwable -> StaffMode.LOGGER.warn("Failed to remove global Discord slash commands: {}", throwable.getMessage()));
+
+        Guild guild = getCommandGuild(jda);
+        if (guild == null) {
+            StaffMode.LOGGER.warn("Admin log channel not found, Discord slash commands are not registered.");
+            DiscordBotManager.logToFile("Admin log channel not found, Discord slash commands are not registered."); // Log to file
+            return;
+        }
+        if (StaffModeConfig.getInstance().getDiscordCommandRoleIds().isEmpty()) {
+            StaffMode.LOGGER.warn("discordCommandRoleIds is empty, nobody can use the Discord slash commands.");
+        }
+        guild.updateCommands().addCommands(
+                Commands.slash("staffstatus", "Show who is in staff mode")
+                        .setContexts(InteractionContextType.GUILD)
+                        .setDefaultPermissions(DefaultMemberPermissions.enabledFor(Permission.MODERATE_MEMBERS)),
+                Commands.slash("history", "List a player's inventory history")
+                        .addOption(OptionType.STRING, "player", "Minecraft player name", true)
+                        .setContexts(InteractionContextType.GUILD)
+                        .setDefaultPermissions(DefaultMemberPermissions.enabledFor(Permission.MODERATE_MEMBERS)),
+                Commands.slash("restore", "Restore a player's inventory from their history")
+                        .addOption(OptionType.STRING, "player", "Minecraft player name", true)
+                        .addOption(OptionType.INTEGER, "index", "History index from /history", true)
+                        .addOptions(restorePartOption())
+                        .setContexts(InteractionContextType.GUILD)
+                        .setDefaultPermissions(DefaultMemberPermissions.enabledFor(Permission.ADMINISTRATOR))
+        ).queue(
+                commands -> StaffMode.LOGGER.info("Registered {} Discord slash commands in {}.", commands.size(), guild.getName()),
+                throwable -> {
+                    StaffMode.LOGGER.error("Failed to register Discord slash commands: {}", throwable.getMessage());
+                    DiscordBotManager.logToFile("Failed to register Discord slash commands: " + throwable.getMessage()); // Log to file
+                });
+    }
+
+    private static OptionData restorePartOption() {
+        OptionData option = new OptionData(OptionType.STRING, "part", "What to restore (default: inventory)", false);
+        for (String part : StaffStateView.getRestoreParts()) {
+            option.addChoice(part, part);
+        }
+        return option;
+    }
+
+    private static Guild getCommandGuild(JDA jda) {
+        TextChannel adminLogChannel = jda.getTextChannelById(StaffModeConfig.getInstance().getAdminLogChannelId());
+        return adminLogChannel != null ? adminLogChannel.getGuild() : null;
+    }
+
+    // Checked on every event: the config can change after the commands were registered
+    private static boolean isAllowed(SlashCommandInteractionEvent event) {
+        Guild guild = getCommandGuild(event.getJDA());
+        Member member = event.getMember();
+        if (guild == null || event.getGuild() == null || event.getGuild().getIdLong() != guild.getIdLong() || member == null) {
+            return false;
+        }
+        List<Long> roleIds = StaffModeConfig.getInstance().getDiscordCommandRoleIds();
+        for (Role role : member.getRoles()) {
+            if (roleIds.contains(role.getIdLong())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void onSlashCommandInteraction(SlashCommandInteractionEvent event) {
+        if (!isAllowed(event)) {
+            event.reply("You are not allowed to use this command here.").setEphemeral(true).queue();
+            return;
+        }
+        switch (event.getName()) {
+            case "staffstatus" -> event.reply(truncate(formatStaffStatus())).setEphemeral(true).queue();
+            case "history" -> event.reply(truncate(formatHistory(event.getUser().getIdLong(), event.getOption("player", OptionMapping::getAsString)))).setEphemeral(true).queue();
+            case "restore" -> restore(event);
+            default -> {
+            }
+        }
+    }
+
+    private static String formatStaffStatus() {
+        List<StaffStateView.StaffEntry> staff = StaffStateView.getStaff();
+        StringBuilder message = new StringBuilder();
+        message.append(String.format("**Players online:** %d%n", StaffStateView.getPlayerCount()));
+        if (staff.isEmpty()) {
+            return message.append("Nobody is in staff mode.").toString();
+        }
+        message.append(String.format("**In staff mode (%d):**%n", staff.size()));
+        for (StaffStateView.StaffEntry entry : staff) {
+            message.append("- **").append(MarkdownSanitizer.escape(entry.name())).append("**");
+            if (!entry.online()) {
+                message.append(" (offline)");
+            }
+            if (entry.sessionId() > 0) {
+                message.append(String.format(", session #%d since <t:%d:R>", entry.sessionId(), entry.sessionStart() / 1000L));
+            }
+            if (entry.deadline() > 0) {
+                message.append(String.format(", ends <t:%d:R>", entry.deadline() / 1000L));
+            }
+            message.append('\n');
+        }
+        return message.toString();
+    }
+
+    private String formatHistory(long userId, String playerName) {
+        UUID uuid = StaffStateView.resolvePlayer(playerName);
+        if (uuid == null) {
+            return "Player `" + playerName + "` not found.";
+        }
+        List<StaffStateView.HistoryEntry> history = StaffStateView.getHistory(uuid);
+        if (history.isEmpty()) {
+            return "No inventory history found for `" + playerName + "`.";
+        }
+        listedHistories.put(userId, new ListedHistory(uuid, history));
+        StringBuilder message = new StringBuilder(String.format("**Inventory history for %s:**%n", MarkdownSanitizer.escape(playerName)));
+        for (StaffStateView.HistoryEntry entry : history) {
+            message.append(String.format("`[%d]` %s `%s` (%d stacks)", entry.index(), entry.timestamp(), entry.reason(), entry.stacks()));
+            if (entry.duplicates() > 0) {
+                message.append(String.format(" +%d identical", entry.duplicates()));
+            }
+            message.append('\n');
+        }
+        message.append(String.format("Use `/restore %s <index>` to restore.", playerName));
+        return message.toString();
+    }
+
+    private void restore(SlashCommandInteractionEvent event) {
+        String playerName = event.getOption("player", OptionMapping::getAsString);
+        Integer index = event.getOption("index", OptionMapping::getAsInt);
+        if (playerName == null || index == null) {
+            event.reply("Both player and index are required.").setEphemeral(true).queue();
+            return;
+        }
+        UUID uuid = StaffStateView.resolvePlayer(playerName);
+        if (uuid == null) {
+            event.reply("Player `" + playerName + "` not found.").setEphemeral(true).queue();
+            return;
+        }
+        // Without an earlier /history of this player, the index is taken from the history as it is now
+        ListedHistory listed = listedHistories.get(event.getUser().getIdLong());
+        List<StaffStateView.HistoryEntry> history = listed != null && listed.playerUuid().equals(uuid) ? listed.entries() : StaffStateView.getHistory(uuid);
+        if (index < 0 || index >= history.size()) {
+            event.reply("Invalid history index for `" + playerName + "`. Use `/history " + playerName + "` to list them.").setEphemeral(true).queue();
+            return;
+        }
+        String part = event.getOption("part", "inventory", OptionMapping::getAsString);
+        String requestedBy = event.getUser().getName() + " (via Discord)";
+        event.deferReply(true).queue();
+        // Follow-ups go through the interaction hook, which stays valid for 15 minutes
+        StaffStateView.requestRestore(playerName, history.get(index), part, requestedBy,
+                message -> event.getHook().sendMessage(truncate(stripFormatting(message))).setEphemeral(true).queue());
+    }
+
+    private static String stripFormatting(String message) {
+        return message.replaceAll("§.", "");
+    }
+
+    private static String truncate(String message) {
+        return message.length() <= MAX_MESSAGE_LENGTH ? message : message.substring(0, MAX_MESSAGE_LENGTH - 3) + "...";
+    }
+}
@@ -0,0 +1,384 @@
+package rezide.staffmode.sql;
+
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.NbtSizeTracker;
+import org.sqlite.SQLiteConfig;
+import rezide.staffmode.StaffMode;
+import rezide.staffmode.StaffStateStore;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Staff mode state in an SQLite database file. Several servers on the same machine can open the same
+ * file: each row carries the ID of the server that wrote it, a server only loads and replaces its own
+ * rows, and a row is handed to another server by {@link #claimStaffData} with a compare-and-set on
+ * that ID. Values are the same compressed NBT the file store writes.
+ * <p>
+ * The database runs in WAL mode, so readers do not block the writer, and write transactions start
+ * immediately and wait up to {@link #BUSY_TIMEOUT_MS} for another server's transaction to finish.
+ * Saves only queue their data and return: the {@code StaffMode-SqliteWriter} thread writes it, the
+ * latest staff data and history of each player replacing older ones still queued, and retries up to
+ * {@link #MAX_WRITE_ATTEMPTS} times when the database stays busy. Loads, lookups and claims run on the
+ * caller's thread within the same short timeout. One connection is used per server; database access
+ * is synchronized on the store.
+ * <p>
+ * Rows are stamped with a strictly increasing time, so a queued staff data save only deletes rows
+ * written before it was queued and never a row claimed after it.
+ */
+class SqliteStaffStateStore implements StaffStateStore {
+
+    private static final int BUSY_TIMEOUT_MS = 250;
+    private static final long WRITE_DELAY_MS = 100;
+    private static final long RETRY_DELAY_MS = 1000;
+    private static final int MAX_WRITE_ATTEMPTS = 5;
+    private static final NbtCompound DELETE = new NbtCompound(); // Queued value of a deleted history
+
+    private final String serverId;
+    private final Connection connection;
+    private final ScheduledExecutorService writer;
+    private final AtomicLong lastStamp = new AtomicLong(); // See nextStamp()
+
+    // Queued writes; guarded by pendingHistories, like the fields below it
+    private final Map<UUID, NbtCompound> pendingHistories = new LinkedHashMap<>();
+    private Map<UUID, NbtCompound> pendingStaffData;
+    private long pendingStaffDataStamp;
+    private boolean writeScheduled;
+    private int failedAttempts;
+    private boolean closed;
+
+    private final PreparedStatement selectOwnStaff;
+    private final PreparedStatement selectStaff;
+    private final PreparedStatement deleteOwnStaff;
+    private final PreparedStatement upsertStaff;
+    private final PreparedStatement claimStaff;
+    private final PreparedStatement selectOwnHistories;
+    private final PreparedStatement upsertHistory;
+    private final PreparedStatement deleteHistory;
+
+    SqliteStaffStateStore(Path databaseFile, String serverId) throws IOException {
+        this.serverId = serverId;
+        this.writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "StaffMode-SqliteWriter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Path parent = databaseFile.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+
+        SQLiteConfig config = new SQLiteConfig();
+        config.setJournalMode(SQLiteConfig.JournalMode.WAL);
+        config.setSynchronous(SQLiteConfig.SynchronousMode.NORMAL); // Durable across crashes of the server, not of the OS
+        config.setBusyTimeout(BUSY_TIMEOUT_MS);
+        config.setTransactionMode(SQLiteConfig.TransactionMode.IMMEDIATE);
+        try {
+            connection = config.createConnection("jdbc:sqlite:" + databaseFile.toAbsolutePath());
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate("CREATE TABLE IF NOT EXISTS staff_state ("
+                        + "uuid TEXT PRIMARY KEY, server_id TEXT NOT NULL, data BLOB NOT NULL, updated_at INTEGER NOT NULL)");
+                statement.executeUpdate("CREATE INDEX IF NOT EXISTS staff_state_server_id ON staff_state (server_id)");
+                // Every server keeps its own histories; the key also serves lookups by server
+                statement.executeUpdate("CREATE TABLE IF NOT EXISTS inventory_history ("
+                        + "server_id TEXT NOT NULL, uuid TEXT NOT NULL, data BLOB NOT NULL, updated_at INTEGER NOT NULL, "
+                        + "PRIMARY KEY (server_id, uuid))");
+            }
+
+            selectOwnStaff = connection.prepareStatement("SELECT uuid, data FROM staff_state WHERE server_id = ?");
+            selectStaff = connection.prepareStatement("SELECT server_id, data FROM staff_state WHERE uuid = ?");
+            deleteOwnStaff = connection.prepareStatement("DELETE FROM staff_state WHERE server_id = ? AND updated_at < ?");
+            // A row another server claimed in the meantime is left alone
+            upsertStaff = connection.prepareStatement("INSERT INTO staff_state (uuid, server_id, data, updated_at) VALUES (?, ?, ?, ?) "
+                    + "ON CONFLICT (uuid) DO UPDATE SET data = excluded.data, updated_at = excluded.updated_at "
+                    + "WHERE staff_state.server_id = excluded.server_id");
+            claimStaff = connection.prepareStatement("UPDATE staff_state SET server_id = ?, updated_at = ? WHERE uuid = ? AND server_id = ?");
+            selectOwnHistories = connection.prepareStatement("SELECT uuid, data FROM inventory_history WHERE server_id = ?");
+            upsertHistory = connection.prepareStatement("INSERT INTO inventory_history (server_id, uuid, data, updated_at) VALUES (?, ?, ?, ?) "
+                    + "ON CONFLICT (server_id, uuid) DO UPDATE SET data = excluded.data, updated_at = excluded.updated_at");
+            deleteHistory = connection.prepareStatement("DELETE FROM inventory_history WHERE server_id = ? AND uuid = ?");
+        } catch (SQLException e) {
+            close();
+            throw new IOException("Failed to open " + databaseFile + ": " + e.getMessage(), e);
+        }
+        StaffMode.LOGGER.info("Opened SQLite state store {}.", databaseFile.toAbsolutePath());
+    }
+
+    @Override
+    public String getName() {
+        return "sqlite";
+    }
+
+    @Override
+    public synchronized Map<UUID, NbtCompound> loadStaffData() throws IOException {
+        return selectByUuid(selectOwnStaff, "staff_state");
+    }
+
+    /**
+     * Queues the entries for the writer thread and returns. Write failures are logged by the writer.
+     */
+    @Override
+    public void saveStaffData(Map<UUID, NbtCompound> entries) {
+        synchronized (pendingHistories) {
+            pendingStaffData = new HashMap<>(entries);
+            pendingStaffDataStamp = nextStamp();
+            scheduleWrite(WRITE_DELAY_MS);
+        }
+    }
+
+    @Override
+    public synchronized SharedEntry findStaffData(UUID playerUuid) throws IOException {
+        try {
+            selectStaff.setString(1, playerUuid.toString());
+            try (ResultSet resultSet = selectStaff.executeQuery()) {
+                if (!resultSet.next()) {
+                    return null;
+                }
+                return new SharedEntry(resultSet.getString(1), decode(resultSet.getBytes(2)));
+            }
+        } catch (SQLException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public synchronized boolean claimStaffData(UUID playerUuid, String fromServerId) throws IOException {
+        try {
+            claimStaff.setString(1, serverId);
+            claimStaff.setLong(2, nextStamp());
+            claimStaff.setString(3, playerUuid.toString());
+            claimStaff.setString(4, fromServerId);
+            return claimStaff.executeUpdate() == 1;
+        } catch (SQLException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public synchronized Map<UUID, NbtCompound> loadHistories() throws IOException {
+        return selectByUuid(selectOwnHistories, "inventory_history");
+    }
+
+    @Override
+    public void saveHistory(UUID playerUuid, NbtCompound history) {
+        saveHistories(Collections.singletonMap(playerUuid, history));
+    }
+
+    /**
+     * Queues the histories for the writer thread and returns. Write failures are logged by the writer.
+     */
+    @Override
+    public void saveHistories(Map<UUID, NbtCompound> histories) {
+        synchronized (pendingHistories) {
+            for (Map.Entry<UUID, NbtCompound> entry : histories.entrySet()) {
+                pendingHistories.put(entry.getKey(), entry.getValue() != null ? entry.getValue() : DELETE);
+            }
+            scheduleWrite(WRITE_DELAY_MS);
+        }
+    }
+
+    // Guarded by pendingHistories
+    private void scheduleWrite(long delayMs) {
+        if (closed || writeScheduled) {
+            return; // close() writes what is still queued
+        }
+        writeScheduled = true;
+        writer.schedule(this::writePending, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void writePending() {
+        Map<UUID, NbtCompound> staffData;
+        long staffDataStamp;
+        Map<UUID, NbtCompound> histories;
+        synchronized (pendingHistories) {
+            writeScheduled = false;
+            staffData = pendingStaffData;
+            staffDataStamp = pendingStaffDataStamp;
+            histories = new LinkedHashMap<>(pendingHistories);
+            pendingStaffData = null;
+            pendingHistories.clear();
+        }
+        if (staffData == null && histories.isEmpty()) {
+            return;
+        }
+        try {
+            synchronized (this) {
+                if (staffData != null) {
+                    writeStaffData(staffData, staffDataStamp);
+                }
+                if (!histories.isEmpty()) {
+                    writeHistories(histories);
+                }
+            }
+            synchronized (pendingHistories) {
+                failedAttempts = 0;
+            }
+        } catch (IOException e) {
+            synchronized (pendingHistories) {
+                if (closed || ++failedAttempts >= MAX_WRITE_ATTEMPTS) {
+                    StaffMode.LOGGER.error("Failed to write to the SQLite state store, dropping the queued writes: {}", e.getMessage());
+                    failedAttempts = 0;
+                    return;
+                }
+                StaffMode.LOGGER.warn("Failed to write to the SQLite state store, retrying: {}", e.getMessage());
+                // Requeued behind anything saved meanwhile, which is newer
+                if (staffData != null && pendingStaffData == null) {
+                    pendingStaffData = staffData;
+                    pendingStaffDataStamp = staffDataStamp;
+                }
+                for (Map.Entry<UUID, NbtCompound> entry : histories.entrySet()) {
+                    pendingHistories.putIfAbsent(entry.getKey(), entry.getValue());
+                }
+                scheduleWrite(RETRY_DELAY_MS);
+            }
+        }
+    }
+
+    private void writeStaffData(Map<UUID, NbtCompound> entries, long stamp) throws IOException {
+        inTransaction(() -> {
+            deleteOwnStaff.setString(1, serverId);
+            deleteOwnStaff.setLong(2, stamp);
+            deleteOwnStaff.executeUpdate();
+            for (Map.Entry<UUID, NbtCompound> entry : entries.entrySet()) {
+                upsertStaff.setString(1, entry.getKey().toString());
+                upsertStaff.setString(2, serverId);
+                upsertStaff.setBytes(3, encode(entry.getValue()));
+                upsertStaff.setLong(4, stamp);
+                upsertStaff.addBatch();
+            }
+            upsertStaff.executeBatch();
+        });
+    }
+
+    private void writeHistories(Map<UUID, NbtCompound> histories) throws IOException {
+        inTransaction(() -> {
+            long now = System.currentTimeMillis();
+            boolean deletes = false;
+            boolean upserts = false;
+            for (Map.Entry<UUID, NbtCompound> entry : histories.entrySet()) {
+                if (entry.getValue() == DELETE) {
+                    deleteHistory.setString(1, serverId);
+                    deleteHistory.setString(2, entry.getKey().toString());
+                    deleteHistory.addBatch();
+                    deletes = true;
+                } else {
+                    upsertHistory.setString(1, serverId);
+                    upsertHistory.setString(2, entry.getKey().toString());
+                    upsertHistory.setBytes(3, encode(entry.getValue()));
+                    upsertHistory.setLong(4, now);
+                    upsertHistory.addBatch();
+                    upserts = true;
+                }
+            }
+            if (deletes) {
+                deleteHistory.executeBatch();
+            }
+            if (upserts) {
+                upsertHistory.executeBatch();
+            }
+        });
+    }
+
+    /**
+     * Waits for the writer thread and writes what is still queued, then closes the connection.
+     */
+    @Override
+    public void close() {
+        synchronized (pendingHistories) {
+            closed = true;
+        }
+        writer.shutdown();
+        try {
+            writer.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (connection == null) {
+            return;
+        }
+        writePending(); // Not retried once closed
+        synchronized (this) {
+            try {
+                connection.close(); // Also closes the prepared statements
+            } catch (SQLException e) {
+                StaffMode.LOGGER.error("Failed to close the SQLite state store: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return A time in milliseconds greater than every one returned before, to order this server's rows.
+     */
+    private long nextStamp() {
+        return lastStamp.accumulateAndGet(System.currentTimeMillis(), (last, now) -> Math.max(now, last + 1));
+    }
+
+    private Map<UUID, NbtCompound> selectByUuid(PreparedStatement select, String table) throws IOException {
+        Map<UUID, NbtCompound> entries = new HashMap<>();
+        try {
+            select.setString(1, serverId);
+            try (ResultSet resultSet = select.executeQuery()) {
+                while (resultSet.next()) {
+                    String uuid = resultSet.getString(1);
+                    try {
+                        entries.put(UUID.fromString(uuid), decode(resultSet.getBytes(2)));
+                    } catch (IOException | IllegalArgumentException e) {
+                        StaffMode.LOGGER.error("Skipping unreadable {} row of {}: {}", table, uuid, e.getMessage());
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+        return entries;
+    }
+
+    private interface Work {
+        void run() throws SQLException, IOException;
+    }
+
+    private void inTransaction(Work work) throws IOException {
+        try {
+            connection.setAutoCommit(false);
+            try {
+                work.run();
+                connection.commit();
+            } catch (SQLException | IOException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    private static byte[] encode(NbtCompound nbt) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        NbtIo.writeCompressed(nbt, out);
+        return out.toByteArray();
+    }
+
+    private static NbtCompound decode(byte[] bytes) throws IOException {
+        return NbtIo.readCompressed(new ByteArrayInputStream(bytes), NbtSizeTracker.ofUnlimitedBytes());
+    }
+}
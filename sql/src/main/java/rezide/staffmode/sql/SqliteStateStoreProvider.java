@@ -0,0 +1,25 @@
+package rezide.staffmode.sql;
+
+import rezide.staffmode.StaffModeConfig;
+import rezide.staffmode.StaffStateStore;
+import rezide.staffmode.StaffStateStoreProvider;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Registered under the {@code staff-mode:state-store} entrypoint. Only {@link #create} touches the
+ * SQLite driver, so its native library is not loaded unless {@code stateStore} is {@code "sqlite"}.
+ */
+public class SqliteStateStoreProvider implements StaffStateStoreProvider {
+
+    @Override
+    public String getName() {
+        return "sqlite";
+    }
+
+    @Override
+    public StaffStateStore create(StaffModeConfig config, String serverId) throws IOException {
+        return new SqliteStaffStateStore(Path.of(config.getSqlStorePath()), serverId);
+    }
+}
@@ -0,0 +1,69 @@
+package rezide.staffmode.gametest;
+
+import net.minecraft.server.MinecraftServer;
+import rezide.staffmode.StaffMode;
+import rezide.staffmode.StaffModePerf;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Collects per-phase timings and allocation counts of the load test and prints them at the end
+class LoadTestReport {
+	private static final Path REPORT_FILE = Paths.get("staff-mode-loadtest-report.txt");
+
+	private final int players;
+	private final long initialDataBytes;
+	private final Map<String, long[]> phases = new LinkedHashMap<>(); // name -> {ticks, total nanos, max nanos, allocated bytes}
+
+	LoadTestReport(int players, long initialDataBytes) {
+		this.players = players;
+		this.initialDataBytes = initialDataBytes;
+	}
+
+	void measure(String phase, Runnable work) {
+		long allocatedBefore = StaffModeLoadTest.currentThreadAllocatedBytes();
+		long start = System.nanoTime();
+		work.run();
+		long elapsed = System.nanoTime() - start;
+		long allocated = StaffModeLoadTest.currentThreadAllocatedBytes() - allocatedBefore;
+
+		long[] stats = phases.computeIfAbsent(phase, k -> new long[4]);
+		stats[0]++;
+		stats[1] += elapsed;
+		stats[2] = Math.max(stats[2], elapsed);
+		stats[3] += allocated;
+	}
+
+	void finish(MinecraftServer server, RecordingNotificationSink sink, long finalDataBytes) {
+		List<String> lines = new ArrayList<>();
+		lines.add(String.format("Staff Mode load test: %d players", players));
+		for (Map.Entry<String, long[]> entry : phases.entrySet()) {
+			long[] stats = entry.getValue();
+			lines.add(String.format("  %-16s ticks=%d avg=%.2fms max=%.2fms allocated=%.1fMB (%.1fKB/player/tick)",
+					entry.getKey(), stats[0], stats[1] / (double) stats[0] / 1_000_000.0, stats[2] / 1_000_000.0,
+					stats[3] / 1024.0 / 1024.0, stats[3] / 1024.0 / players / stats[0]));
+		}
+		lines.add(String.format("  server average tick: %.2fms", server.getAverageNanosPerTick() / 1_000_000.0));
+		lines.add(String.format("  staff mode data on disk: %d -> %d bytes, saveData calls=%d, snapshots=%d",
+				initialDataBytes, finalDataBytes,
+				StaffModePerf.getCallCount(StaffModePerf.Probe.SAVE_DATA),
+				StaffModePerf.getCallCount(StaffModePerf.Probe.ADD_INVENTORY_SNAPSHOT)));
+		lines.add(String.format("  notifications: %d messages, %d characters", sink.getMessages(), sink.getCharacters()));
+		lines.addAll(StaffModePerf.report().stream().map(line -> "  " + line.replaceAll("§.", "")).toList());
+
+		for (String line : lines) {
+			StaffMode.LOGGER.info(line);
+		}
+		try {
+			Files.write(REPORT_FILE, lines);
+		} catch (IOException e) {
+			StaffMode.LOGGER.error("Failed to write load test report: {}", e.getMessage());
+		}
+	}
+}
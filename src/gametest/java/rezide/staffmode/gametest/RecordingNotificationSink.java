@@ -0,0 +1,25 @@
+package rezide.staffmode.gametest;
+
+import rezide.staffmode.NotificationSink;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Local stand-in for Discord: counts what would have been sent
+class RecordingNotificationSink implements NotificationSink {
+	private final AtomicLong messages = new AtomicLong();
+	private final AtomicLong characters = new AtomicLong();
+
+	@Override
+	public void sendMessage(long channelId, String message) {
+		messages.incrementAndGet();
+		characters.addAndGet(message.length());
+	}
+
+	long getMessages() {
+		return messages.get();
+	}
+
+	long getCharacters() {
+		return characters.get();
+	}
+}
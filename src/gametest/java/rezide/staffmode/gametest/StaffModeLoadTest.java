@@ -0,0 +1,140 @@
+package rezide.staffmode.gametest;
+
+import com.mojang.authlib.GameProfile;
+import net.fabricmc.fabric.api.entity.FakePlayer;
+import net.fabricmc.fabric.api.gametest.v1.FabricGameTest;
+import net.minecraft.item.ItemStack;
+import net.minecraft.item.Items;
+import net.minecraft.network.packet.c2s.play.CreativeInventoryActionC2SPacket;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.command.ServerCommandSource;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.test.GameTest;
+import net.minecraft.test.TestContext;
+import net.minecraft.util.WorldSavePath;
+import net.minecraft.world.GameMode;
+import rezide.staffmode.DiscordBotManager;
+import rezide.staffmode.StaffMode;
+import rezide.staffmode.StaffModePerf;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Headless load test: N fake players toggle /staffmode in the same tick, flood the server with
+ * creative inventory packets and inventory churn, then toggle back. Discord is replaced by a local
+ * stub sink, so the test runs fully offline with {@code ./gradlew runGametest}.
+ * <p>
+ * Reports the mod's time per phase, bytes allocated on the server thread, staff mode data written
+ * to disk and the perf histograms to the log and to {@code staff-mode-loadtest-report.txt} in the run directory.
+ */
+public class StaffModeLoadTest implements FabricGameTest {
+	private static final int PLAYERS = Integer.getInteger("staffmode.loadtest.players", 50);
+	private static final int FLOOD_TICKS = Integer.getInteger("staffmode.loadtest.floodTicks", 40);
+	private static final int PACKETS_PER_PLAYER_PER_TICK = Integer.getInteger("staffmode.loadtest.packetsPerTick", 10);
+
+	private static final ItemStack[] FLOOD_ITEMS = {
+			new ItemStack(Items.DIAMOND_BLOCK, 64),
+			new ItemStack(Items.TNT, 64),
+			new ItemStack(Items.SHULKER_BOX),
+			new ItemStack(Items.NETHERITE_SWORD),
+			new ItemStack(Items.COMMAND_BLOCK)
+	};
+
+	@GameTest(templateName = FabricGameTest.EMPTY_STRUCTURE, tickLimit = 200)
+	public void massToggleAndCreativeFlood(TestContext context) {
+		ServerWorld world = context.getWorld();
+		MinecraftServer server = world.getServer();
+		RecordingNotificationSink sink = new RecordingNotificationSink();
+		DiscordBotManager.setMessageSink(sink);
+		StaffModePerf.reset();
+		StaffModePerf.setEnabled(true);
+
+		List<FakePlayer> players = new ArrayList<>(PLAYERS);
+		for (int i = 0; i < PLAYERS; i++) {
+			FakePlayer player = FakePlayer.get(world, new GameProfile(UUID.randomUUID(), "LoadTest" + i));
+			player.changeGameMode(GameMode.SURVIVAL);
+			player.getInventory().insertStack(new ItemStack(Items.COBBLESTONE, 64));
+			player.getInventory().insertStack(new ItemStack(Items.DIAMOND_PICKAXE));
+			players.add(player);
+		}
+
+		Path dataDirectory = server.getSavePath(WorldSavePath.ROOT).resolve(StaffMode.MOD_ID);
+		LoadTestReport report = new LoadTestReport(PLAYERS, directorySize(dataDirectory));
+
+		// Tick 1: every player enters staff mode in the same tick
+		context.runAtTick(1, () -> report.measure("enter staff mode", () -> {
+			for (FakePlayer player : players) {
+				toggleStaffMode(server, player);
+			}
+		}));
+
+		// Creative packet and inventory churn flood
+		for (int tick = 0; tick < FLOOD_TICKS; tick++) {
+			final int floodTick = tick;
+			context.runAtTick(2 + tick, () -> report.measure("creative flood", () -> {
+				for (FakePlayer player : players) {
+					floodCreativeActions(player, floodTick);
+				}
+			}));
+		}
+
+		// Every player leaves staff mode in the same tick
+		context.runAtTick(2 + FLOOD_TICKS, () -> report.measure("exit staff mode", () -> {
+			for (FakePlayer player : players) {
+				toggleStaffMode(server, player);
+			}
+		}));
+
+		context.runAtTick(3 + FLOOD_TICKS, () -> {
+			DiscordBotManager.setMessageSink(null);
+			for (FakePlayer player : players) {
+				context.assertFalse(StaffMode.isPlayerInStaffMode(player.getUuid()), "Player still in staff mode after toggling back: " + player.getName().getString());
+			}
+			report.finish(server, sink, directorySize(dataDirectory));
+			StaffModePerf.setEnabled(StaffMode.getConfig().isPerfMonitoringEnabled());
+			context.complete();
+		});
+	}
+
+	private static void toggleStaffMode(MinecraftServer server, FakePlayer player) {
+		ServerCommandSource source = player.getCommandSource().withLevel(2);
+		server.getCommandManager().executeWithPrefix(source, "staffmode load test");
+	}
+
+	private static void floodCreativeActions(FakePlayer player, int tick) {
+		for (int i = 0; i < PACKETS_PER_PLAYER_PER_TICK; i++) {
+			int slot = 9 + (tick * PACKETS_PER_PLAYER_PER_TICK + i) % 36; // Main inventory and hotbar
+			ItemStack stack = FLOOD_ITEMS[(tick + i) % FLOOD_ITEMS.length].copy();
+			player.networkHandler.onCreativeInventoryAction(new CreativeInventoryActionC2SPacket((short) slot, stack));
+		}
+		// Trash slot and inventory churn
+		player.networkHandler.onCreativeInventoryAction(new CreativeInventoryActionC2SPacket((short) -1, FLOOD_ITEMS[tick % FLOOD_ITEMS.length].copy()));
+		player.getInventory().insertStack(new ItemStack(Items.OAK_LOG, 16));
+		player.getInventory().removeStack(9 + tick % 27, 8);
+	}
+
+	private static long directorySize(Path directory) {
+		if (!Files.isDirectory(directory)) {
+			return 0;
+		}
+		try (Stream<Path> files = Files.walk(directory)) {
+			return files.filter(Files::isRegularFile).mapToLong(path -> path.toFile().length()).sum();
+		} catch (IOException e) {
+			return 0;
+		}
+	}
+
+	static long currentThreadAllocatedBytes() {
+		if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threadBean) {
+			return threadBean.getCurrentThreadAllocatedBytes();
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,122 @@
+package rezide.staffmode.gametest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import net.fabricmc.fabric.api.gametest.v1.FabricGameTest;
+import net.minecraft.test.GameTest;
+import net.minecraft.test.TestContext;
+import rezide.staffmode.WebhookNotificationSink;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends webhook messages to a local {@link HttpServer} standing in for Discord, which answers the first
+ * requests with {@code 429}, and checks that the sink waits, retries in order and gives up after its
+ * attempt limit. Runs offline like the load test. The sink sends from its own thread; the tests poll
+ * the stub every tick instead of blocking the server thread until it is done.
+ */
+public class WebhookNotificationSinkTest implements FabricGameTest {
+	private static final long CHANNEL_ID = 1L;
+	private static final double RESET_AFTER_SECONDS = 0.2;
+
+	@GameTest(templateName = FabricGameTest.EMPTY_STRUCTURE, tickLimit = 200)
+	public void retriesAfterRateLimit(TestContext context) {
+		WebhookStub stub = new WebhookStub(1);
+		WebhookNotificationSink sink = stub.createSink();
+		sink.sendMessage(CHANNEL_ID, "first");
+		sink.sendMessage(CHANNEL_ID, "second");
+
+		// Retried every tick until it passes or the tick limit is reached
+		context.addFinalTask(() -> {
+			List<String> bodies = stub.bodies;
+			context.assertTrue(bodies.size() >= 3, "Expected 3 requests (one 429 and two deliveries) but got " + bodies.size());
+			stub.close(sink);
+			context.assertTrue(bodies.size() == 3, "Expected 3 requests (one 429 and two deliveries) but got " + bodies.size());
+			context.assertTrue(bodies.get(0).contains("\"first\"") && bodies.get(1).contains("\"first\"") && bodies.get(2).contains("\"second\""),
+					"Messages were not retried in order: " + bodies);
+			long waitedNanos = stub.requestNanos.get(1) - stub.requestNanos.get(0);
+			context.assertTrue(waitedNanos >= (long) (RESET_AFTER_SECONDS * 1_000_000_000L),
+					"Retried after " + waitedNanos / 1_000_000 + " ms, before the rate limit reset");
+			context.assertTrue(bodies.stream().allMatch(body -> body.contains("\"allowed_mentions\":{\"parse\":[]}")),
+					"Payload does not disable mentions: " + bodies.get(0));
+		});
+	}
+
+	@GameTest(templateName = FabricGameTest.EMPTY_STRUCTURE, tickLimit = 200)
+	public void givesUpAfterMaxAttempts(TestContext context) {
+		// Five 429s exhaust the first message's attempts; the next message must still go out
+		WebhookStub stub = new WebhookStub(5);
+		WebhookNotificationSink sink = stub.createSink();
+		sink.sendMessage(CHANNEL_ID, "dropped");
+		sink.sendMessage(CHANNEL_ID, "delivered");
+
+		context.addFinalTask(() -> {
+			List<String> bodies = stub.bodies;
+			context.assertTrue(bodies.size() >= 6, "Expected 5 attempts and one delivery but got " + bodies.size() + " requests");
+			stub.close(sink);
+			context.assertTrue(bodies.size() == 6, "Expected 5 attempts and one delivery but got " + bodies.size() + " requests");
+			context.assertTrue(bodies.subList(0, 5).stream().allMatch(body -> body.contains("\"dropped\"")),
+					"The rate limited message was not retried until its attempt limit: " + bodies);
+			context.assertTrue(bodies.get(5).contains("\"delivered\""), "The next message was not sent after giving up: " + bodies);
+		});
+	}
+
+	private static final class WebhookStub {
+		private final HttpServer server;
+		private final AtomicInteger rateLimitedResponses;
+		private final List<String> bodies = new CopyOnWriteArrayList<>();
+		private final List<Long> requestNanos = new CopyOnWriteArrayList<>();
+		private boolean closed;
+
+		private WebhookStub(int rateLimitedResponses) {
+			this.rateLimitedResponses = new AtomicInteger(rateLimitedResponses);
+			try {
+				server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+			} catch (IOException e) {
+				throw new IllegalStateException("Could not start the webhook stub", e);
+			}
+			server.createContext("/webhook", this::handle);
+			server.start();
+		}
+
+		private WebhookNotificationSink createSink() {
+			URI webhook = URI.create("http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/webhook");
+			return new WebhookNotificationSink(HttpClient.newHttpClient(), channelId -> webhook);
+		}
+
+		private void handle(HttpExchange exchange) throws IOException {
+			requestNanos.add(System.nanoTime());
+			try (InputStream body = exchange.getRequestBody()) {
+				bodies.add(new String(body.readAllBytes(), StandardCharsets.UTF_8));
+			}
+			if (rateLimitedResponses.getAndDecrement() > 0) {
+				exchange.getResponseHeaders().add("Retry-After", "1");
+				exchange.getResponseHeaders().add("X-RateLimit-Reset-After", String.valueOf(RESET_AFTER_SECONDS));
+				exchange.sendResponseHeaders(429, -1);
+			} else {
+				exchange.sendResponseHeaders(204, -1);
+			}
+			exchange.close();
+		}
+
+		/**
+		 * Stops the sink and the stub once the expected requests arrived; later calls do nothing.
+		 */
+		private void close(WebhookNotificationSink sink) {
+			if (!closed) {
+				closed = true;
+				sink.stop();
+				server.stop(0);
+			}
+		}
+	}
+}
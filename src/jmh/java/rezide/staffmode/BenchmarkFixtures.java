@@ -0,0 +1,101 @@
+package rezide.staffmode;
+
+import net.minecraft.Bootstrap;
+import net.minecraft.SharedConstants;
+import net.minecraft.component.DataComponentTypes;
+import net.minecraft.component.type.ContainerComponent;
+import net.minecraft.component.type.WritableBookContentComponent;
+import net.minecraft.item.ItemStack;
+import net.minecraft.item.Items;
+import net.minecraft.registry.BuiltinRegistries;
+import net.minecraft.registry.RegistryWrapper;
+import net.minecraft.text.RawFilteredPair;
+import net.minecraft.text.Text;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Shared setup for the benchmarks: boots the vanilla registries once and builds realistic inventories.
+final class BenchmarkFixtures {
+	static final int PLAYER_INVENTORY_SIZE = 41;
+
+	private static RegistryWrapper.WrapperLookup lookup;
+
+	private BenchmarkFixtures() {
+	}
+
+	static synchronized RegistryWrapper.WrapperLookup bootstrap() {
+		if (lookup == null) {
+			SharedConstants.createGameVersion();
+			Bootstrap.initialize();
+			lookup = BuiltinRegistries.createWrapperLookup();
+		}
+		return lookup;
+	}
+
+	static ItemStack[] inventory(String kind) {
+		return switch (kind) {
+			case "shulker" -> shulkerHeavyInventory();
+			case "book" -> bookHeavyInventory();
+			case "survival" -> survivalInventory();
+			default -> throw new IllegalArgumentException("Unknown inventory kind: " + kind);
+		};
+	}
+
+	// Every main inventory slot holds a full shulker box of named stacks
+	static ItemStack[] shulkerHeavyInventory() {
+		ItemStack[] inventory = emptyInventory();
+		for (int slot = 0; slot < 36; slot++) {
+			List<ItemStack> contents = new ArrayList<>(27);
+			for (int i = 0; i < 27; i++) {
+				ItemStack stack = new ItemStack(i % 2 == 0 ? Items.DIAMOND_BLOCK : Items.NETHERITE_INGOT, 64);
+				stack.set(DataComponentTypes.CUSTOM_NAME, Text.literal("Stack " + slot + "-" + i));
+				contents.add(stack);
+			}
+			ItemStack shulker = new ItemStack(Items.SHULKER_BOX);
+			shulker.set(DataComponentTypes.CONTAINER, ContainerComponent.fromStacks(contents));
+			inventory[slot] = shulker;
+		}
+		return inventory;
+	}
+
+	// Every main inventory slot holds a book with 100 full pages
+	static ItemStack[] bookHeavyInventory() {
+		ItemStack[] inventory = emptyInventory();
+		String page = "Lorem ipsum dolor sit amet. ".repeat(36);
+		List<RawFilteredPair<String>> pages = new ArrayList<>(100);
+		for (int i = 0; i < 100; i++) {
+			pages.add(RawFilteredPair.of(i + ": " + page));
+		}
+		for (int slot = 0; slot < 36; slot++) {
+			ItemStack book = new ItemStack(Items.WRITABLE_BOOK);
+			book.set(DataComponentTypes.WRITABLE_BOOK_CONTENT, new WritableBookContentComponent(pages));
+			inventory[slot] = book;
+		}
+		return inventory;
+	}
+
+	// A typical survival inventory: tools, blocks, food and armor, half of the slots used
+	static ItemStack[] survivalInventory() {
+		ItemStack[] inventory = emptyInventory();
+		inventory[0] = new ItemStack(Items.DIAMOND_PICKAXE);
+		inventory[1] = new ItemStack(Items.DIAMOND_SWORD);
+		inventory[2] = new ItemStack(Items.COOKED_BEEF, 48);
+		for (int slot = 3; slot < 20; slot++) {
+			inventory[slot] = new ItemStack(slot % 2 == 0 ? Items.COBBLESTONE : Items.OAK_LOG, 64);
+		}
+		inventory[36] = new ItemStack(Items.DIAMOND_BOOTS);
+		inventory[37] = new ItemStack(Items.DIAMOND_LEGGINGS);
+		inventory[38] = new ItemStack(Items.DIAMOND_CHESTPLATE);
+		inventory[39] = new ItemStack(Items.DIAMOND_HELMET);
+		inventory[40] = new ItemStack(Items.SHIELD);
+		return inventory;
+	}
+
+	private static ItemStack[] emptyInventory() {
+		ItemStack[] inventory = new ItemStack[PLAYER_INVENTORY_SIZE];
+		Arrays.fill(inventory, ItemStack.EMPTY);
+		return inventory;
+	}
+}
@@ -0,0 +1,48 @@
+package rezide.staffmode;
+
+import net.minecraft.item.ItemStack;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.registry.RegistryWrapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SnapshotCodecBenchmark {
+
+	@Param({"shulker", "book", "survival"})
+	public String inventoryKind;
+
+	private RegistryWrapper.WrapperLookup lookup;
+	private ItemStack[] inventory;
+	private NbtCompound encoded;
+
+	@Setup
+	public void setup() {
+		lookup = BenchmarkFixtures.bootstrap();
+		inventory = BenchmarkFixtures.inventory(inventoryKind);
+		encoded = new PlayerInventorySnapshot(inventory, "benchmark").toNbt(lookup);
+	}
+
+	@Benchmark
+	public void toNbt(Blackhole blackhole) {
+		// A fresh snapshot each time, since snapshots cache their encoded items
+		blackhole.consume(new PlayerInventorySnapshot(inventory, "benchmark").toNbt(lookup));
+	}
+
+	@Benchmark
+	public void fromNbt(Blackhole blackhole) {
+		// Loaded snapshots decode their items on first access
+		blackhole.consume(PlayerInventorySnapshot.fromNbt(lookup, encoded).getInventory());
+	}
+}
@@ -0,0 +1,68 @@
+package rezide.staffmode;
+
+import net.minecraft.item.ItemStack;
+import net.minecraft.registry.RegistryWrapper;
+import net.minecraft.world.GameMode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// Full saveData / loadData cycles of staff_mode_data.nbt with a given number of tracked staff players
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class StaffDataPersistenceBenchmark {
+
+	@Param({"1", "50", "500"})
+	public int trackedPlayers;
+
+	private RegistryWrapper.WrapperLookup lookup;
+	private Path dataDirectory;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		lookup = BenchmarkFixtures.bootstrap();
+		dataDirectory = Files.createTempDirectory("staff-mode-jmh");
+		StaffMode.setDataDirectory(dataDirectory.toFile());
+
+		StaffMode.clearStaffState();
+		ItemStack[] survivalInventory = BenchmarkFixtures.survivalInventory();
+		for (int i = 0; i < trackedPlayers; i++) {
+			StaffMode.trackStaffPlayer(new UUID(0L, i), survivalInventory, GameMode.SURVIVAL, i % 5 == 0);
+		}
+		StaffMode.saveData(lookup); // loadData needs an existing file
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		StaffMode.clearStaffState();
+		try (Stream<Path> files = Files.walk(dataDirectory)) {
+			files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+		}
+	}
+
+	@Benchmark
+	public void saveData() {
+		StaffMode.saveData(lookup);
+	}
+
+	@Benchmark
+	public void loadData() {
+		StaffMode.loadData(lookup);
+	}
+}
@@ -0,0 +1,54 @@
+package rezide.staffmode;
+
+import net.minecraft.item.ItemStack;
+import net.minecraft.world.GameMode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// The isPlayerInStaffMode check every mixin runs before doing any work
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class StaffModeGateBenchmark {
+
+	private static final int TRACKED_PLAYERS = 50;
+
+	private UUID trackedPlayer;
+	private UUID untrackedPlayer;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		BenchmarkFixtures.bootstrap();
+		StaffMode.clearStaffState();
+		for (int i = 0; i < TRACKED_PLAYERS; i++) {
+			StaffMode.trackStaffPlayer(new UUID(0L, i), new ItemStack[0], GameMode.SURVIVAL, false);
+		}
+		trackedPlayer = new UUID(0L, TRACKED_PLAYERS / 2);
+		untrackedPlayer = UUID.randomUUID();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		StaffMode.clearStaffState();
+	}
+
+	@Benchmark
+	public boolean trackedPlayer() {
+		return StaffMode.isPlayerInStaffMode(trackedPlayer);
+	}
+
+	@Benchmark
+	public boolean untrackedPlayer() {
+		return StaffMode.isPlayerInStaffMode(untrackedPlayer);
+	}
+}
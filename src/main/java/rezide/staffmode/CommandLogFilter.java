@@ -0,0 +1,272 @@
+package rezide.staffmode;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides which commands run in staff mode are sent to Discord, and masks sensitive arguments.
+ * <p>
+ * Rules come from the config and are lists of leading command words, e.g. {@code "tp"} or
+ * {@code "gamemode creative"}. They are compiled into a trie over those words whenever the config
+ * changes, so a command is matched with a single walk over its text: the deepest include or exclude
+ * rule on the path decides, and with no include rules every command not excluded is sent.
+ * <p>
+ * Redaction rules are words followed by one symbol per argument: {@code ?} keeps the argument,
+ * {@code #} masks it and {@code *} masks it and all that follow. {@code "msg ? *"} sends
+ * {@code /msg Steve hello} as {@code /msg Steve ***}. The deepest redaction rule on the path applies.
+ * The command after {@code run} in an {@code execute} command is redacted by the same rules, so
+ * {@code /execute as @s run msg Steve hello} is sent as {@code /execute as @s run msg Steve ***}.
+ */
+public final class CommandLogFilter {
+
+	private static final byte NO_RULE = 0;
+	private static final byte INCLUDE = 1;
+	private static final byte EXCLUDE = 2;
+	private static final String MASK = "***";
+
+	private static final class Node {
+		final Map<String, Node> children = new HashMap<>(4);
+		byte rule = NO_RULE;
+		char[] redaction; // One of ?, # or * per argument after this node's words
+	}
+
+	private static volatile Node root = compile(List.of(), List.of(), List.of());
+
+	private static final AtomicLong sent = new AtomicLong();
+	private static final AtomicLong filtered = new AtomicLong();
+	private static final AtomicLong redacted = new AtomicLong();
+
+	private CommandLogFilter() {
+	}
+
+	/**
+	 * Recompiles the rules from the config. Commands being matched meanwhile use the previous rules.
+	 */
+	static void configure(StaffModeConfig config) {
+		root = compile(config.getCommandLogInclude(), config.getCommandLogExclude(), config.getCommandLogRedact());
+	}
+
+	private static Node compile(List<String> include, List<String> exclude, List<String> redact) {
+		Node compiled = new Node();
+		// Without include rules, everything not excluded is sent
+		compiled.rule = include.isEmpty() ? INCLUDE : EXCLUDE;
+		for (String rule : include) {
+			insert(compiled, rule).rule = INCLUDE;
+		}
+		for (String rule : exclude) {
+			insert(compiled, rule).rule = EXCLUDE; // Exclude wins over an identical include
+		}
+		for (String rule : redact) {
+			String[] words = rule.trim().split("\\s+");
+			int argumentsStart = words.length;
+			while (argumentsStart > 0 && isRedactionSymbol(words[argumentsStart - 1])) {
+				argumentsStart--;
+			}
+			Node node = compiled;
+			for (int i = 0; i < argumentsStart; i++) {
+				node = node.children.computeIfAbsent(words[i], word -> new Node());
+			}
+			node.redaction = new char[words.length - argumentsStart];
+			for (int i = argumentsStart; i < words.length; i++) {
+				node.redaction[i - argumentsStart] = words[i].charAt(0);
+			}
+		}
+		return compiled;
+	}
+
+	private static Node insert(Node compiled, String rule) {
+		Node node = compiled;
+		for (String word : rule.trim().split("\\s+")) {
+			if (!word.isEmpty()) {
+				node = node.children.computeIfAbsent(word, key -> new Node());
+			}
+		}
+		return node;
+	}
+
+	private static boolean isRedactionSymbol(String word) {
+		return word.equals("?") || word.equals("#") || word.equals("*");
+	}
+
+	/**
+	 * @param command The command as typed, with or without the leading slash.
+	 * @return The command to log, with sensitive arguments masked, or {@code null} if it is filtered out.
+	 */
+	public static String filter(String command) {
+		Node rules = root;
+		Node node = rules;
+		byte rule = node.rule;
+		char[] redaction = null;
+		int redactFrom = -1;
+		boolean execute = false;
+
+		int length = command.length();
+		int position = command.startsWith("/") ? 1 : 0;
+		boolean firstWord = true;
+		while (position < length) {
+			int end = command.indexOf(' ', position);
+			if (end < 0) {
+				end = length;
+			}
+			int wordStart = position;
+			if (firstWord) {
+				wordStart = commandNameStart(command, position, end);
+				execute = command.startsWith("execute", wordStart) && end - wordStart == "execute".length();
+				firstWord = false;
+			}
+			Node child = node.children.get(command.substring(wordStart, end));
+			if (child == null) {
+				break;
+			}
+			node = child;
+			if (node.rule != NO_RULE) {
+				rule = node.rule;
+			}
+			if (node.redaction != null) {
+				redaction = node.redaction;
+				redactFrom = end;
+			}
+			position = end + 1;
+		}
+
+		if (rule != INCLUDE) {
+			filtered.incrementAndGet();
+			return null;
+		}
+		sent.incrementAndGet();
+		String result;
+		if (redaction != null) {
+			result = redact(command, redactFrom, redaction);
+		} else if (execute) {
+			result = redactRunCommand(rules, command, position);
+		} else {
+			return command;
+		}
+		if (!result.equals(command)) {
+			redacted.incrementAndGet();
+		}
+		return result;
+	}
+
+	// "minecraft:tp" matches the rules for "tp"
+	private static int commandNameStart(String command, int position, int end) {
+		int namespaceEnd = command.indexOf(':', position);
+		return namespaceEnd >= 0 && namespaceEnd < end ? namespaceEnd + 1 : position;
+	}
+
+	/**
+	 * Redacts the command after {@code run} in the {@code execute} command whose arguments start at
+	 * {@code from}. "run" can also be an argument, e.g. a player name, so every occurrence is tried
+	 * until one is followed by a command with a redaction rule.
+	 */
+	private static String redactRunCommand(Node rules, String command, int from) {
+		int length = command.length();
+		int position = from;
+		while (position < length) {
+			int end = command.indexOf(' ', position);
+			if (end < 0) {
+				end = length;
+			}
+			if (end - position == 3 && command.startsWith("run", position) && end < length) {
+				String result = redactCommand(rules, command, end + 1);
+				if (!result.equals(command)) {
+					return result;
+				}
+			}
+			position = end + 1;
+		}
+		return command;
+	}
+
+	/**
+	 * Applies the redaction rules to the command starting at {@code from}, keeping everything before it.
+	 */
+	private static String redactCommand(Node rules, String command, int from) {
+		Node node = rules;
+		char[] redaction = null;
+		int redactFrom = -1;
+		boolean execute = false;
+
+		int length = command.length();
+		int position = from;
+		boolean firstWord = true;
+		while (position < length) {
+			int end = command.indexOf(' ', position);
+			if (end < 0) {
+				end = length;
+			}
+			int wordStart = position;
+			if (firstWord) {
+				wordStart = commandNameStart(command, position, end);
+				execute = command.startsWith("execute", wordStart) && end - wordStart == "execute".length();
+				firstWord = false;
+			}
+			Node child = node.children.get(command.substring(wordStart, end));
+			if (child == null) {
+				break;
+			}
+			node = child;
+			if (node.redaction != null) {
+				redaction = node.redaction;
+				redactFrom = end;
+			}
+			position = end + 1;
+		}
+
+		if (redaction != null) {
+			return redact(command, redactFrom, redaction);
+		}
+		return execute ? redactRunCommand(rules, command, position) : command;
+	}
+
+	private static String redact(String command, int from, char[] redaction) {
+		StringBuilder result = new StringBuilder(command.length());
+		result.append(command, 0, from);
+		int length = command.length();
+		int position = from;
+		int argument = 0;
+		while (position < length) {
+			// Copy the separator(s) before the argument
+			int start = position;
+			while (start < length && command.charAt(start) == ' ') {
+				start++;
+			}
+			result.append(command, position, start);
+			if (start >= length) {
+				break;
+			}
+			char symbol = argument < redaction.length ? redaction[argument] : '?';
+			if (symbol == '*') {
+				result.append(MASK);
+				break;
+			}
+			int end = command.indexOf(' ', start);
+			if (end < 0) {
+				end = length;
+			}
+			if (symbol == '#') {
+				result.append(MASK);
+			} else {
+				result.append(command, start, end);
+			}
+			argument++;
+			position = end;
+		}
+		return result.toString();
+	}
+
+	/**
+	 * @return A summary line for {@code /staffmode perf}.
+	 */
+	static String report() {
+		return String.format("§eCommand log §7sent §f%d§7, filtered §f%d§7, redacted §f%d", sent.get(), filtered.get(), redacted.get());
+	}
+
+	static void resetCounters() {
+		sent.set(0);
+		filtered.set(0);
+		redacted.set(0);
+	}
+}
@@ -0,0 +1,172 @@
+package rezide.staffmode;
+
+import it.unimi.dsi.fastutil.Hash;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenCustomHashMap;
+import net.minecraft.block.entity.BlockEntity;
+import net.minecraft.block.entity.BlockEntityType;
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.EntityType;
+import net.minecraft.inventory.EnderChestInventory;
+import net.minecraft.inventory.Inventory;
+import net.minecraft.item.ItemStack;
+import net.minecraft.screen.NamedScreenHandlerFactory;
+import net.minecraft.screen.ScreenHandler;
+import net.minecraft.screen.slot.Slot;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.util.math.BlockPos;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Tracks what players in staff mode move into and out of containers. The container's contents are
+ * counted when its screen opens and again when it closes, and the net change per item is logged as
+ * one record per container, so a long sorting session is a single message rather than one per click.
+ * <p>
+ * The counts cover the container as a whole, so changes made at the same time by hoppers or other
+ * players viewing it are included in the delta.
+ */
+public final class ContainerAudit {
+
+	private static final int MAX_LISTED_ITEMS = 20;
+
+	// Same item and components, any count
+	private static final Hash.Strategy<ItemStack> ITEM_STRATEGY = new Hash.Strategy<>() {
+		@Override
+		public int hashCode(ItemStack stack) {
+			return ItemStack.hashCode(stack);
+		}
+
+		@Override
+		public boolean equals(ItemStack a, ItemStack b) {
+			return a == b || (a != null && b != null && ItemStack.areItemsAndComponentsEqual(a, b));
+		}
+	};
+
+	private record OpenContainer(ScreenHandler handler, String description, int sessionId, Object2IntMap<ItemStack> before) {
+	}
+
+	private static final Map<UUID, OpenContainer> openContainers = new HashMap<>();
+
+	private ContainerAudit() {
+	}
+
+	/**
+	 * Called after a screen was opened for {@code player}. Ignored unless the player is in staff mode.
+	 */
+	public static void onScreenOpened(ServerPlayerEntity player, NamedScreenHandlerFactory factory) {
+		ScreenHandler handler = player.currentScreenHandler;
+		if (handler == player.playerScreenHandler || !StaffMode.isPlayerInStaffMode(player.getUuid())) {
+			return;
+		}
+		Object2IntMap<ItemStack> contents = countContainerSlots(player, handler);
+		StaffSession session = StaffSessions.getActive(player.getUuid());
+		openContainers.put(player.getUuid(), new OpenContainer(handler, describe(player, factory, handler),
+				session != null ? session.id : 0, contents));
+	}
+
+	/**
+	 * Called before the player's current screen is closed, including when another screen replaces it.
+	 */
+	public static void onScreenClosed(ServerPlayerEntity player) {
+		OpenContainer open = openContainers.remove(player.getUuid());
+		if (open == null || open.handler() != player.currentScreenHandler) {
+			return;
+		}
+		Object2IntMap<ItemStack> after = countContainerSlots(player, open.handler());
+
+		List<String> changes = new ArrayList<>();
+		int changedItems = 0;
+		for (Object2IntMap.Entry<ItemStack> entry : after.object2IntEntrySet()) {
+			int delta = entry.getIntValue() - open.before().getInt(entry.getKey());
+			if (delta != 0) {
+				changedItems++;
+				if (changes.size() < MAX_LISTED_ITEMS) {
+					changes.add(formatDelta(entry.getKey(), delta));
+				}
+			}
+		}
+		for (Object2IntMap.Entry<ItemStack> entry : open.before().object2IntEntrySet()) {
+			if (!after.containsKey(entry.getKey())) {
+				changedItems++;
+				if (changes.size() < MAX_LISTED_ITEMS) {
+					changes.add(formatDelta(entry.getKey(), -entry.getIntValue()));
+				}
+			}
+		}
+		if (changedItems == 0) {
+			return;
+		}
+		if (changedItems > changes.size()) {
+			changes.add("and " + (changedItems - changes.size()) + " more");
+		}
+
+		String playerName = player.getGameProfile().getName();
+		String message = String.format("🛡️ Player **%s** changed %s in staff mode%s: %s",
+				playerName, open.description(), open.sessionId() > 0 ? " (session #" + open.sessionId() + ")" : "", String.join(", ", changes));
+		StaffMode.LOGGER.info("Container audit: {}", message);
+		DiscordBotManager.sendMessageToChannel(StaffMode.getConfig().getAdminLogChannelId(), message);
+	}
+
+	/**
+	 * Drops the player's open container, e.g. on disconnect, in case its screen was never closed.
+	 */
+	static void forget(UUID uuid) {
+		openContainers.remove(uuid);
+	}
+
+	private static String formatDelta(ItemStack stack, int delta) {
+		return (delta > 0 ? "+" : "") + delta + " " + stack.getName().getString();
+	}
+
+	private static Object2IntMap<ItemStack> countContainerSlots(ServerPlayerEntity player, ScreenHandler handler) {
+		Object2IntOpenCustomHashMap<ItemStack> counts = new Object2IntOpenCustomHashMap<>(ITEM_STRATEGY);
+		for (Slot slot : handler.slots) {
+			if (slot.inventory == player.getInventory()) {
+				continue;
+			}
+			ItemStack stack = slot.getStack();
+			if (!stack.isEmpty()) {
+				// Keys are copied so later changes to the live stack cannot alter them
+				counts.addTo(counts.containsKey(stack) ? stack : stack.copyWithCount(1), stack.getCount());
+			}
+		}
+		return counts;
+	}
+
+	private static String describe(ServerPlayerEntity player, NamedScreenHandlerFactory factory, ScreenHandler handler) {
+		String dimension = player.getWorld().getRegistryKey().getValue().toString();
+		if (factory instanceof BlockEntity blockEntity) {
+			return describeBlock(blockEntity.getType(), blockEntity.getPos(), dimension);
+		}
+		if (factory instanceof Entity entity) {
+			return describeEntity(entity, dimension);
+		}
+		// Double chests and similar wrap their inventories, so look at what the slots belong to
+		for (Slot slot : handler.slots) {
+			Inventory inventory = slot.inventory;
+			if (inventory instanceof BlockEntity blockEntity) {
+				return describeBlock(blockEntity.getType(), blockEntity.getPos(), dimension);
+			}
+			if (inventory instanceof Entity entity) {
+				return describeEntity(entity, dimension);
+			}
+			if (inventory instanceof EnderChestInventory) {
+				return "their ender chest";
+			}
+		}
+		return "\"" + factory.getDisplayName().getString() + "\" near " + player.getBlockPos().toShortString() + " in " + dimension;
+	}
+
+	private static String describeBlock(BlockEntityType<?> type, BlockPos pos, String dimension) {
+		return BlockEntityType.getId(type) + " at " + pos.toShortString() + " in " + dimension;
+	}
+
+	private static String describeEntity(Entity entity, String dimension) {
+		return EntityType.getId(entity.getType()) + " at " + entity.getBlockPos().toShortString() + " in " + dimension;
+	}
+}
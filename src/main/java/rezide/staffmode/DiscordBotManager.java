@@ -1,147 +1,237 @@
 package rezide.staffmode;
 
-import net.dv8tion.jda.api.JDA;
-import net.dv8tion.jda.api.JDABuilder;
-import net.dv8tion.jda.api.entities.Activity;
-import net.dv8tion.jda.api.utils.cache.CacheFlag;
 import com.sun.net.httpserver.HttpServer;
 import com.sun.net.httpserver.HttpExchange;
+import net.fabricmc.loader.api.FabricLoader;
 import net.minecraft.server.MinecraftServer; // Import MinecraftServer
 
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.io.FileWriter; // For file writing
 import java.io.PrintWriter; // For print writing
 import java.io.File; // For file operations
 
+/**
+ * Routes the mod's audit and status messages, and runs the internal HTTP server and file log.
+ * <p>
+ * Discord delivery itself lives in optional integration mods (such as {@code staff-mode-discord})
+ * that contribute a {@link NotificationSinkProvider} through the {@value #SINK_ENTRYPOINT} entrypoint.
+ * Sinks are only created when their provider reports them enabled, so servers without Discord
+ * never load the Discord library.
+ */
 public class DiscordBotManager {
 
-    private static JDA jda;
-    private static String botToken;
-    public static int HTTP_PORT;
+    public static final String SINK_ENTRYPOINT = "staff-mode:notification-sink";
+
+    public static volatile int HTTP_PORT;
     public static AtomicInteger currentPlayerCount = new AtomicInteger(0);
 
-    private static HttpServer httpServer;
+    // Started on the server thread and restarted by the config watcher thread, so guarded by HTTP_SERVER_LOCK
+    private static final Object HTTP_SERVER_LOCK = new Object();
+    private static volatile HttpServer httpServer;
+    private static ExecutorService httpExecutor;
 
-    private static MinecraftServer minecraftServerInstance; // Reference to the MinecraftServer instance
+    private static final long SHUTDOWN_FLUSH_TIMEOUT_MS = 1000;
 
-    // New: Reference to StaffModeConfig
-    private static StaffModeConfig config;
+    // Available providers and the sinks currently created from them
+    private static List<NotificationSinkProvider> sinkProviders;
+    private static final Map<NotificationSinkProvider, NotificationSink> activeSinks = new LinkedHashMap<>();
+    private static volatile NotificationSink[] sinks = new NotificationSink[0];
 
-    public static void startBot(String token, int httpPort, MinecraftServer server, StaffModeConfig staffModeConfig) {
-        config = staffModeConfig; // Store the config instance
+    // When set, messages go to this sink instead of Discord (used by the load-test harness)
+    private static volatile NotificationSink messageSinkOverride;
+
+    private static MinecraftServer minecraftServerInstance; // Reference to the MinecraftServer instance
 
-        if (jda != null && jda.getStatus() == JDA.Status.CONNECTED) {
+    public static void startBot(MinecraftServer server) {
+        StaffModeConfig config = StaffModeConfig.getInstance();
+
+        if (sinks.length > 0) {
             StaffMode.LOGGER.info("Discord Bot is already running.");
             logToFile("Discord Bot is already running."); // Log to file
             return;
         }
 
-        botToken = token;
-        HTTP_PORT = httpPort;
+        HTTP_PORT = config.getDiscordBotHttpPort();
         minecraftServerInstance = server; // Store the server instance
 
-        // Check if Discord bot should even attempt to start
-        boolean discordBotEnabled = !(botToken.equals("YOUR_DISCORD_BOT_TOKEN_HERE") || botToken.isEmpty());
-
-        if (!discordBotEnabled) {
-            StaffMode.LOGGER.warn("Discord BOT_TOKEN not set in config/staff-mode.json. Discord bot will not start.");
-            logToFile("Discord BOT_TOKEN not set. Discord bot will not start."); // Log to file
-        }
-
         if (HTTP_PORT == 0) {
             StaffMode.LOGGER.warn("Discord Bot HTTP Port is 0. Bot will not start HTTP server.");
             logToFile("Discord Bot HTTP Port is 0. HTTP server will not start."); // Log to file
+        } else {
+            synchronized (HTTP_SERVER_LOCK) {
+                try {
+                    startHttpServer();
+                } catch (IOException e) {
+                    StaffMode.LOGGER.error("Error starting HTTP server: {}", e.getMessage());
+                    logToFile("Error starting HTTP server: " + e.getMessage());
+                }
+            }
         }
 
-        if (discordBotEnabled) {
-            new Thread(() -> {
-                try {
-                    jda = JDABuilder.createDefault(botToken)
-                            .disableCache(CacheFlag.MEMBER_OVERRIDES, CacheFlag.VOICE_STATE)
-                            .setActivity(Activity.playing("Starting up..."))
-                            .build();
-                    jda.awaitReady(); // This line blocks until the bot is connected and ready
-                    StaffMode.LOGGER.info("Discord Bot is online!");
-                    logToFile("Discord Bot is online!"); // Log to file
-
-                    // Execute initial tasks AFTER JDA is ready
-                    startHttpServer(); // Start HTTP server after JDA is ready
-                    updateBotPresence(); // Update presence immediately
-                    sendInitialServerStatusMessage(); // Send server start message
-
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    StaffMode.LOGGER.error("Discord Bot connection interrupted: {}", e.getMessage());
-                    logToFile("Discord Bot connection interrupted: " + e.getMessage()); // Log to file
-                } catch (Exception e) {
-                    StaffMode.LOGGER.error("Error starting Discord Bot: {}", e.getMessage());
-                    logToFile("Error starting Discord Bot: " + e.getMessage()); // Log to file
-                } finally {
-                    // Clear the server instance reference once the initial setup is done
-                    minecraftServerInstance = null;
+        currentPlayerCount.set(server.getCurrentPlayerCount());
+        logServerStatus(String.format("✅ **Server Started!**\nTime: `%s EDT`", LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"))));
+
+        synchronized (activeSinks) {
+            for (NotificationSinkProvider provider : getSinkProviders()) {
+                if (provider.isEnabled(config)) {
+                    startSink(provider);
                 }
-            }, "DiscordBot-ConnectThread").start();
-        } else {
+            }
+        }
+
+        if (sinks.length == 0) {
             StaffMode.LOGGER.info("Discord Bot is disabled, starting HTTP server and logging to file only.");
             logToFile("Discord Bot is disabled. Running in file-only mode.");
-            // If Discord bot is disabled but HTTP port is set, still start HTTP server
-            if (HTTP_PORT != 0) {
-                try {
-                    startHttpServer();
-                    // Initial player count for file logging
-                    if (minecraftServerInstance != null) {
-                        int playerCount = minecraftServerInstance.getCurrentPlayerCount();
-                        currentPlayerCount.set(playerCount);
-                        logToFile(String.format("Initial player count: %d", playerCount));
+            if (config.isWebhookTransport()) {
+                StaffMode.LOGGER.warn("Discord adminLogWebhookUrl not set in config/staff-mode.json. Webhook transport will not start.");
+                logToFile("Discord adminLogWebhookUrl not set. Webhook transport will not start."); // Log to file
+            } else if (!config.isDiscordBotTokenSet()) {
+                StaffMode.LOGGER.warn("Discord BOT_TOKEN not set in config/staff-mode.json. Discord bot will not start.");
+                logToFile("Discord BOT_TOKEN not set. Discord bot will not start."); // Log to file
+            } else {
+                StaffMode.LOGGER.warn("Discord bot transport requires the staff-mode-discord mod, which is not installed.");
+                logToFile("Discord bot transport requires the staff-mode-discord mod, which is not installed."); // Log to file
+            }
+        }
+        StaffMode.LOGGER.info("Initial player count updated: {}", currentPlayerCount.get());
+        logToFile(String.format("Initial player count updated: %d", currentPlayerCount.get())); // Log to file
+    }
+
+    private static List<NotificationSinkProvider> getSinkProviders() {
+        if (sinkProviders == null) {
+            sinkProviders = FabricLoader.getInstance().getEntrypoints(SINK_ENTRYPOINT, NotificationSinkProvider.class);
+        }
+        return sinkProviders;
+    }
+
+    // Must hold the activeSinks lock
+    private static void startSink(NotificationSinkProvider provider) {
+        StaffMode.LOGGER.info("Starting notification sink: {}", provider.getName());
+        NotificationSink sink = provider.create();
+        activeSinks.put(provider, sink);
+        sinks = activeSinks.values().toArray(new NotificationSink[0]);
+        // Announce the server start on this sink once it is connected
+        sink.start(() -> {
+            sink.updatePresence(currentPlayerCount.get());
+            sendServerStatusTo(sink, String.format("✅ **Server Started!**\nTime: `%s EDT`", LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"))));
+        });
+    }
+
+    // Must hold the activeSinks lock
+    private static void stopSink(NotificationSinkProvider provider) {
+        NotificationSink sink = activeSinks.remove(provider);
+        sinks = activeSinks.values().toArray(new NotificationSink[0]);
+        if (sink != null) {
+            StaffMode.LOGGER.info("Stopping notification sink: {}", provider.getName());
+            sink.stop();
+        }
+    }
+
+    /**
+     * Applies a reloaded config: starts or stops sinks whose enabled state changed, passes the change
+     * on to running sinks and rebinds the HTTP server if the port changed. Channel IDs and file logging
+     * settings are read live and need no action.
+     */
+    static void onConfigReloaded(StaffModeConfig previous, StaffModeConfig current) {
+        synchronized (activeSinks) {
+            if (minecraftServerInstance != null) {
+                for (NotificationSinkProvider provider : getSinkProviders()) {
+                    boolean enabled = provider.isEnabled(current);
+                    NotificationSink sink = activeSinks.get(provider);
+                    if (enabled && sink == null) {
+                        startSink(provider);
+                    } else if (!enabled && sink != null) {
+                        stopSink(provider);
+                    } else if (sink != null) {
+                        sink.onConfigReloaded(previous, current);
+                    }
+                }
+            }
+        }
+
+        if (previous.getDiscordBotHttpPort() != current.getDiscordBotHttpPort()) {
+            StaffMode.LOGGER.info("Discord Bot HTTP port changed from {} to {}. Restarting HTTP server...", previous.getDiscordBotHttpPort(), current.getDiscordBotHttpPort());
+            logToFile(String.format("Discord Bot HTTP port changed from %d to %d. Restarting HTTP server...", previous.getDiscordBotHttpPort(), current.getDiscordBotHttpPort()));
+            synchronized (HTTP_SERVER_LOCK) {
+                stopHttpServer();
+                HTTP_PORT = current.getDiscordBotHttpPort();
+                if (HTTP_PORT != 0) {
+                    try {
+                        startHttpServer();
+                    } catch (IOException e) {
+                        StaffMode.LOGGER.error("Error restarting HTTP server on port {}: {}", HTTP_PORT, e.getMessage());
+                        logToFile("Error restarting HTTP server: " + e.getMessage());
                     }
-                } catch (IOException e) {
-                    StaffMode.LOGGER.error("Error starting HTTP server without Discord Bot: {}", e.getMessage());
-                    logToFile("Error starting HTTP server without Discord Bot: " + e.getMessage());
                 }
             }
-            sendInitialServerStatusMessage(); // Still send status message (to file if enabled)
         }
     }
 
     public static void stopBot() {
         sendServerStoppingMessage(); // Attempt to send message before any shutdown
 
-        if (httpServer != null) {
-            StaffMode.LOGGER.info("Stopping internal HTTP server...");
-            logToFile("Stopping internal HTTP server..."); // Log to file
-            httpServer.stop(0);
-            httpServer = null;
-            StaffMode.LOGGER.info("Internal HTTP server stopped.");
-            logToFile("Internal HTTP server stopped."); // Log to file
+        synchronized (HTTP_SERVER_LOCK) {
+            if (httpServer != null) {
+                StaffMode.LOGGER.info("Stopping internal HTTP server...");
+                logToFile("Stopping internal HTTP server..."); // Log to file
+                stopHttpServer();
+                StaffMode.LOGGER.info("Internal HTTP server stopped.");
+                logToFile("Internal HTTP server stopped."); // Log to file
+            }
         }
-        if (jda != null) {
-            StaffMode.LOGGER.info("Shutting down Discord Bot...");
-            logToFile("Shutting down Discord Bot..."); // Log to file
-            jda.shutdownNow(); // Use shutdownNow for faster exit
-            jda = null;
-            StaffMode.LOGGER.info("Discord Bot offline.");
-            logToFile("Discord Bot offline."); // Log to file
-        } else {
-            StaffMode.LOGGER.info("Discord Bot was not running.");
-            logToFile("Discord Bot was not running."); // Log to file
+
+        synchronized (activeSinks) {
+            if (activeSinks.isEmpty()) {
+                StaffMode.LOGGER.info("Discord Bot was not running.");
+                logToFile("Discord Bot was not running."); // Log to file
+            }
+            for (NotificationSinkProvider provider : List.copyOf(activeSinks.keySet())) {
+                stopSink(provider);
+            }
         }
+        minecraftServerInstance = null;
     }
 
+    // Callers hold HTTP_SERVER_LOCK
     private static void startHttpServer() throws IOException {
-        httpServer = HttpServer.create(new InetSocketAddress(HTTP_PORT), 0);
-        httpServer.createContext("/updatePlayerCount", DiscordBotManager::handlePlayerCountUpdate);
-        httpServer.setExecutor(Executors.newFixedThreadPool(2));
-        httpServer.start();
+        HttpServer server = HttpServer.create(new InetSocketAddress(HTTP_PORT), 0);
+        server.createContext("/updatePlayerCount", DiscordBotManager::handlePlayerCountUpdate);
+        server.createContext("/playerCountHistory", DiscordBotManager::handlePlayerCountHistory);
+        httpExecutor = Executors.newFixedThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable, "StaffMode-HTTP");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(httpExecutor);
+        server.start();
+        httpServer = server;
         StaffMode.LOGGER.info("Internal HTTP server started on port {}", HTTP_PORT);
         logToFile(String.format("Internal HTTP server started on port %d", HTTP_PORT)); // Log to file
     }
 
+    // Callers hold HTTP_SERVER_LOCK. Shuts the executor down too, or every restart would leak its threads.
+    private static void stopHttpServer() {
+        if (httpServer != null) {
+            httpServer.stop(0);
+            httpServer = null;
+        }
+        if (httpExecutor != null) {
+            httpExecutor.shutdown();
+            httpExecutor = null;
+        }
+    }
+
     private static void handlePlayerCountUpdate(HttpExchange exchange) throws IOException {
         if ("POST".equals(exchange.getRequestMethod())) {
             String query = new String(exchange.getRequestBody().readAllBytes());
@@ -174,55 +264,123 @@ public class DiscordBotManager {
         }
     }
 
-    public static void updateBotPresence() {
-        if (jda != null && jda.getStatus() == JDA.Status.CONNECTED) {
-            jda.getPresence().setActivity(Activity.playing("Players: " + currentPlayerCount.get()));
+    /**
+     * GET /playerCountHistory?resolution=minute|hour returns the player and staff count series as JSON.
+     */
+    private static void handlePlayerCountHistory(HttpExchange exchange) throws IOException {
+        int status;
+        String response;
+        if ("GET".equals(exchange.getRequestMethod())) {
+            String query = exchange.getRequestURI().getQuery();
+            PlayerCountHistory.Resolution resolution = PlayerCountHistory.Resolution.MINUTE;
+            if (query != null && query.startsWith("resolution=")) {
+                try {
+                    resolution = PlayerCountHistory.Resolution.valueOf(query.substring("resolution=".length()).toUpperCase());
+                } catch (IllegalArgumentException e) {
+                    resolution = null;
+                }
+            }
+            if (resolution != null) {
+                status = 200;
+                response = PlayerCountHistory.toJson(resolution).toString();
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+            } else {
+                status = 400;
+                response = "Bad Request";
+            }
         } else {
-            StaffMode.LOGGER.warn("JDA not connected, cannot update bot presence.");
-            logToFile("JDA not connected, cannot update bot presence. Current Players: " + currentPlayerCount.get()); // Log to file
+            status = 405;
+            response = "Method Not Allowed";
+        }
+        byte[] body = response.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(body);
+        }
+    }
+
+    public static void updateBotPresence() {
+        boolean updated = false;
+        for (NotificationSink sink : sinks) {
+            if (sink.isConnected()) {
+                sink.updatePresence(currentPlayerCount.get());
+                updated = true;
+            }
+        }
+        if (!updated) {
+            StaffMode.LOGGER.warn("Discord not connected, cannot update bot presence.");
+            logToFile("Discord not connected, cannot update bot presence. Current Players: " + currentPlayerCount.get()); // Log to file
         }
     }
 
     public static void sendMessageToChannel(long channelId, String message) {
-        if (jda != null && jda.getStatus() == JDA.Status.CONNECTED) {
-            jda.getTextChannelById(channelId)
-                    .sendMessage(message)
-                    .queue(null, throwable -> {
-                        StaffMode.LOGGER.error("Failed to send message to Discord channel {}: {}", channelId, throwable.getMessage());
-                        logToFile(String.format("Failed to send message to Discord channel %d: %s", channelId, throwable.getMessage())); // Log to file
-                    });
-        } else {
-            StaffMode.LOGGER.warn("JDA not connected, cannot send message to channel {}. Message: {}", channelId, message);
+        StaffModeEvents.AuditEnqueue enqueueEvent = new StaffModeEvents.AuditEnqueue();
+        enqueueEvent.channelId = channelId;
+        enqueueEvent.messageLength = message.length();
+        enqueueEvent.commit();
+
+        NotificationSink sinkOverride = messageSinkOverride;
+        if (sinkOverride != null) {
+            sinkOverride.sendMessage(channelId, message);
+            return;
+        }
+
+        boolean delivered = false;
+        for (NotificationSink sink : sinks) {
+            if (sink.isConnected()) {
+                sink.sendMessage(channelId, message);
+                delivered = true;
+            }
+        }
+        if (!delivered) {
+            recordDrop(channelId, "Discord not connected");
+            StaffMode.LOGGER.warn("Discord not connected, cannot send message to channel {}. Message: {}", channelId, message);
             logToFile(String.format("Discord Bot not connected. Message for channel %d: %s", channelId, message)); // Log to file
         }
     }
 
-    private static void sendInitialServerStatusMessage() {
-        String startTime = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"));
-        String message = String.format("✅ **Server Started!**\nTime: `%s EDT`", startTime);
+    /**
+     * Called by sinks when a message they accepted could not be delivered.
+     */
+    public static void reportDeliveryFailure(long channelId, String cause) {
+        recordDrop(channelId, cause);
+        StaffMode.LOGGER.error("Failed to send message to Discord channel {}: {}", channelId, cause);
+        logToFile(String.format("Failed to send message to Discord channel %d: %s", channelId, cause)); // Log to file
+    }
 
-        // Always attempt to send to Discord if connected
-        if (jda != null && jda.getStatus() == JDA.Status.CONNECTED) {
-            // Send to admin log channel
-            sendMessageToChannel(config.getAdminLogChannelId(), message);
-            // Send to server status channel
-            if (config.getServerStatusChannelId() != 0L) {
-                sendMessageToChannel(config.getServerStatusChannelId(), message);
-            }
+    /**
+     * Routes all messages to the given sink instead of Discord, or back to Discord when {@code null}.
+     */
+    public static void setMessageSink(NotificationSink sink) {
+        messageSinkOverride = sink;
+    }
+
+    private static void recordDrop(long channelId, String cause) {
+        StaffModeEvents.AuditDrop dropEvent = new StaffModeEvents.AuditDrop();
+        dropEvent.channelId = channelId;
+        dropEvent.cause = cause;
+        dropEvent.commit();
+    }
+
+    // Sends a server status message to the admin log and server status channels of one sink
+    private static void sendServerStatusTo(NotificationSink sink, String message) {
+        StaffModeConfig config = StaffModeConfig.getInstance();
+        if (!sink.isConnected()) {
+            return;
+        }
+        // Send to admin log channel
+        sink.sendMessage(config.getAdminLogChannelId(), message);
+        // Send to server status channel
+        if (config.getServerStatusChannelId() != 0L) {
+            sink.sendMessage(config.getServerStatusChannelId(), message);
         }
+    }
 
+    private static void logServerStatus(String message) {
         // Always log to file if enabled
-        if (config.isLogToFileEnabled()) {
+        if (StaffModeConfig.getInstance().isLogToFileEnabled()) {
             logToFile("[Server Status] " + message.replace("`", "")); // Remove markdown for plain text log
         }
-
-        if (minecraftServerInstance != null) {
-            int playerCount = minecraftServerInstance.getCurrentPlayerCount();
-            currentPlayerCount.set(playerCount);
-            updateBotPresence(); // This will log presence update to file if JDA not connected
-            StaffMode.LOGGER.info("Initial player count updated: {}", playerCount);
-            logToFile(String.format("Initial player count updated: %d", playerCount)); // Log to file
-        }
     }
 
     private static void sendServerStoppingMessage() {
@@ -230,28 +388,16 @@ public class DiscordBotManager {
         String message = String.format("⛔ **Server Stopping!**\nTime: `%s EDT`", stopTime);
 
         // Always attempt to send to Discord if connected
-        if (jda != null && jda.getStatus() == JDA.Status.CONNECTED) {
-            // Send to admin log channel
-            sendMessageToChannel(config.getAdminLogChannelId(), message);
-            // Send to server status channel
-            if (config.getServerStatusChannelId() != 0L) {
-                sendMessageToChannel(config.getServerStatusChannelId(), message);
-            }
-        }
-
-        // Always log to file if enabled
-        if (config.isLogToFileEnabled()) {
-            logToFile("[Server Status] " + message.replace("`", "")); // Remove markdown for plain text log
+        for (NotificationSink sink : sinks) {
+            sendServerStatusTo(sink, message);
         }
+        logServerStatus(message);
 
-        // Give a small delay for Discord message to send if the bot is active
-        if (jda != null && jda.getStatus() == JDA.Status.CONNECTED) {
-            try {
-                Thread.sleep(1000);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                StaffMode.LOGGER.warn("Interrupted while waiting for Discord 'Server Stopping' message to send.");
-                logToFile("Interrupted while waiting for Discord 'Server Stopping' message to send."); // Log to file
+        // Wait for queued Discord messages (including the stopping message) to be delivered,
+        // instead of a fixed delay. Returns as soon as Discord acknowledged all of them.
+        for (NotificationSink sink : sinks) {
+            if (sink.isConnected()) {
+                sink.flush(SHUTDOWN_FLUSH_TIMEOUT_MS);
             }
         }
     }
@@ -292,7 +438,8 @@ public class DiscordBotManager {
      *
      * @param message The message to log.
      */
-    private static void logToFile(String message) {
+    public static void logToFile(String message) {
+        StaffModeConfig config = StaffModeConfig.getInstance();
         if (config != null && config.isLogToFileEnabled() && config.getLogFilePath() != null && !config.getLogFilePath().isEmpty()) {
             try {
                 File logFile = new File(config.getLogFilePath());
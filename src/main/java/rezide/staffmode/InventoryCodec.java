@@ -0,0 +1,103 @@
+package rezide.staffmode;
+
+import com.mojang.serialization.Dynamic;
+import net.minecraft.SharedConstants;
+import net.minecraft.datafixer.Schemas;
+import net.minecraft.datafixer.TypeReferences;
+import net.minecraft.item.ItemStack;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.nbt.NbtList;
+import net.minecraft.nbt.NbtOps;
+import net.minecraft.registry.RegistryWrapper;
+
+import java.util.Arrays;
+
+/**
+ * Encoding of the inventories in staff mode data and inventory history, including ender chests. Only
+ * non-empty stacks are written, each with its slot index as a "Slot" byte, and the compound holding
+ * the list records the data version the stacks were written with under "DataVersion".
+ * <p>
+ * Inventories written before this format have neither: their stacks are in slot order with the empty
+ * slots left out, so they are read back in sequence as before. Stacks from an older data version are
+ * run through the DataFixer when they are decoded, which only happens for inventories that are read.
+ */
+final class InventoryCodec {
+
+	static final int PLAYER_INVENTORY_SIZE = 41; // 36 main, 4 armor, 1 offhand
+	// Builds without a data version header only ever ran on 1.21.1
+	static final int LEGACY_DATA_VERSION = 3955;
+
+	private InventoryCodec() {
+	}
+
+	static int currentDataVersion() {
+		return SharedConstants.getGameVersion().getSaveVersion().getId();
+	}
+
+	/**
+	 * @return The data version stored on {@code tag}, or {@link #LEGACY_DATA_VERSION} if it has none.
+	 */
+	static int getDataVersion(NbtCompound tag) {
+		return tag.contains("DataVersion", NbtElement.INT_TYPE) ? tag.getInt("DataVersion") : LEGACY_DATA_VERSION;
+	}
+
+	static void putDataVersion(NbtCompound tag) {
+		tag.putInt("DataVersion", currentDataVersion());
+	}
+
+	static NbtList encode(RegistryWrapper.WrapperLookup lookup, ItemStack[] inventory) {
+		NbtList itemsTag = new NbtList();
+		for (int i = 0; i < inventory.length; i++) {
+			ItemStack stack = inventory[i];
+			if (stack == null || stack.isEmpty()) {
+				continue;
+			}
+			NbtCompound itemNbt = new NbtCompound();
+			itemNbt.putByte("Slot", (byte) i);
+			itemsTag.add(stack.encode(lookup, itemNbt));
+		}
+		return itemsTag;
+	}
+
+	/**
+	 * @param dataVersion The data version the stacks were written with.
+	 * @return A full player inventory; slots without a stack hold {@link ItemStack#EMPTY}.
+	 */
+	static ItemStack[] decode(RegistryWrapper.WrapperLookup lookup, NbtList itemsTag, int dataVersion) {
+		return decode(lookup, itemsTag, dataVersion, PLAYER_INVENTORY_SIZE);
+	}
+
+	/**
+	 * @param size The size of the inventory the stacks came from, e.g. 27 for an ender chest.
+	 */
+	static ItemStack[] decode(RegistryWrapper.WrapperLookup lookup, NbtList itemsTag, int dataVersion, int size) {
+		ItemStack[] inventory = new ItemStack[size];
+		Arrays.fill(inventory, ItemStack.EMPTY);
+		int currentVersion = currentDataVersion();
+		for (int i = 0; i < itemsTag.size(); i++) {
+			NbtCompound itemNbt = itemsTag.getCompound(i);
+			int slot = itemNbt.contains("Slot", NbtElement.BYTE_TYPE) ? itemNbt.getByte("Slot") & 0xFF : i;
+			if (slot >= inventory.length) {
+				continue;
+			}
+			if (dataVersion < currentVersion) {
+				itemNbt = (NbtCompound) Schemas.getFixer()
+						.update(TypeReferences.ITEM_STACK, new Dynamic<>(NbtOps.INSTANCE, itemNbt), dataVersion, currentVersion)
+						.getValue();
+			}
+			inventory[slot] = ItemStack.fromNbt(lookup, itemNbt).orElse(ItemStack.EMPTY);
+		}
+		return inventory;
+	}
+
+	static int countStacks(ItemStack[] inventory) {
+		int stacks = 0;
+		for (ItemStack stack : inventory) {
+			if (stack != null && !stack.isEmpty()) {
+				stacks++;
+			}
+		}
+		return stacks;
+	}
+}
@@ -0,0 +1,732 @@
+package rezide.staffmode;
+
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.NbtList;
+import net.minecraft.nbt.NbtSizeTracker;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * The default store: {@code staff_mode_data.nbt} for players in staff mode and one
+ * {@code inventory_history/<uuid>.nbt} per player, in the world's {@code staff-mode} directory.
+ * Not shared between servers. Files are never written in place: a temporary file is written and moved
+ * over the old one.
+ * <p>
+ * A history file is a header followed by one record per snapshot, each compressed NBT with its own
+ * length and CRC32, so a damaged file still yields its intact snapshots. Files that fail to read are
+ * moved to {@code inventory_history_quarantine} and replaced by the snapshots salvaged from them.
+ * <p>
+ * Saved histories are group-committed: they are collected for {@link #GROUP_COMMIT_DELAY_MS},
+ * appended to {@code history.journal} with one fsync, and only then written to their files, unsynced.
+ * The files are synced and the journal emptied once it outgrows {@link #CHECKPOINT_BYTES}, on
+ * {@link #flush} and on close. After a crash, {@link #loadHistories} replays the journal first.
+ */
+final class NbtStaffStateStore implements StaffStateStore {
+
+	static final String JOURNAL_FILE = "history.journal";
+	static final String QUARANTINE_DIRECTORY = "inventory_history_quarantine";
+
+	private static final int FILE_MAGIC = 0x534D4846; // "SMHF"
+	private static final int FILE_VERSION = 1;
+	private static final int END_OF_RECORDS = -1;
+	private static final int DELETED = -1; // Journal frame length of a deleted history
+	private static final int FRAME_HEADER_SIZE = 24; // UUID, length, CRC32
+	private static final long GROUP_COMMIT_DELAY_MS = 100;
+	private static final long CHECKPOINT_BYTES = 8L * 1024 * 1024;
+	private static final NbtCompound DELETE = new NbtCompound(); // Pending value of a deleted history
+
+	private final File dataFile;
+	private final File historyDirectory;
+	private final File journalFile;
+	private final File quarantineDirectory;
+
+	// Histories saved since the last commit; guarded by itself, like the fields below it
+	private final Map<UUID, NbtCompound> pendingHistories = new LinkedHashMap<>();
+	private ScheduledExecutorService committer; // Started by the first save
+	private boolean commitScheduled;
+	private boolean closed;
+
+	// Guarded by commitLock
+	private final Object commitLock = new Object();
+	private FileChannel journal;
+	private final Set<UUID> unsyncedFiles = new HashSet<>();
+	private boolean filesBehindJournal; // A file failed to write after its journal entry was synced
+	private long journalTornAt = -1; // Where a failed append could not be cut off
+
+	NbtStaffStateStore(File dataFile, File historyDirectory) {
+		this.dataFile = dataFile;
+		this.historyDirectory = historyDirectory;
+		this.journalFile = new File(historyDirectory, JOURNAL_FILE);
+		this.quarantineDirectory = new File(historyDirectory.getParentFile(), QUARANTINE_DIRECTORY);
+	}
+
+	@Override
+	public String getName() {
+		return "nbt";
+	}
+
+	@Override
+	public Map<UUID, NbtCompound> loadStaffData() throws IOException {
+		Map<UUID, NbtCompound> entries = new HashMap<>();
+		if (!dataFile.exists()) {
+			StaffMode.LOGGER.info("No Staff Mode data file found. Starting with empty data.");
+			return entries;
+		}
+		return readStaffData(dataFile);
+	}
+
+	/**
+	 * Reads a {@code staff_mode_data.nbt} file, e.g. one extracted from an archive before it is installed.
+	 */
+	static Map<UUID, NbtCompound> readStaffData(File file) throws IOException {
+		Map<UUID, NbtCompound> entries = new HashMap<>();
+		NbtCompound rootTag = readCompressedNbt(file);
+
+		// The file keeps one list per field, so fields are merged back into one entry per player
+		NbtList inventoryListTag = rootTag.getList("SavedInventories", NbtCompound.COMPOUND_TYPE);
+		for (int i = 0; i < inventoryListTag.size(); i++) {
+			NbtCompound playerEntryTag = inventoryListTag.getCompound(i);
+			NbtCompound data = entry(entries, playerEntryTag);
+			data.put("Inventory", playerEntryTag.getList("Inventory", NbtCompound.COMPOUND_TYPE));
+			if (playerEntryTag.contains("DataVersion")) {
+				data.putInt("DataVersion", playerEntryTag.getInt("DataVersion"));
+			}
+		}
+		NbtList gameModeListTag = rootTag.getList("OriginalGameModes", NbtCompound.COMPOUND_TYPE);
+		for (int i = 0; i < gameModeListTag.size(); i++) {
+			NbtCompound playerEntryTag = gameModeListTag.getCompound(i);
+			entry(entries, playerEntryTag).putString("GameMode", playerEntryTag.getString("GameMode"));
+		}
+		NbtList opListTag = rootTag.getList("WasOriginallyOp", NbtCompound.COMPOUND_TYPE);
+		for (int i = 0; i < opListTag.size(); i++) {
+			NbtCompound playerEntryTag = opListTag.getCompound(i);
+			entry(entries, playerEntryTag).putBoolean("IsOp", playerEntryTag.getBoolean("IsOp"));
+		}
+		return entries;
+	}
+
+	private static NbtCompound entry(Map<UUID, NbtCompound> entries, NbtCompound playerEntryTag) {
+		return entries.computeIfAbsent(UUID.fromString(playerEntryTag.getString("UUID")), uuid -> new NbtCompound());
+	}
+
+	@Override
+	public void saveStaffData(Map<UUID, NbtCompound> entries) throws IOException {
+		NbtList inventoryListTag = new NbtList();
+		NbtList gameModeListTag = new NbtList();
+		NbtList opListTag = new NbtList();
+		for (Map.Entry<UUID, NbtCompound> entry : entries.entrySet()) {
+			String uuid = entry.getKey().toString();
+			NbtCompound data = entry.getValue();
+			if (data.contains("Inventory")) {
+				NbtCompound playerEntryTag = new NbtCompound();
+				playerEntryTag.putString("UUID", uuid);
+				playerEntryTag.put("Inventory", data.getList("Inventory", NbtCompound.COMPOUND_TYPE));
+				if (data.contains("DataVersion")) {
+					playerEntryTag.putInt("DataVersion", data.getInt("DataVersion"));
+				}
+				inventoryListTag.add(playerEntryTag);
+			}
+			if (data.contains("GameMode")) {
+				NbtCompound playerEntryTag = new NbtCompound();
+				playerEntryTag.putString("UUID", uuid);
+				playerEntryTag.putString("GameMode", data.getString("GameMode"));
+				gameModeListTag.add(playerEntryTag);
+			}
+			if (data.contains("IsOp")) {
+				NbtCompound playerEntryTag = new NbtCompound();
+				playerEntryTag.putString("UUID", uuid);
+				playerEntryTag.putBoolean("IsOp", data.getBoolean("IsOp"));
+				opListTag.add(playerEntryTag);
+			}
+		}
+		NbtCompound rootTag = new NbtCompound();
+		rootTag.put("SavedInventories", inventoryListTag);
+		rootTag.put("OriginalGameModes", gameModeListTag);
+		rootTag.put("WasOriginallyOp", opListTag);
+		// Saved on every toggle from the server thread, so not synced: durable across crashes of the server, not of the OS
+		replaceFile(dataFile.toPath(), compress(rootTag), false);
+	}
+
+	private Path getHistoryFileForPlayer(UUID playerUuid) {
+		return new File(historyDirectory, playerUuid.toString() + ".nbt").toPath();
+	}
+
+	/**
+	 * Replays the journal left by a crash, then reads every history file. Damaged files are
+	 * quarantined and rewritten with what could be salvaged.
+	 */
+	@Override
+	public Map<UUID, NbtCompound> loadHistories() {
+		Map<UUID, NbtCompound> histories = new HashMap<>();
+		synchronized (commitLock) {
+			try {
+				replayJournal();
+			} catch (IOException e) {
+				StaffMode.LOGGER.error("Failed to replay the inventory history journal: {}", e.getMessage());
+			}
+
+			File[] historyFiles = historyDirectory.listFiles((dir, name) -> name.endsWith(".nbt") || name.endsWith(".nbt.tmp"));
+			if (historyFiles == null) {
+				StaffMode.LOGGER.warn("No inventory history files found.");
+				return histories;
+			}
+			for (File file : historyFiles) {
+				if (file.getName().endsWith(".tmp")) {
+					file.delete(); // Left by a crash before the move; the journal or the old file has the data
+					continue;
+				}
+				UUID playerUuid;
+				try {
+					playerUuid = UUID.fromString(file.getName().replace(".nbt", ""));
+				} catch (IllegalArgumentException e) {
+					StaffMode.LOGGER.error("Failed to load inventory history from file {}: {}", file.getName(), e.getMessage());
+					continue;
+				}
+				Decoded decoded;
+				try {
+					decoded = decodeHistory(Files.readAllBytes(file.toPath()));
+				} catch (IOException e) {
+					quarantine(playerUuid, file, null, e.getMessage());
+					continue;
+				}
+				if (decoded.damaged()) {
+					quarantine(playerUuid, file, decoded, decoded.lostRecords() + " damaged records, " + (decoded.complete() ? "complete" : "truncated"));
+				}
+				if (decoded.snapshots() > 0) {
+					histories.put(playerUuid, decoded.history());
+				}
+			}
+		}
+		return histories;
+	}
+
+	/**
+	 * Moves a damaged history file aside and rewrites it with the snapshots salvaged from it, if any.
+	 */
+	private void quarantine(UUID playerUuid, File file, Decoded salvaged, String problem) {
+		String quarantineName = file.getName() + "." + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss"));
+		try {
+			Files.createDirectories(quarantineDirectory.toPath());
+			Files.move(file.toPath(), quarantineDirectory.toPath().resolve(quarantineName), StandardCopyOption.REPLACE_EXISTING);
+			if (salvaged != null && salvaged.snapshots() > 0) {
+				replaceFile(file.toPath(), encodeHistory(salvaged.history()), true);
+			}
+		} catch (IOException e) {
+			StaffMode.LOGGER.error("Failed to quarantine inventory history file {}: {}", file.getName(), e.getMessage());
+		}
+		int kept = salvaged != null ? salvaged.snapshots() : 0;
+		String message = String.format("Inventory history of %s was damaged (%s). Salvaged %d snapshots; the original was moved to %s/%s.",
+				playerUuid, problem, kept, QUARANTINE_DIRECTORY, quarantineName);
+		StaffMode.LOGGER.error(message);
+		DiscordBotManager.logToFile(message); // Log to file
+	}
+
+	/**
+	 * Queues the history for the next group commit and returns. Write failures are logged by the
+	 * commit; the journal keeps the history until its file is written.
+	 */
+	@Override
+	public void saveHistory(UUID playerUuid, NbtCompound history) throws IOException {
+		boolean writeThrough;
+		synchronized (pendingHistories) {
+			pendingHistories.put(playerUuid, history != null ? history : DELETE);
+			writeThrough = closed; // A late save after close is written right away
+			if (!closed && !commitScheduled) {
+				commitScheduled = true;
+				if (committer == null) {
+					committer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+						Thread thread = new Thread(runnable, "StaffMode-HistoryCommit");
+						thread.setDaemon(true);
+						return thread;
+					});
+				}
+				committer.schedule(this::commitInBackground, GROUP_COMMIT_DELAY_MS, TimeUnit.MILLISECONDS);
+			}
+		}
+		if (writeThrough) {
+			flush();
+		}
+	}
+
+	/**
+	 * Commits all histories at once and syncs them, e.g. on shutdown. {@code null} values delete.
+	 */
+	@Override
+	public void saveHistories(Map<UUID, NbtCompound> histories) throws IOException {
+		synchronized (pendingHistories) {
+			for (Map.Entry<UUID, NbtCompound> entry : histories.entrySet()) {
+				pendingHistories.put(entry.getKey(), entry.getValue() != null ? entry.getValue() : DELETE);
+			}
+		}
+		flush();
+	}
+
+	/**
+	 * Commits the pending histories and syncs every history file, leaving the journal empty. Called
+	 * before the files are read or replaced directly, e.g. by an export or import.
+	 */
+	void flush() throws IOException {
+		synchronized (commitLock) {
+			commit();
+			checkpoint();
+		}
+	}
+
+	private void commitInBackground() {
+		try {
+			commit();
+		} catch (IOException e) {
+			StaffMode.LOGGER.error("Failed to commit inventory histories: {}", e.getMessage());
+		}
+	}
+
+	private void commit() throws IOException {
+		synchronized (commitLock) {
+			Map<UUID, NbtCompound> batch;
+			synchronized (pendingHistories) {
+				batch = new LinkedHashMap<>(pendingHistories);
+				pendingHistories.clear();
+				commitScheduled = false;
+			}
+			if (batch.isEmpty()) {
+				return;
+			}
+			StaffModeEvents.HistoryCommit commitEvent = new StaffModeEvents.HistoryCommit();
+			commitEvent.begin();
+
+			Map<UUID, byte[]> encoded = new LinkedHashMap<>();
+			for (Map.Entry<UUID, NbtCompound> entry : batch.entrySet()) {
+				encoded.put(entry.getKey(), entry.getValue() == DELETE ? null : encodeHistory(entry.getValue()));
+			}
+
+			// The single durability point of the batch
+			boolean journaled;
+			try {
+				commitEvent.bytes = appendToJournal(encoded);
+				journaled = true;
+			} catch (IOException e) {
+				StaffMode.LOGGER.error("Failed to append to the inventory history journal, syncing each file instead: {}", e.getMessage());
+				journaled = false;
+			}
+
+			int failed = 0;
+			for (Map.Entry<UUID, byte[]> entry : encoded.entrySet()) {
+				try {
+					writeHistoryFile(entry.getKey(), entry.getValue(), !journaled);
+					if (journaled) {
+						unsyncedFiles.add(entry.getKey());
+					}
+				} catch (IOException e) {
+					StaffMode.LOGGER.error("Failed to save inventory history of {}: {}", entry.getKey(), e.getMessage());
+					failed++;
+				}
+			}
+			if (failed > 0 && journaled) {
+				filesBehindJournal = true; // Written from the journal by the next checkpoint
+			}
+			if (journal != null && journal.size() >= CHECKPOINT_BYTES) {
+				checkpoint();
+				commitEvent.checkpoint = true;
+			}
+			commitEvent.players = batch.size();
+			commitEvent.commit();
+			if (failed > 0 && !journaled) {
+				throw new IOException(failed + " of " + batch.size() + " inventory history files failed to save");
+			}
+		}
+	}
+
+	/**
+	 * Appends one frame per history (UUID, length or {@link #DELETED}, checksum, file content) and syncs
+	 * the journal. A failed append is cut off again, so the journal never has a torn frame before
+	 * intact ones.
+	 *
+	 * @return The number of bytes appended.
+	 */
+	private long appendToJournal(Map<UUID, byte[]> encoded) throws IOException {
+		if (journal == null) {
+			journal = FileChannel.open(journalFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		}
+		if (journalTornAt >= 0) {
+			journal.truncate(journalTornAt);
+			journalTornAt = -1;
+		}
+		long start = journal.size();
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(journal), 64 * 1024));
+			CRC32 crc = new CRC32();
+			for (Map.Entry<UUID, byte[]> entry : encoded.entrySet()) {
+				byte[] bytes = entry.getValue();
+				out.writeLong(entry.getKey().getMostSignificantBits());
+				out.writeLong(entry.getKey().getLeastSignificantBits());
+				out.writeInt(bytes != null ? bytes.length : DELETED);
+				out.writeInt(frameChecksum(crc, entry.getKey(), bytes));
+				if (bytes != null) {
+					out.write(bytes);
+				}
+			}
+			out.flush(); // Not closed, which would close the journal
+			journal.force(false);
+		} catch (IOException e) {
+			try {
+				journal.truncate(start);
+			} catch (IOException truncateError) {
+				journalTornAt = start; // Retried before the next append
+			}
+			throw e;
+		}
+		return journal.size() - start;
+	}
+
+	/**
+	 * Syncs the files written since the last checkpoint and empties the journal.
+	 */
+	private void checkpoint() throws IOException {
+		if (filesBehindJournal) {
+			replayJournal(); // Rewrites every file from the journal, then syncs and empties it
+			return;
+		}
+		if (unsyncedFiles.isEmpty() && (journal == null || journal.size() == 0)) {
+			return;
+		}
+		syncFiles();
+		truncateJournal();
+	}
+
+	private void syncFiles() throws IOException {
+		long failed = unsyncedFiles.parallelStream()
+				.filter(uuid -> {
+					Path file = getHistoryFileForPlayer(uuid);
+					if (!Files.exists(file)) {
+						return false; // Deleted
+					}
+					try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+						channel.force(false);
+						return false;
+					} catch (IOException e) {
+						StaffMode.LOGGER.error("Failed to sync inventory history of {}: {}", uuid, e.getMessage());
+						return true;
+					}
+				})
+				.count();
+		if (failed > 0) {
+			throw new IOException(failed + " inventory history files failed to sync; the journal is kept");
+		}
+		syncDirectory(historyDirectory.toPath());
+		unsyncedFiles.clear();
+	}
+
+	private void truncateJournal() throws IOException {
+		journalTornAt = -1;
+		if (journal != null) {
+			journal.truncate(0);
+			journal.force(true);
+		} else if (journalFile.exists()) {
+			try (FileChannel channel = FileChannel.open(journalFile.toPath(), StandardOpenOption.WRITE)) {
+				channel.truncate(0);
+				channel.force(true);
+			}
+		}
+	}
+
+	/**
+	 * Writes every history in the journal to its file in order, syncs the files and empties the
+	 * journal. A frame cut short or failing its checksum ends the replay: it belongs to a batch whose
+	 * sync never finished, so its files were not written either.
+	 */
+	private void replayJournal() throws IOException {
+		if (!journalFile.exists() || journalFile.length() == 0) {
+			return;
+		}
+		long remaining = journalFile.length();
+		int frames = 0;
+		boolean torn = false;
+		boolean failed = false;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile), 64 * 1024))) {
+			CRC32 crc = new CRC32();
+			while (remaining > 0) {
+				if (remaining < FRAME_HEADER_SIZE) {
+					torn = true;
+					break;
+				}
+				UUID playerUuid = new UUID(in.readLong(), in.readLong());
+				int length = in.readInt();
+				int checksum = in.readInt();
+				remaining -= FRAME_HEADER_SIZE;
+				byte[] bytes = null;
+				if (length != DELETED) {
+					if (length <= 0 || length > remaining) {
+						torn = true;
+						break;
+					}
+					bytes = in.readNBytes(length);
+					remaining -= length;
+				}
+				if (frameChecksum(crc, playerUuid, bytes) != checksum) {
+					torn = true;
+					break;
+				}
+				try {
+					writeHistoryFile(playerUuid, bytes, false);
+					unsyncedFiles.add(playerUuid);
+				} catch (IOException e) {
+					StaffMode.LOGGER.error("Failed to restore inventory history of {} from the journal: {}", playerUuid, e.getMessage());
+					failed = true;
+				}
+				frames++;
+			}
+		}
+		if (torn) {
+			StaffMode.LOGGER.warn("The inventory history journal ends in a commit cut short after {} entries; that commit is ignored.", frames);
+		}
+		if (failed) {
+			filesBehindJournal = true;
+			throw new IOException("Some histories could not be restored from the journal; it is kept for the next attempt");
+		}
+		syncFiles();
+		truncateJournal();
+		filesBehindJournal = false;
+		StaffMode.LOGGER.info("Replayed {} inventory history writes from the journal.", frames);
+	}
+
+	/**
+	 * CRC32 of the UUID and the content, so a zeroed or garbage tail does not pass as a frame.
+	 */
+	private static int frameChecksum(CRC32 crc, UUID playerUuid, byte[] bytes) {
+		crc.reset();
+		crc.update(ByteBuffer.allocate(16).putLong(playerUuid.getMostSignificantBits()).putLong(playerUuid.getLeastSignificantBits()).flip());
+		if (bytes != null) {
+			crc.update(bytes);
+		}
+		return (int) crc.getValue();
+	}
+
+	private void writeHistoryFile(UUID playerUuid, byte[] bytes, boolean sync) throws IOException {
+		Path file = getHistoryFileForPlayer(playerUuid);
+		if (bytes == null) {
+			Files.deleteIfExists(file); // Delete file if history is empty
+			return;
+		}
+		replaceFile(file, bytes, sync);
+	}
+
+	@Override
+	public void close() {
+		ScheduledExecutorService executor;
+		synchronized (pendingHistories) {
+			closed = true;
+			executor = committer;
+			committer = null;
+		}
+		if (executor != null) {
+			// Not interrupted: an interrupt during a write would close the journal
+			executor.shutdown();
+			try {
+				executor.awaitTermination(10, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		synchronized (commitLock) {
+			try {
+				flush();
+			} catch (IOException e) {
+				StaffMode.LOGGER.error("Failed to commit inventory histories on close: {}", e.getMessage());
+			}
+			if (journal != null) {
+				try {
+					journal.close();
+				} catch (IOException e) {
+					StaffMode.LOGGER.warn("Failed to close the inventory history journal: {}", e.getMessage());
+				}
+				journal = null;
+			}
+		}
+	}
+
+	// --- History file format ---
+
+	/**
+	 * A decoded history file. {@code damaged} is set if a record failed its checksum or the file ends
+	 * before its end marker.
+	 */
+	private record Decoded(NbtCompound history, int snapshots, int lostRecords, boolean complete) {
+		boolean damaged() {
+			return lostRecords > 0 || !complete;
+		}
+	}
+
+	/**
+	 * Encodes a history as the magic and version, a record with every key but "History", one record
+	 * per snapshot, and {@link #END_OF_RECORDS} followed by the number of records. A record is its
+	 * length, the CRC32 of its bytes and the compound as compressed NBT.
+	 */
+	private static byte[] encodeHistory(NbtCompound history) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(FILE_MAGIC);
+		out.writeInt(FILE_VERSION);
+
+		NbtCompound header = new NbtCompound();
+		for (String key : history.getKeys()) {
+			if (!key.equals("History")) {
+				header.put(key, history.get(key));
+			}
+		}
+		CRC32 crc = new CRC32();
+		writeRecord(out, header, crc);
+		NbtList historyListTag = history.getList("History", NbtCompound.COMPOUND_TYPE);
+		for (int i = 0; i < historyListTag.size(); i++) {
+			writeRecord(out, historyListTag.getCompound(i), crc);
+		}
+		out.writeInt(END_OF_RECORDS);
+		out.writeInt(historyListTag.size() + 1);
+		return bytes.toByteArray();
+	}
+
+	private static void writeRecord(DataOutputStream out, NbtCompound record, CRC32 crc) throws IOException {
+		byte[] bytes = compress(record);
+		crc.reset();
+		crc.update(bytes);
+		out.writeInt(bytes.length);
+		out.writeInt((int) crc.getValue());
+		out.write(bytes);
+	}
+
+	/**
+	 * Reads every intact record, skipping those that fail their checksum. Files written before this
+	 * format are a single compressed compound and are read whole.
+	 *
+	 * @throws IOException If the file is neither format, or an old-format file is unreadable.
+	 */
+	private static Decoded decodeHistory(byte[] bytes) throws IOException {
+		if (bytes.length >= 2 && (bytes[0] & 0xFF) == 0x1F && (bytes[1] & 0xFF) == 0x8B) {
+			// GZIP header: written before records, converted on the next save
+			NbtCompound history = NbtIo.readCompressed(new ByteArrayInputStream(bytes), NbtSizeTracker.ofUnlimitedBytes());
+			return new Decoded(history, history.getList("History", NbtCompound.COMPOUND_TYPE).size(), 0, true);
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		if (buffer.remaining() < 8 || buffer.getInt() != FILE_MAGIC) {
+			throw new IOException("not an inventory history file");
+		}
+		int version = buffer.getInt();
+		if (version != FILE_VERSION) {
+			throw new IOException("unsupported inventory history format " + version);
+		}
+
+		NbtCompound history = new NbtCompound();
+		NbtList historyListTag = new NbtList();
+		CRC32 crc = new CRC32();
+		int records = 0;
+		int lost = 0;
+		boolean complete = false;
+		while (buffer.remaining() >= 4) {
+			int length = buffer.getInt();
+			if (length == END_OF_RECORDS) {
+				complete = buffer.remaining() >= 4 && buffer.getInt() == records;
+				break;
+			}
+			if (length < 0 || buffer.remaining() < 4 + length) {
+				break; // Cut short, or the length itself is damaged: nothing after it can be framed
+			}
+			int checksum = buffer.getInt();
+			int offset = buffer.position();
+			buffer.position(offset + length);
+			crc.reset();
+			crc.update(bytes, offset, length);
+			NbtCompound record = null;
+			if ((int) crc.getValue() == checksum) {
+				try {
+					record = NbtIo.readCompressed(new ByteArrayInputStream(bytes, offset, length), NbtSizeTracker.ofUnlimitedBytes());
+				} catch (IOException e) {
+					// Counted as lost below
+				}
+			}
+			if (record == null) {
+				lost++;
+			} else if (records == 0) {
+				for (String key : record.getKeys()) {
+					history.put(key, record.get(key));
+				}
+			} else {
+				historyListTag.add(record);
+			}
+			records++;
+		}
+		history.put("History", historyListTag);
+		return new Decoded(history, historyListTag.size(), lost, complete);
+	}
+
+	// --- File helpers ---
+
+	private static byte[] compress(NbtCompound compound) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		NbtIo.writeCompressed(compound, bytes);
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Writes {@code bytes} to a temporary file next to {@code target} and moves it over
+	 * {@code target}, so a crash leaves either the old or the new file. With {@code sync}, the new
+	 * file and the directory entry are synced before returning.
+	 */
+	private static void replaceFile(Path target, byte[] bytes, boolean sync) throws IOException {
+		Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+		try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer buffer = ByteBuffer.wrap(bytes);
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			if (sync) {
+				channel.force(false);
+			}
+		}
+		Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		if (sync) {
+			syncDirectory(target.getParent());
+		}
+	}
+
+	private static void syncDirectory(Path directory) {
+		try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+			channel.force(true);
+		} catch (IOException e) {
+			// Directories cannot be opened on every platform, e.g. Windows; the move itself is still atomic
+		}
+	}
+
+	private static NbtCompound readCompressedNbt(File file) throws IOException {
+		try (FileInputStream fis = new FileInputStream(file);
+			 BufferedInputStream bis = new BufferedInputStream(fis)) {
+			return NbtIo.readCompressed(bis, NbtSizeTracker.ofUnlimitedBytes());
+		}
+	}
+}
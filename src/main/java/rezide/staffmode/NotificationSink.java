@@ -0,0 +1,39 @@
+package rezide.staffmode;
+
+/**
+ * Destination for the mod's audit and status messages. Discord is provided by the optional
+ * {@code staff-mode-discord} module; other sinks can replace it, e.g. a local stub in the load-test harness.
+ */
+public interface NotificationSink {
+
+	/**
+	 * Delivers a message to the given channel. Must not block the calling (usually server) thread.
+	 */
+	void sendMessage(long channelId, String message);
+
+	default boolean isConnected() {
+		return true;
+	}
+
+	/**
+	 * Starts connecting in the background. {@code onReady} runs once the sink can deliver messages.
+	 */
+	default void start(Runnable onReady) {
+		onReady.run();
+	}
+
+	default void stop() {
+	}
+
+	default void updatePresence(int playerCount) {
+	}
+
+	/**
+	 * Waits up to {@code timeoutMs} for messages that were accepted but not delivered yet.
+	 */
+	default void flush(long timeoutMs) {
+	}
+
+	default void onConfigReloaded(StaffModeConfig previous, StaffModeConfig current) {
+	}
+}
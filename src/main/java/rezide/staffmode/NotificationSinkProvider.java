@@ -0,0 +1,19 @@
+package rezide.staffmode;
+
+/**
+ * Creates a {@link NotificationSink}. Integration mods register an implementation under the
+ * {@code "staff-mode:notification-sink"} entrypoint in their fabric.mod.json. Providers are
+ * instantiated at server start, so they must not touch the integration's library classes until
+ * {@link #create()} is called.
+ */
+public interface NotificationSinkProvider {
+
+	String getName();
+
+	/**
+	 * @return Whether the config has what this sink needs, e.g. a bot token.
+	 */
+	boolean isEnabled(StaffModeConfig config);
+
+	NotificationSink create();
+}
@@ -0,0 +1,131 @@
+package rezide.staffmode;
+
+import net.minecraft.datafixer.DataFixTypes;
+import net.minecraft.datafixer.Schemas;
+import net.minecraft.item.ItemStack;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.nbt.NbtHelper;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.NbtList;
+import net.minecraft.nbt.NbtSizeTracker;
+import net.minecraft.registry.RegistryWrapper;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.util.Util;
+import net.minecraft.util.WorldSavePath;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Rewrites the inventory in an offline player's {@code playerdata/<uuid>.dat} on the IO worker
+ * pool. While an edit is running the player is locked: {@code PlayerManagerMixin} refuses their
+ * login, and drops them before their data is loaded if they passed the login check before the edit
+ * started, so the server never loads a half-written file or overwrites the edit on logout.
+ * <p>
+ * The file is brought up to the current data version before it is edited, the way the server does
+ * when it loads it, and written back with that version so the edited stacks are not fixed twice.
+ */
+public final class OfflineInventoryEditor {
+
+	private static final int PLAYER_INVENTORY_SIZE = 41;
+	private static final Set<UUID> LOCKED_PLAYERS = ConcurrentHashMap.newKeySet();
+
+	private OfflineInventoryEditor() {
+	}
+
+	public static boolean isLocked(UUID playerUuid) {
+		return LOCKED_PLAYERS.contains(playerUuid);
+	}
+
+	static boolean hasPlayerData(MinecraftServer server, UUID playerUuid) {
+		return Files.exists(getPlayerDataFile(server, playerUuid));
+	}
+
+	/**
+	 * Locks the player and replaces their saved inventory with {@code inventory} off the server thread.
+	 * Must be called on the server thread while the player is offline. The lock is released when the
+	 * returned future completes.
+	 *
+	 * @return The inventory that was saved before the edit, or a failed future if the player is
+	 * already being edited or the file could not be rewritten.
+	 */
+	static CompletableFuture<ItemStack[]> replaceInventory(MinecraftServer server, UUID playerUuid, ItemStack[] inventory) {
+		if (!LOCKED_PLAYERS.add(playerUuid)) {
+			return CompletableFuture.failedFuture(new IllegalStateException("An offline edit for this player is already running"));
+		}
+		Path playerDataFile = getPlayerDataFile(server, playerUuid);
+		RegistryWrapper.WrapperLookup lookup = server.getRegistryManager();
+		// Copy the stacks on the server thread; the snapshot they come from stays in use there
+		ItemStack[] newInventory = Arrays.stream(inventory).map(stack -> stack == null ? ItemStack.EMPTY : stack.copy()).toArray(ItemStack[]::new);
+
+		return CompletableFuture.supplyAsync(() -> {
+			try {
+				NbtCompound playerTag = NbtIo.readCompressed(playerDataFile, NbtSizeTracker.ofUnlimitedBytes());
+				// Same as PlayerSaveHandler.loadPlayerData, so stacks saved by an older version decode
+				playerTag = DataFixTypes.PLAYER.update(Schemas.getFixer(), playerTag, NbtHelper.getDataVersion(playerTag, -1));
+				ItemStack[] previousInventory = readInventory(lookup, playerTag.getList("Inventory", NbtElement.COMPOUND_TYPE));
+				playerTag.put("Inventory", writeInventory(lookup, newInventory));
+				InventoryCodec.putDataVersion(playerTag);
+
+				// Same replace-with-backup scheme the vanilla player save handler uses
+				Path directory = playerDataFile.getParent();
+				Path tempFile = Files.createTempFile(directory, playerUuid + "-", ".dat");
+				NbtIo.writeCompressed(playerTag, tempFile);
+				Util.backupAndReplace(playerDataFile, tempFile, directory.resolve(playerUuid + ".dat_old"));
+				return previousInventory;
+			} catch (IOException e) {
+				throw new CompletionException(e);
+			} finally {
+				LOCKED_PLAYERS.remove(playerUuid);
+			}
+		}, Util.getIoWorkerExecutor());
+	}
+
+	private static Path getPlayerDataFile(MinecraftServer server, UUID playerUuid) {
+		return server.getSavePath(WorldSavePath.PLAYERDATA).resolve(playerUuid + ".dat");
+	}
+
+	// Slot numbers follow PlayerInventory.writeNbt: 0-35 main, 100-103 armor, -106 offhand
+	private static ItemStack[] readInventory(RegistryWrapper.WrapperLookup lookup, NbtList inventoryTag) {
+		ItemStack[] inventory = new ItemStack[PLAYER_INVENTORY_SIZE];
+		Arrays.fill(inventory, ItemStack.EMPTY);
+		for (int i = 0; i < inventoryTag.size(); i++) {
+			NbtCompound itemTag = inventoryTag.getCompound(i);
+			int slot = itemTag.getByte("Slot");
+			int index;
+			if (slot >= 0 && slot < 36) {
+				index = slot;
+			} else if (slot >= 100 && slot < 104) {
+				index = 36 + slot - 100;
+			} else if (slot == -106) {
+				index = 40;
+			} else {
+				continue;
+			}
+			inventory[index] = ItemStack.fromNbt(lookup, itemTag).orElse(ItemStack.EMPTY);
+		}
+		return inventory;
+	}
+
+	private static NbtList writeInventory(RegistryWrapper.WrapperLookup lookup, ItemStack[] inventory) {
+		NbtList inventoryTag = new NbtList();
+		for (int i = 0; i < inventory.length && i < PLAYER_INVENTORY_SIZE; i++) {
+			if (inventory[i].isEmpty()) {
+				continue;
+			}
+			int slot = i < 36 ? i : i < 40 ? 100 + i - 36 : -106;
+			NbtCompound itemTag = new NbtCompound();
+			itemTag.putByte("Slot", (byte) slot);
+			inventoryTag.add(inventory[i].encode(lookup, itemTag));
+		}
+		return inventoryTag;
+	}
+}
@@ -0,0 +1,111 @@
+package rezide.staffmode;
+
+import net.minecraft.entity.player.PlayerInventory;
+import net.minecraft.inventory.EnderChestInventory;
+import net.minecraft.scoreboard.Team;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.network.ServerPlayerEntity;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Takes survival inventory snapshots of selected players every
+ * {@code periodicSnapshotIntervalSeconds}, but only when the inventory or ender chest changed since
+ * the last one.
+ * <p>
+ * Each player is checked in the tick given by their UUID hash modulo the interval, so checks are
+ * spread evenly over the interval, and at most {@link #MAX_CAPTURES_PER_TICK} snapshots are taken
+ * per tick; the rest wait for the following ticks. A change is detected by comparing the
+ * {@linkplain PlayerInventorySnapshot#fingerprint fingerprints} of both, computed in place without
+ * copying stacks, with the ones from the last capture. The inventory's change counter is not used
+ * because {@code setStack} (commands, most mod code) does not bump it.
+ * <p>
+ * Only touched on the server thread.
+ */
+final class PeriodicSnapshotter {
+
+	// Reason of the snapshots taken here; StaffMode caps them separately from the others
+	static final String REASON = "periodic";
+	private static final int MAX_CAPTURES_PER_TICK = 4;
+
+	private static final Map<UUID, Long> lastCapturedHashes = new HashMap<>();
+	private static final Set<UUID> duePlayers = new LinkedHashSet<>();
+
+	private PeriodicSnapshotter() {
+	}
+
+	static void tick(MinecraftServer server) {
+		StaffModeConfig config = StaffModeConfig.getInstance();
+		int intervalTicks = config.getPeriodicSnapshotIntervalSeconds() * 20;
+		if (intervalTicks <= 0) {
+			if (!duePlayers.isEmpty()) {
+				duePlayers.clear();
+			}
+			return;
+		}
+		List<String> selectors = config.getPeriodicSnapshotPlayers();
+		if (selectors.isEmpty()) {
+			return;
+		}
+
+		long perfStart = StaffModePerf.start();
+		int phase = server.getTicks() % intervalTicks;
+		for (ServerPlayerEntity player : server.getPlayerManager().getPlayerList()) {
+			UUID uuid = player.getUuid();
+			if (Math.floorMod(uuid.hashCode(), intervalTicks) == phase && isSelected(player, selectors)) {
+				duePlayers.add(uuid);
+			}
+		}
+
+		int captured = 0;
+		Iterator<UUID> iterator = duePlayers.iterator();
+		while (captured < MAX_CAPTURES_PER_TICK && iterator.hasNext()) {
+			UUID uuid = iterator.next();
+			iterator.remove();
+			ServerPlayerEntity player = server.getPlayerManager().getPlayer(uuid);
+			// Creative inventories in staff mode are not worth keeping
+			if (player == null || StaffMode.isPlayerInStaffMode(uuid)) {
+				continue;
+			}
+			PlayerInventory inventory = player.getInventory();
+			EnderChestInventory enderChest = player.getEnderChestInventory();
+			long hash = PlayerInventorySnapshot.fingerprint(inventory.size(), inventory::getStack) * 31
+					+ PlayerInventorySnapshot.fingerprint(enderChest.size(), enderChest::getStack);
+			Long lastHash = lastCapturedHashes.put(uuid, hash);
+			if (lastHash == null || lastHash != hash) {
+				StaffMode.addInventorySnapshot(player, REASON);
+				captured++;
+			}
+		}
+		StaffModePerf.stop(StaffModePerf.Probe.PERIODIC_SNAPSHOT, perfStart);
+	}
+
+	static void forget(UUID uuid) {
+		lastCapturedHashes.remove(uuid);
+		duePlayers.remove(uuid);
+	}
+
+	private static boolean isSelected(ServerPlayerEntity player, List<String> selectors) {
+		for (String selector : selectors) {
+			if (selector.equals("*")) {
+				return true;
+			} else if (selector.startsWith("team:")) {
+				Team team = player.getScoreboardTeam();
+				if (team != null && team.getName().equals(selector.substring("team:".length()))) {
+					return true;
+				}
+			} else if (selector.equalsIgnoreCase(player.getGameProfile().getName())
+					|| selector.toLowerCase(Locale.ROOT).equals(player.getUuidAsString())) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,243 @@
+package rezide.staffmode;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Player and staff-in-mode counts over time, kept in fixed-size primitive ring buffers:
+ * one slot per minute for the last 24 hours and one per hour for the last 30 days. Each slot holds
+ * the peak value seen during its interval, or -1 if the server was not running.
+ * <p>
+ * The buffers are saved as a small binary file next to the staff mode data (about 10 KB) whenever
+ * an hour completes and on shutdown, and served as JSON from {@code /playerCountHistory} on the
+ * internal HTTP server.
+ */
+public final class PlayerCountHistory {
+
+	public enum Resolution {
+		MINUTE(60, 1440),
+		HOUR(3600, 720);
+
+		private final int slotSeconds;
+		private final int capacity;
+
+		Resolution(int slotSeconds, int capacity) {
+			this.slotSeconds = slotSeconds;
+			this.capacity = capacity;
+		}
+	}
+
+	private static final int FILE_MAGIC = 0x53504348; // "SPCH"
+	private static final int FILE_VERSION = 1;
+
+	private static final Ring[] RINGS = {new Ring(Resolution.MINUTE), new Ring(Resolution.HOUR)};
+
+	private static File historyFile;
+
+	private PlayerCountHistory() {
+	}
+
+	/**
+	 * Records the current counts. Cheap enough to call every second from the server thread.
+	 */
+	public static void sample(long epochMillis, int players, int staff) {
+		long epochSeconds = epochMillis / 1000L;
+		boolean hourCompleted;
+		synchronized (RINGS) {
+			for (Ring ring : RINGS) {
+				ring.record(epochSeconds / ring.resolution.slotSeconds, players, staff);
+			}
+			hourCompleted = RINGS[1].advancedSinceSave;
+			RINGS[1].advancedSinceSave = false;
+		}
+		if (hourCompleted) {
+			saveAsync();
+		}
+	}
+
+	public static JsonObject toJson(Resolution resolution) {
+		Ring ring = RINGS[resolution.ordinal()];
+		JsonObject json = new JsonObject();
+		JsonArray playersJson = new JsonArray();
+		JsonArray staffJson = new JsonArray();
+		synchronized (RINGS) {
+			json.addProperty("resolution", resolution.name().toLowerCase());
+			json.addProperty("intervalSeconds", resolution.slotSeconds);
+			// Start of the newest slot; the arrays run oldest to newest and end at this slot
+			json.addProperty("end", ring.lastSlot < 0 ? 0L : ring.lastSlot * resolution.slotSeconds);
+			for (int i = 1; i <= resolution.capacity; i++) {
+				int index = (int) Math.floorMod(ring.lastSlot + i, (long) resolution.capacity);
+				if (ring.lastSlot < 0 || ring.players[index] < 0) {
+					playersJson.add((Number) null);
+					staffJson.add((Number) null);
+				} else {
+					playersJson.add(ring.players[index]);
+					staffJson.add(ring.staff[index]);
+				}
+			}
+		}
+		json.add("players", playersJson);
+		json.add("staff", staffJson);
+		return json;
+	}
+
+	public static void load(File file) {
+		historyFile = file;
+		synchronized (RINGS) {
+			for (Ring ring : RINGS) {
+				ring.clear();
+			}
+			if (!file.exists()) {
+				return;
+			}
+			try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+				if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION) {
+					StaffMode.LOGGER.warn("Ignoring player count history with unknown format: {}", file.getAbsolutePath());
+					return;
+				}
+				int ringCount = in.readInt();
+				for (int r = 0; r < ringCount; r++) {
+					int slotSeconds = in.readInt();
+					int capacity = in.readInt();
+					long lastSlot = in.readLong();
+					short[] players = new short[capacity];
+					short[] staff = new short[capacity];
+					for (int i = 0; i < capacity; i++) {
+						players[i] = in.readShort();
+					}
+					for (int i = 0; i < capacity; i++) {
+						staff[i] = in.readShort();
+					}
+					for (Ring ring : RINGS) {
+						// Skip rings whose layout changed since the file was written
+						if (ring.resolution.slotSeconds == slotSeconds && ring.resolution.capacity == capacity) {
+							ring.lastSlot = lastSlot;
+							System.arraycopy(players, 0, ring.players, 0, capacity);
+							System.arraycopy(staff, 0, ring.staff, 0, capacity);
+						}
+					}
+				}
+				StaffMode.LOGGER.info("Loaded player count history from {}", file.getAbsolutePath());
+			} catch (IOException e) {
+				StaffMode.LOGGER.error("Failed to load player count history: {}", e.getMessage());
+				for (Ring ring : RINGS) {
+					ring.clear();
+				}
+			}
+		}
+	}
+
+	public static void save() {
+		File file = historyFile;
+		if (file == null) {
+			return;
+		}
+		byte[] data;
+		synchronized (RINGS) {
+			data = encode();
+		}
+		write(file, data);
+	}
+
+	private static void saveAsync() {
+		File file = historyFile;
+		if (file == null) {
+			return;
+		}
+		byte[] data;
+		synchronized (RINGS) {
+			data = encode();
+		}
+		CompletableFuture.runAsync(() -> write(file, data));
+	}
+
+	// Must hold the RINGS lock
+	private static byte[] encode() {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeInt(FILE_MAGIC);
+			out.writeInt(FILE_VERSION);
+			out.writeInt(RINGS.length);
+			for (Ring ring : RINGS) {
+				out.writeInt(ring.resolution.slotSeconds);
+				out.writeInt(ring.resolution.capacity);
+				out.writeLong(ring.lastSlot);
+				for (short value : ring.players) {
+					out.writeShort(value);
+				}
+				for (short value : ring.staff) {
+					out.writeShort(value);
+				}
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException(e); // Cannot happen for an in-memory stream
+		}
+		return bytes.toByteArray();
+	}
+
+	private static synchronized void write(File file, byte[] data) {
+		File tempFile = new File(file.getParentFile(), file.getName() + ".tmp");
+		try {
+			try (BufferedOutputStream out = new BufferedOutputStream(Files.newOutputStream(tempFile.toPath()))) {
+				out.write(data);
+			}
+			Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			StaffMode.LOGGER.error("Failed to save player count history: {}", e.getMessage());
+		}
+	}
+
+	private static final class Ring {
+		private final Resolution resolution;
+		private final short[] players;
+		private final short[] staff;
+		// Epoch slot number of the newest slot, or -1 if nothing was recorded yet
+		private long lastSlot = -1;
+		private boolean advancedSinceSave;
+
+		private Ring(Resolution resolution) {
+			this.resolution = resolution;
+			this.players = new short[resolution.capacity];
+			this.staff = new short[resolution.capacity];
+			clear();
+		}
+
+		private void clear() {
+			Arrays.fill(players, (short) -1);
+			Arrays.fill(staff, (short) -1);
+			lastSlot = -1;
+		}
+
+		private void record(long slot, int playerCount, int staffCount) {
+			if (lastSlot < 0) {
+				lastSlot = slot;
+			} else if (slot > lastSlot) {
+				// Mark the slots skipped while the server was down as empty
+				long skipped = Math.min(slot - lastSlot, resolution.capacity);
+				for (long s = slot - skipped + 1; s <= slot; s++) {
+					int index = (int) Math.floorMod(s, (long) resolution.capacity);
+					players[index] = -1;
+					staff[index] = -1;
+				}
+				lastSlot = slot;
+				advancedSinceSave = true;
+			}
+			// If the clock went backwards, keep writing into the newest slot
+			int index = (int) Math.floorMod(lastSlot, (long) resolution.capacity);
+			players[index] = (short) Math.max(players[index], Math.min(playerCount, Short.MAX_VALUE));
+			staff[index] = (short) Math.max(staff[index], Math.min(staffCount, Short.MAX_VALUE));
+		}
+	}
+}
@@ -0,0 +1,231 @@
+package rezide.staffmode;
+
+import net.minecraft.item.ItemStack;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.nbt.NbtList;
+import net.minecraft.nbt.NbtString;
+import net.minecraft.registry.Registries;
+import net.minecraft.registry.RegistryWrapper;
+import net.minecraft.server.network.ServerPlayerEntity;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.function.IntFunction;
+
+// Snapshot class to store inventory and metadata
+class PlayerInventorySnapshot {
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+	// Only the latest identical captures are listed; older ones are just counted
+	private static final int MAX_LISTED_DUPLICATES = 5;
+
+	public final String timestamp;
+	public final String reason;
+	// Number of later captures with identical contents, and the latest of them as "timestamp reason", oldest first
+	private int duplicateCount;
+	private final ArrayDeque<String> recentDuplicates = new ArrayDeque<>(MAX_LISTED_DUPLICATES);
+	// Decoded on first use for snapshots loaded from disk, so loading a history decodes no items
+	private ItemStack[] inventory;
+	private RegistryWrapper.WrapperLookup decodeLookup;
+	// Content fingerprint, a quick check before sameContents compares stacks; computed on first use
+	private long fingerprint;
+	private boolean hasFingerprint;
+	// Encoded items and the data version they were written with, kept so saving the history again
+	// does not re-encode unchanged snapshots
+	private NbtList encodedInventory;
+	private int encodedDataVersion;
+	// Ender chest, experience, effects, health and location, see PlayerStateColumns; null if not recorded
+	private NbtCompound state;
+
+	public PlayerInventorySnapshot(ItemStack[] inventory, String reason) {
+		this(inventory, reason, LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss")));
+	}
+
+	private PlayerInventorySnapshot(ItemStack[] inventory, String reason, String timestamp) {
+		this.inventory = inventory;
+		this.timestamp = timestamp;
+		this.reason = reason;
+	}
+
+	/**
+	 * Copies the player's inventory and records the rest of their state.
+	 */
+	public static PlayerInventorySnapshot capture(ServerPlayerEntity player, String reason) {
+		ItemStack[] currentInventory = new ItemStack[player.getInventory().size()];
+		for (int i = 0; i < currentInventory.length; i++) {
+			currentInventory[i] = player.getInventory().getStack(i).copy();
+		}
+		PlayerInventorySnapshot snapshot = new PlayerInventorySnapshot(currentInventory, reason);
+		snapshot.state = PlayerStateColumns.capture(player);
+		return snapshot;
+	}
+
+	/**
+	 * @return The items by {@code PlayerInventory} slot; empty slots hold {@link ItemStack#EMPTY}.
+	 */
+	public ItemStack[] getInventory() {
+		if (inventory == null) {
+			inventory = InventoryCodec.decode(decodeLookup, encodedInventory, encodedDataVersion);
+			decodeLookup = null;
+			if (encodedDataVersion < InventoryCodec.currentDataVersion()) {
+				encodedInventory = null; // Written in the current version with the next history save
+			}
+		}
+		return inventory;
+	}
+
+	/**
+	 * Covers the inventory, the ender chest and the rest of the player state, with the location at
+	 * block precision (see {@link PlayerStateColumns#dedupeHash}).
+	 */
+	public long getFingerprint() {
+		if (!hasFingerprint) {
+			ItemStack[] items = getInventory();
+			fingerprint = fingerprint(items.length, i -> items[i]);
+			if (state != null) {
+				fingerprint = mix(fingerprint, PlayerStateColumns.enderChestHash(state));
+				fingerprint = mix(fingerprint, PlayerStateColumns.dedupeHash(state));
+			}
+			hasFingerprint = true;
+		}
+		return fingerprint;
+	}
+
+	/**
+	 * Whether the other snapshot holds the same contents, by {@link #getFingerprint} and then slot by
+	 * slot, so a hash collision never merges different snapshots.
+	 */
+	public boolean sameContents(PlayerInventorySnapshot other) {
+		if (getFingerprint() != other.getFingerprint()) {
+			return false;
+		}
+		ItemStack[] items = getInventory();
+		ItemStack[] otherItems = other.getInventory();
+		if (items.length != otherItems.length) {
+			return false;
+		}
+		for (int i = 0; i < items.length; i++) {
+			if (!ItemStack.areEqual(items[i], otherItems[i])) {
+				return false;
+			}
+		}
+		if (state == null || other.state == null) {
+			return state == other.state;
+		}
+		return Objects.equals(state.get("EnderChest"), other.state.get("EnderChest")) && PlayerStateColumns.sameDedupeState(state, other.state);
+	}
+
+	/**
+	 * @return The encoded player state, or {@code null} if this snapshot only has an inventory.
+	 */
+	public NbtCompound getState() {
+		return state;
+	}
+
+	/**
+	 * @return The number of non-empty stacks, without decoding a loaded snapshot.
+	 */
+	public int getStackCount() {
+		return inventory != null ? InventoryCodec.countStacks(inventory) : encodedInventory.size();
+	}
+
+	/**
+	 * FNV-1a over the slot index, raw item ID, count and component changes of every non-empty stack.
+	 * Stable for the lifetime of the server, which is all the dedupe needs; it is never persisted.
+	 */
+	public static long fingerprint(int size, IntFunction<ItemStack> slots) {
+		long hash = FNV_OFFSET_BASIS;
+		for (int i = 0; i < size; i++) {
+			ItemStack stack = slots.apply(i);
+			if (stack == null || stack.isEmpty()) {
+				continue;
+			}
+			hash = mix(hash, i);
+			hash = mix(hash, Registries.ITEM.getRawId(stack.getItem()));
+			hash = mix(hash, stack.getCount());
+			hash = mix(hash, stack.getComponentChanges().hashCode());
+		}
+		return hash;
+	}
+
+	private static long mix(long hash, int value) {
+		for (int shift = 0; shift < 32; shift += 8) {
+			hash ^= (value >>> shift) & 0xFF;
+			hash *= FNV_PRIME;
+		}
+		return hash;
+	}
+
+	/**
+	 * Records a later capture whose contents equal this snapshot's.
+	 */
+	public void addDuplicate(String duplicateReason, String duplicateTimestamp) {
+		duplicateCount++;
+		addRecentDuplicate(duplicateTimestamp + " " + duplicateReason);
+	}
+
+	private void addRecentDuplicate(String duplicate) {
+		if (recentDuplicates.size() == MAX_LISTED_DUPLICATES) {
+			recentDuplicates.removeFirst();
+		}
+		recentDuplicates.addLast(duplicate);
+	}
+
+	public int getDuplicateCount() {
+		return duplicateCount;
+	}
+
+	/**
+	 * @return The latest identical capture as "timestamp reason", or {@code null} if there is none.
+	 */
+	public String getLastDuplicate() {
+		return recentDuplicates.peekLast();
+	}
+
+	public NbtCompound toNbt(RegistryWrapper.WrapperLookup lookup) {
+		NbtCompound tag = new NbtCompound();
+		tag.putString("Timestamp", timestamp);
+		tag.putString("Reason", reason);
+		if (encodedInventory == null) {
+			encodedInventory = InventoryCodec.encode(lookup, inventory);
+			encodedDataVersion = InventoryCodec.currentDataVersion();
+		}
+		tag.putInt("DataVersion", encodedDataVersion);
+		tag.put("Inventory", encodedInventory);
+		if (state != null) {
+			tag.put("State", state);
+		}
+		if (duplicateCount > 0) {
+			tag.putInt("DuplicateCount", duplicateCount);
+			NbtList duplicatesTag = new NbtList();
+			for (String duplicate : recentDuplicates) {
+				duplicatesTag.add(NbtString.of(duplicate));
+			}
+			tag.put("Duplicates", duplicatesTag);
+		}
+		return tag;
+	}
+
+	public static PlayerInventorySnapshot fromNbt(RegistryWrapper.WrapperLookup lookup, NbtCompound tag) {
+		String timestamp = tag.getString("Timestamp");
+		String reason = tag.getString("Reason");
+		// Keep the loaded timestamp instead of the load time; the items are decoded when first needed
+		PlayerInventorySnapshot snapshot = new PlayerInventorySnapshot(null, reason, timestamp);
+		snapshot.encodedInventory = tag.getList("Inventory", NbtCompound.COMPOUND_TYPE);
+		snapshot.encodedDataVersion = InventoryCodec.getDataVersion(tag);
+		snapshot.decodeLookup = lookup;
+		if (tag.contains("State", NbtElement.COMPOUND_TYPE)) {
+			snapshot.state = tag.getCompound("State");
+		}
+		// Histories written before the count was stored list every duplicate
+		NbtList duplicatesTag = tag.getList("Duplicates", NbtCompound.STRING_TYPE);
+		snapshot.duplicateCount = Math.max(tag.getInt("DuplicateCount"), duplicatesTag.size());
+		for (int i = Math.max(0, duplicatesTag.size() - MAX_LISTED_DUPLICATES); i < duplicatesTag.size(); i++) {
+			snapshot.addRecentDuplicate(duplicatesTag.getString(i));
+		}
+		return snapshot;
+	}
+}
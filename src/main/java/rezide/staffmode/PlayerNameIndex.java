@@ -0,0 +1,52 @@
+package rezide.staffmode;
+
+import com.mojang.authlib.GameProfile;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.util.UserCache;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Case-insensitive player name to UUID index, so commands can resolve players who are offline.
+ * Built at server start from the inventory history files (the players we can act on) with names
+ * from the server's user cache, and updated whenever a player joins.
+ */
+final class PlayerNameIndex {
+
+	private static final Map<String, UUID> UUIDS_BY_NAME = new ConcurrentHashMap<>();
+
+	private PlayerNameIndex() {
+	}
+
+	/**
+	 * Indexes the given players. Only reads the user cache in memory; never queries Mojang.
+	 */
+	static void build(MinecraftServer server, Iterable<UUID> knownPlayers) {
+		UUIDS_BY_NAME.clear();
+		UserCache userCache = server.getUserCache();
+		if (userCache == null) {
+			return;
+		}
+		int indexed = 0;
+		for (UUID uuid : knownPlayers) {
+			Optional<GameProfile> profile = userCache.getByUuid(uuid);
+			if (profile.isPresent()) {
+				put(profile.get().getName(), uuid);
+				indexed++;
+			}
+		}
+		StaffMode.LOGGER.info("Indexed names of {} players with inventory history.", indexed);
+	}
+
+	static void put(String name, UUID uuid) {
+		UUIDS_BY_NAME.put(name.toLowerCase(Locale.ROOT), uuid);
+	}
+
+	static UUID lookup(String name) {
+		return UUIDS_BY_NAME.get(name.toLowerCase(Locale.ROOT));
+	}
+}
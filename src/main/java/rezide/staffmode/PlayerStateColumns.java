@@ -0,0 +1,227 @@
+package rezide.staffmode;
+
+import net.minecraft.entity.effect.StatusEffectInstance;
+import net.minecraft.entity.player.HungerManager;
+import net.minecraft.inventory.EnderChestInventory;
+import net.minecraft.item.ItemStack;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtDouble;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.nbt.NbtFloat;
+import net.minecraft.nbt.NbtList;
+import net.minecraft.registry.RegistryKey;
+import net.minecraft.registry.RegistryKeys;
+import net.minecraft.registry.RegistryWrapper;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.Identifier;
+import net.minecraft.util.math.MathHelper;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * The player state a history snapshot keeps besides the inventory. Every part is its own key in the
+ * snapshot's "State" compound and stays encoded until it is restored, so restoring one part reads
+ * only that key:
+ * <ul>
+ *     <li>"EnderChest": stacks with slot indexes, like the inventory</li>
+ *     <li>"Experience": int array of level, total points and progress (float bits)</li>
+ *     <li>"Effects": list of status effects</li>
+ *     <li>"Vitals": int array of health (float bits), food level and saturation (float bits)</li>
+ *     <li>"Location": dimension ID, "Pos" and "Rotation"</li>
+ * </ul>
+ * "DataVersion" applies to the ender chest stacks. Snapshots taken before the state was recorded, or
+ * without a player (an offline inventory), have no "State".
+ */
+final class PlayerStateColumns {
+
+	/**
+	 * What {@code /inventoryhistory <player> <index> [part]} restores.
+	 */
+	enum Part {
+		INVENTORY("inventory", "inventory"),
+		ENDER_CHEST("enderchest", "ender chest"),
+		EXPERIENCE("xp", "experience"),
+		EFFECTS("effects", "status effects"),
+		VITALS("vitals", "health and hunger"),
+		LOCATION("location", "location"),
+		ALL("all", "inventory and player state");
+
+		final String id;
+		final String description;
+
+		Part(String id, String description) {
+			this.id = id;
+			this.description = description;
+		}
+
+		/**
+		 * @return The part, or {@code null} if there is none with that ID.
+		 */
+		static Part byId(String id) {
+			for (Part part : values()) {
+				if (part.id.equals(id.toLowerCase(Locale.ROOT))) {
+					return part;
+				}
+			}
+			return null;
+		}
+
+		static String idList() {
+			return String.join(", ", Arrays.stream(values()).map(part -> part.id).toList());
+		}
+	}
+
+	private PlayerStateColumns() {
+	}
+
+	static NbtCompound capture(ServerPlayerEntity player) {
+		NbtCompound state = new NbtCompound();
+		RegistryWrapper.WrapperLookup lookup = player.getRegistryManager();
+
+		EnderChestInventory enderChest = player.getEnderChestInventory();
+		ItemStack[] enderChestItems = new ItemStack[enderChest.size()];
+		for (int i = 0; i < enderChestItems.length; i++) {
+			enderChestItems[i] = enderChest.getStack(i);
+		}
+		state.put("EnderChest", InventoryCodec.encode(lookup, enderChestItems));
+		InventoryCodec.putDataVersion(state);
+
+		state.putIntArray("Experience", new int[]{player.experienceLevel, player.totalExperience, Float.floatToIntBits(player.experienceProgress)});
+
+		NbtList effectsTag = new NbtList();
+		for (StatusEffectInstance effect : player.getStatusEffects()) {
+			effectsTag.add(effect.writeNbt());
+		}
+		state.put("Effects", effectsTag);
+
+		HungerManager hunger = player.getHungerManager();
+		state.putIntArray("Vitals", new int[]{Float.floatToIntBits(player.getHealth()), hunger.getFoodLevel(), Float.floatToIntBits(hunger.getSaturationLevel())});
+
+		NbtCompound locationTag = new NbtCompound();
+		locationTag.putString("Dimension", player.getWorld().getRegistryKey().getValue().toString());
+		NbtList posTag = new NbtList();
+		posTag.add(NbtDouble.of(player.getX()));
+		posTag.add(NbtDouble.of(player.getY()));
+		posTag.add(NbtDouble.of(player.getZ()));
+		locationTag.put("Pos", posTag);
+		NbtList rotationTag = new NbtList();
+		rotationTag.add(NbtFloat.of(player.getYaw()));
+		rotationTag.add(NbtFloat.of(player.getPitch()));
+		locationTag.put("Rotation", rotationTag);
+		state.put("Location", locationTag);
+		return state;
+	}
+
+	/**
+	 * Hash of the encoded ender chest, for the snapshot dedupe.
+	 */
+	static int enderChestHash(NbtCompound state) {
+		NbtElement enderChest = state.get("EnderChest");
+		return enderChest != null ? enderChest.hashCode() : 0;
+	}
+
+	/**
+	 * Hash of experience, effects, vitals and the block position and dimension, for the snapshot
+	 * dedupe: a capture that differs from an earlier one only there is still kept.
+	 */
+	static int dedupeHash(NbtCompound state) {
+		return Objects.hash(Arrays.hashCode(state.getIntArray("Experience")), state.get("Effects"),
+				Arrays.hashCode(state.getIntArray("Vitals")), blockLocation(state));
+	}
+
+	/**
+	 * Exact counterpart of {@link #dedupeHash}.
+	 */
+	static boolean sameDedupeState(NbtCompound state, NbtCompound other) {
+		return Arrays.equals(state.getIntArray("Experience"), other.getIntArray("Experience"))
+				&& Objects.equals(state.get("Effects"), other.get("Effects"))
+				&& Arrays.equals(state.getIntArray("Vitals"), other.getIntArray("Vitals"))
+				&& blockLocation(state).equals(blockLocation(other));
+	}
+
+	/**
+	 * The dimension and block position; moving within a block does not count as a change.
+	 */
+	private static String blockLocation(NbtCompound state) {
+		NbtCompound locationTag = state.getCompound("Location");
+		NbtList posTag = locationTag.getList("Pos", NbtElement.DOUBLE_TYPE);
+		if (posTag.size() < 3) {
+			return "";
+		}
+		return locationTag.getString("Dimension") + " " + MathHelper.floor(posTag.getDouble(0)) + " "
+				+ MathHelper.floor(posTag.getDouble(1)) + " " + MathHelper.floor(posTag.getDouble(2));
+	}
+
+	/**
+	 * Applies one part of {@code state} to the player. {@link Part#INVENTORY} is restored by the
+	 * caller; {@link Part#ALL} applies every other part.
+	 *
+	 * @return {@code false} if the part could not be applied, e.g. its dimension no longer exists.
+	 */
+	static boolean apply(ServerPlayerEntity player, NbtCompound state, Part part) {
+		switch (part) {
+			case ENDER_CHEST -> {
+				ItemStack[] items = InventoryCodec.decode(player.getRegistryManager(), state.getList("EnderChest", NbtElement.COMPOUND_TYPE),
+						InventoryCodec.getDataVersion(state), player.getEnderChestInventory().size());
+				EnderChestInventory enderChest = player.getEnderChestInventory();
+				enderChest.clear();
+				for (int i = 0; i < items.length; i++) {
+					enderChest.setStack(i, items[i]);
+				}
+			}
+			case EXPERIENCE -> {
+				int[] experience = state.getIntArray("Experience");
+				if (experience.length < 3) {
+					return false;
+				}
+				player.totalExperience = experience[1];
+				player.experienceProgress = Float.intBitsToFloat(experience[2]);
+				player.setExperienceLevel(experience[0]); // Also resends the experience bar
+			}
+			case EFFECTS -> {
+				player.clearStatusEffects();
+				NbtList effectsTag = state.getList("Effects", NbtElement.COMPOUND_TYPE);
+				for (int i = 0; i < effectsTag.size(); i++) {
+					StatusEffectInstance effect = StatusEffectInstance.fromNbt(effectsTag.getCompound(i));
+					if (effect != null) {
+						player.addStatusEffect(effect);
+					}
+				}
+			}
+			case VITALS -> {
+				int[] vitals = state.getIntArray("Vitals");
+				if (vitals.length < 3) {
+					return false;
+				}
+				player.setHealth(Float.intBitsToFloat(vitals[0]));
+				player.getHungerManager().setFoodLevel(vitals[1]);
+				player.getHungerManager().setSaturationLevel(Float.intBitsToFloat(vitals[2]));
+			}
+			case LOCATION -> {
+				NbtCompound locationTag = state.getCompound("Location");
+				Identifier dimension = Identifier.tryParse(locationTag.getString("Dimension"));
+				ServerWorld world = dimension != null ? player.getServer().getWorld(RegistryKey.of(RegistryKeys.WORLD, dimension)) : null;
+				NbtList posTag = locationTag.getList("Pos", NbtElement.DOUBLE_TYPE);
+				NbtList rotationTag = locationTag.getList("Rotation", NbtElement.FLOAT_TYPE);
+				if (world == null || posTag.size() < 3) {
+					return false;
+				}
+				player.teleport(world, posTag.getDouble(0), posTag.getDouble(1), posTag.getDouble(2), rotationTag.getFloat(0), rotationTag.getFloat(1));
+			}
+			case ALL -> {
+				boolean applied = true;
+				// Teleport last, once everything else is in place
+				for (Part each : new Part[]{Part.ENDER_CHEST, Part.EXPERIENCE, Part.EFFECTS, Part.VITALS, Part.LOCATION}) {
+					applied &= apply(player, state, each);
+				}
+				return applied;
+			}
+			case INVENTORY -> {
+			}
+		}
+		return true;
+	}
+}
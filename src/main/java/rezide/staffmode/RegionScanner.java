@@ -0,0 +1,369 @@
+package rezide.staffmode;
+
+import it.unimi.dsi.fastutil.longs.LongSet;
+import net.jpountz.lz4.LZ4BlockInputStream;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.NbtList;
+import net.minecraft.nbt.NbtSizeTracker;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Scans a world's region files, entity region files and player data on disk for items whose
+ * {@link StaffItemLedger} fingerprint matches, and writes a report with the location and the chain
+ * of containers each match was found in.
+ * <p>
+ * Files are memory-mapped and chunks are decompressed and parsed in parallel on a dedicated
+ * fork-join pool; nothing here touches the server or its loaded chunks, so it only sees what was last
+ * saved to disk. Runs in the background from {@code /staffmode scan}, or against a stopped server
+ * through {@link #main}.
+ */
+public final class RegionScanner {
+
+	private static final int SECTOR_SIZE = 4096;
+	private static final int CHUNKS_PER_REGION = 1024;
+	private static final int EXTERNAL_CHUNK_FLAG = 128;
+
+	public record Hit(String dimension, String location, String containers, String itemId, int count) {
+	}
+
+	public record Result(int regionFiles, int chunks, int playerFiles, int failures, List<Hit> hits, long elapsedMillis) {
+	}
+
+	private final Path worldDirectory;
+	private final LongSet fingerprints;
+	private final int parallelism;
+
+	private final Queue<Hit> hits = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger chunks = new AtomicInteger();
+	private final AtomicInteger failures = new AtomicInteger();
+
+	public RegionScanner(Path worldDirectory, LongSet fingerprints, int parallelism) {
+		this.worldDirectory = worldDirectory;
+		this.fingerprints = fingerprints;
+		this.parallelism = Math.max(1, parallelism);
+	}
+
+	public Result scan() throws IOException, InterruptedException {
+		long start = System.currentTimeMillis();
+		List<RegionFile> regionFiles = findRegionFiles();
+		List<Path> playerFiles = listFiles(worldDirectory.resolve("playerdata"), ".dat");
+
+		ForkJoinPool pool = new ForkJoinPool(parallelism, forkJoinPool -> {
+			var thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+			thread.setName("StaffMode-RegionScan-" + thread.getPoolIndex());
+			thread.setDaemon(true);
+			return thread;
+		}, null, false);
+		try {
+			// Parallel streams started from inside the pool run on its workers instead of the common pool
+			pool.submit(() -> {
+				regionFiles.parallelStream().forEach(this::scanRegionFile);
+				playerFiles.parallelStream().forEach(this::scanPlayerFile);
+			}).get();
+		} catch (ExecutionException e) {
+			throw new IOException("Region scan failed", e.getCause());
+		} finally {
+			pool.shutdownNow();
+		}
+
+		List<Hit> sorted = new ArrayList<>(hits);
+		sorted.sort(Comparator.comparing(Hit::dimension).thenComparing(Hit::location));
+		return new Result(regionFiles.size(), chunks.get(), playerFiles.size(), failures.get(), sorted, System.currentTimeMillis() - start);
+	}
+
+	private record RegionFile(String dimension, Path path, boolean entities) {
+	}
+
+	private List<RegionFile> findRegionFiles() throws IOException {
+		List<RegionFile> files = new ArrayList<>();
+		addDimension(files, "minecraft:overworld", worldDirectory);
+		addDimension(files, "minecraft:the_nether", worldDirectory.resolve("DIM-1"));
+		addDimension(files, "minecraft:the_end", worldDirectory.resolve("DIM1"));
+		Path dimensions = worldDirectory.resolve("dimensions");
+		if (Files.isDirectory(dimensions)) {
+			try (Stream<Path> namespaces = Files.list(dimensions)) {
+				for (Path namespace : namespaces.filter(Files::isDirectory).toList()) {
+					try (Stream<Path> paths = Files.list(namespace)) {
+						for (Path path : paths.filter(Files::isDirectory).toList()) {
+							addDimension(files, namespace.getFileName() + ":" + path.getFileName(), path);
+						}
+					}
+				}
+			}
+		}
+		return files;
+	}
+
+	private static void addDimension(List<RegionFile> files, String dimension, Path directory) throws IOException {
+		for (Path path : listFiles(directory.resolve("region"), ".mca")) {
+			files.add(new RegionFile(dimension, path, false));
+		}
+		for (Path path : listFiles(directory.resolve("entities"), ".mca")) {
+			files.add(new RegionFile(dimension, path, true));
+		}
+	}
+
+	private static List<Path> listFiles(Path directory, String extension) throws IOException {
+		if (!Files.isDirectory(directory)) {
+			return List.of();
+		}
+		try (Stream<Path> paths = Files.list(directory)) {
+			return paths.filter(path -> path.getFileName().toString().endsWith(extension)).toList();
+		}
+	}
+
+	private void scanRegionFile(RegionFile regionFile) {
+		ByteBuffer mapped;
+		try (FileChannel channel = FileChannel.open(regionFile.path(), StandardOpenOption.READ)) {
+			if (channel.size() < SECTOR_SIZE * 2L) {
+				return; // Empty or truncated header, nothing saved in this region yet
+			}
+			mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} catch (IOException e) {
+			failures.incrementAndGet();
+			StaffMode.LOGGER.warn("Region scan: could not map {}: {}", regionFile.path(), e.getMessage());
+			return;
+		}
+		IntStream.range(0, CHUNKS_PER_REGION).parallel().forEach(index -> {
+			int location = mapped.getInt(index * 4);
+			if (location == 0) {
+				return;
+			}
+			try {
+				NbtCompound chunk = readChunk(regionFile.path(), mapped, index, location);
+				if (chunk != null) {
+					chunks.incrementAndGet();
+					scanChunk(regionFile, chunk);
+				}
+			} catch (IOException | RuntimeException e) {
+				// The server may be writing this chunk right now; it is picked up by the next scan
+				failures.incrementAndGet();
+				StaffMode.LOGGER.debug("Region scan: skipped chunk {} of {}: {}", index, regionFile.path(), e.getMessage());
+			}
+		});
+	}
+
+	private static NbtCompound readChunk(Path regionPath, ByteBuffer mapped, int index, int location) throws IOException {
+		long offset = (long) (location >>> 8) * SECTOR_SIZE;
+		if (offset + 5 > mapped.capacity()) {
+			throw new IOException("chunk offset past end of file");
+		}
+		int length = mapped.getInt((int) offset);
+		int compression = mapped.get((int) offset + 4) & 0xFF;
+		InputStream raw;
+		if ((compression & EXTERNAL_CHUNK_FLAG) != 0) {
+			// Oversized chunks live in c.<x>.<z>.mcc next to the region file
+			String[] parts = regionPath.getFileName().toString().split("\\.");
+			int chunkX = Integer.parseInt(parts[1]) * 32 + (index & 31);
+			int chunkZ = Integer.parseInt(parts[2]) * 32 + (index >> 5);
+			Path external = regionPath.resolveSibling("c." + chunkX + "." + chunkZ + ".mcc");
+			raw = new ByteBufferInputStream(map(external));
+			compression &= ~EXTERNAL_CHUNK_FLAG;
+		} else {
+			if (length <= 1 || offset + 4 + length > mapped.capacity()) {
+				throw new IOException("invalid chunk length " + length);
+			}
+			raw = new ByteBufferInputStream(mapped.slice((int) offset + 5, length - 1));
+		}
+		InputStream decompressed = switch (compression) {
+			case 1 -> new GZIPInputStream(raw);
+			case 2 -> new InflaterInputStream(raw);
+			case 3 -> raw;
+			case 4 -> new LZ4BlockInputStream(raw);
+			default -> throw new IOException("unknown compression type " + compression);
+		};
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(decompressed))) {
+			return NbtIo.readCompound(in, NbtSizeTracker.ofUnlimitedBytes());
+		}
+	}
+
+	private static MappedByteBuffer map(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+	}
+
+	private void scanChunk(RegionFile regionFile, NbtCompound chunk) {
+		Deque<String> containers = new ArrayDeque<>();
+		if (regionFile.entities()) {
+			NbtList entities = chunk.getList("Entities", NbtElement.COMPOUND_TYPE);
+			for (int i = 0; i < entities.size(); i++) {
+				NbtCompound entity = entities.getCompound(i);
+				walk(regionFile.dimension(), entityLocation(entity), entity, containers);
+			}
+			return;
+		}
+		NbtList blockEntities = chunk.getList("block_entities", NbtElement.COMPOUND_TYPE);
+		for (int i = 0; i < blockEntities.size(); i++) {
+			NbtCompound blockEntity = blockEntities.getCompound(i);
+			String location = blockEntity.getInt("x") + " " + blockEntity.getInt("y") + " " + blockEntity.getInt("z");
+			walk(regionFile.dimension(), location, blockEntity, containers);
+		}
+	}
+
+	private void scanPlayerFile(Path path) {
+		try {
+			NbtCompound player;
+			try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new ByteBufferInputStream(map(path)))))) {
+				player = NbtIo.readCompound(in, NbtSizeTracker.ofUnlimitedBytes());
+			}
+			String uuid = path.getFileName().toString().replace(".dat", "");
+			String dimension = player.contains("Dimension", NbtElement.STRING_TYPE) ? player.getString("Dimension") : "minecraft:overworld";
+			Deque<String> containers = new ArrayDeque<>();
+			containers.add("player " + uuid);
+			walk(dimension, entityLocation(player), player, containers);
+		} catch (IOException | RuntimeException e) {
+			failures.incrementAndGet();
+			StaffMode.LOGGER.warn("Region scan: could not read {}: {}", path, e.getMessage());
+		}
+	}
+
+	private static String entityLocation(NbtCompound entity) {
+		NbtList pos = entity.getList("Pos", NbtElement.DOUBLE_TYPE);
+		if (pos.size() != 3) {
+			return "?";
+		}
+		return (int) Math.floor(pos.getDouble(0)) + " " + (int) Math.floor(pos.getDouble(1)) + " " + (int) Math.floor(pos.getDouble(2));
+	}
+
+	/**
+	 * Recursively checks every item compound (an "id" plus "components") below {@code element}. Block
+	 * entities, entities and items that contain other items are pushed onto {@code containers} while
+	 * their contents are walked.
+	 */
+	private void walk(String dimension, String location, NbtElement element, Deque<String> containers) {
+		if (element instanceof NbtCompound compound) {
+			boolean container = compound.contains("id", NbtElement.STRING_TYPE);
+			if (container && compound.contains("components", NbtElement.COMPOUND_TYPE)) {
+				long fingerprint = StaffItemLedger.fingerprint(compound);
+				if (fingerprints.contains(fingerprint)) {
+					hits.add(new Hit(dimension, location, String.join(" > ", containers), compound.getString("id"), compound.getInt("count")));
+				}
+			}
+			if (container) {
+				containers.addLast(compound.getString("id"));
+			}
+			for (String key : compound.getKeys()) {
+				NbtElement child = compound.get(key);
+				if (child instanceof NbtCompound || child instanceof NbtList) {
+					walk(dimension, location, child, containers);
+				}
+			}
+			if (container) {
+				containers.removeLast();
+			}
+		} else if (element instanceof NbtList list
+				&& (list.getHeldType() == NbtElement.COMPOUND_TYPE || list.getHeldType() == NbtElement.LIST_TYPE)) {
+			for (int i = 0; i < list.size(); i++) {
+				walk(dimension, location, list.get(i), containers);
+			}
+		}
+	}
+
+	/**
+	 * Writes a scan result as plain text, one line per match.
+	 */
+	public static File writeReport(File reportsDirectory, Result result) throws IOException {
+		if (!reportsDirectory.exists()) {
+			reportsDirectory.mkdirs();
+		}
+		String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss"));
+		File reportFile = new File(reportsDirectory, "scan-" + timestamp + ".txt");
+		try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(reportFile.toPath(), StandardCharsets.UTF_8))) {
+			writer.printf("# Staff item scan %s: %d region files, %d chunks, %d player files, %d unreadable, %d matches in %d ms%n",
+					timestamp, result.regionFiles(), result.chunks(), result.playerFiles(), result.failures(), result.hits().size(), result.elapsedMillis());
+			writer.println("# dimension | x y z | containers | item x count");
+			for (Hit hit : result.hits()) {
+				writer.printf("%s | %s | %s | %s x%d%n", hit.dimension(), hit.location(),
+						hit.containers().isEmpty() ? "-" : hit.containers(), hit.itemId(), hit.count());
+			}
+		}
+		return reportFile;
+	}
+
+	/**
+	 * Scans a stopped server or a copy of the world: {@code RegionScanner <world directory> [threads]}.
+	 * Uses the ledger saved in the world's staff-mode directory and writes the report next to it.
+	 * <p>
+	 * This is not a standalone tool: the NBT classes, the ledger and the logger come from the mod and
+	 * the mapped Minecraft jars, so it needs the mod's runtime classpath. Run it with
+	 * {@code ./gradlew scanRegions -Pworld=/path/to/world [-Pthreads=N]}, which uses
+	 * {@code sourceSets.main.runtimeClasspath}.
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1) {
+			System.err.println("Usage: RegionScanner <world directory> [threads]");
+			System.exit(2);
+		}
+		Path world = Path.of(args[0]);
+		int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+		File modDirectory = world.resolve(StaffMode.MOD_ID).toFile();
+		File ledgerFile = new File(modDirectory, "staff_item_ledger.dat");
+		if (!ledgerFile.exists()) {
+			System.err.println("No staff item ledger at " + ledgerFile);
+			System.exit(1);
+		}
+		Result result = new RegionScanner(world, StaffItemLedger.readFile(ledgerFile), threads).scan();
+		File report = writeReport(new File(modDirectory, "scan-reports"), result);
+		System.out.printf("Scanned %d chunks in %d ms, %d matches. Report: %s%n", result.chunks(), result.elapsedMillis(), result.hits().size(), report);
+	}
+
+	private static final class ByteBufferInputStream extends InputStream {
+		private final ByteBuffer buffer;
+
+		ByteBufferInputStream(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read() {
+			return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+		}
+
+		@Override
+		public int read(byte[] bytes, int offset, int length) {
+			if (!buffer.hasRemaining()) {
+				return -1;
+			}
+			int count = Math.min(length, buffer.remaining());
+			buffer.get(bytes, offset, count);
+			return count;
+		}
+
+		@Override
+		public int available() {
+			return buffer.remaining();
+		}
+	}
+}
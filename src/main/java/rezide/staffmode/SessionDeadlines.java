@@ -0,0 +1,255 @@
+package rezide.staffmode;
+
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.NbtList;
+import net.minecraft.nbt.NbtSizeTracker;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.text.Text;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Staff mode time limits. Every session gets a deadline when it starts, plus warnings shortly before
+ * it; they live in a hashed timing wheel with one-second slots, so a server tick only looks at the
+ * slot(s) whose second has passed instead of at every player in staff mode.
+ * <p>
+ * Deadlines are wall-clock times and are kept in {@code staff_session_deadlines.nbt} next to the
+ * staff mode data, so a player who is still in staff mode after a crash is held to the original
+ * deadline when they rejoin. Only online players are in the wheel; the others are scheduled on join.
+ */
+final class SessionDeadlines {
+
+	private static final int WHEEL_SIZE = 256; // Slots, one second each; must be a power of two
+	private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+
+	private static final class Timeout {
+		final UUID player;
+		final long dueSecond;
+		// Seconds left until the deadline when this fires; 0 for the expiry itself
+		final int warningSeconds;
+		boolean cancelled;
+
+		Timeout(UUID player, long dueSecond, int warningSeconds) {
+			this.player = player;
+			this.dueSecond = dueSecond;
+			this.warningSeconds = warningSeconds;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static final List<Timeout>[] wheel = new List[WHEEL_SIZE];
+	private static final Map<UUID, List<Timeout>> scheduled = new HashMap<>();
+	private static final Map<UUID, Long> deadlines = new HashMap<>(); // Epoch millis, including offline players
+	private static long cursorSecond;
+	private static File deadlinesFile;
+
+	static {
+		for (int i = 0; i < WHEEL_SIZE; i++) {
+			wheel[i] = new ArrayList<>();
+		}
+	}
+
+	private SessionDeadlines() {
+	}
+
+	static void setFile(File file) {
+		deadlinesFile = file;
+	}
+
+	/**
+	 * Starts the time limit of a new staff session, if one is configured.
+	 *
+	 * @return The deadline in epoch millis, or 0 if sessions are not limited.
+	 */
+	static long start(UUID playerUuid) {
+		int limitMinutes = StaffMode.getConfig().getStaffSessionTimeLimitMinutes();
+		cancel(playerUuid);
+		if (limitMinutes <= 0) {
+			return 0L;
+		}
+		long deadline = System.currentTimeMillis() + limitMinutes * 60_000L;
+		deadlines.put(playerUuid, deadline);
+		schedule(playerUuid, deadline);
+		save();
+		return deadline;
+	}
+
+	/**
+	 * Puts a rejoining player's saved deadline back into the wheel. A deadline that passed while they
+	 * were away fires on the next tick.
+	 */
+	static void resume(UUID playerUuid) {
+		Long deadline = deadlines.get(playerUuid);
+		if (deadline != null && !scheduled.containsKey(playerUuid)) {
+			schedule(playerUuid, deadline);
+		}
+	}
+
+	/**
+	 * @return The player's deadline in epoch millis, or 0 if they have none.
+	 */
+	static long getDeadline(UUID playerUuid) {
+		return deadlines.getOrDefault(playerUuid, 0L);
+	}
+
+	/**
+	 * Drops the player's deadline, e.g. because they left staff mode.
+	 */
+	static void cancel(UUID playerUuid) {
+		unschedule(playerUuid);
+		if (deadlines.remove(playerUuid) != null) {
+			save();
+		}
+	}
+
+	private static void unschedule(UUID playerUuid) {
+		List<Timeout> timeouts = scheduled.remove(playerUuid);
+		if (timeouts != null) {
+			for (Timeout timeout : timeouts) {
+				timeout.cancelled = true; // Removed from its slot when the wheel next reaches it
+			}
+		}
+	}
+
+	private static void schedule(UUID playerUuid, long deadlineMillis) {
+		long deadlineSecond = deadlineMillis / 1000L;
+		List<Timeout> timeouts = new ArrayList<>();
+		for (Integer warningSeconds : StaffMode.getConfig().getStaffSessionWarningSeconds()) {
+			if (warningSeconds != null && warningSeconds > 0 && deadlineSecond - warningSeconds > currentSecond()) {
+				long dueSecond = deadlineSecond - warningSeconds;
+				timeouts.add(insert(new Timeout(playerUuid, dueSecond, warningSeconds)));
+			}
+		}
+		timeouts.add(insert(new Timeout(playerUuid, deadlineSecond, 0)));
+		scheduled.put(playerUuid, timeouts);
+	}
+
+	private static Timeout insert(Timeout timeout) {
+		initCursor();
+		// Anything already due goes into the next slot the wheel processes
+		long slotSecond = Math.max(timeout.dueSecond, cursorSecond + 1);
+		wheel[(int) (slotSecond & WHEEL_MASK)].add(timeout);
+		return timeout;
+	}
+
+	private static long currentSecond() {
+		return System.currentTimeMillis() / 1000L;
+	}
+
+	private static void initCursor() {
+		if (cursorSecond == 0L) {
+			cursorSecond = currentSecond() - 1;
+		}
+	}
+
+	/**
+	 * Advances the wheel to the current second, firing warnings and expiries that are due. Called at
+	 * the end of every server tick; most ticks return after one comparison.
+	 */
+	static void tick(MinecraftServer server) {
+		initCursor();
+		long now = currentSecond();
+		if (now <= cursorSecond) {
+			return;
+		}
+		List<Timeout> due = new ArrayList<>();
+		// After a long stall or a clock jump every slot is visited once instead of once per missed second
+		long from = Math.max(cursorSecond + 1, now - WHEEL_SIZE + 1);
+		for (long second = from; second <= now; second++) {
+			Iterator<Timeout> iterator = wheel[(int) (second & WHEEL_MASK)].iterator();
+			while (iterator.hasNext()) {
+				Timeout timeout = iterator.next();
+				if (timeout.cancelled) {
+					iterator.remove();
+				} else if (timeout.dueSecond <= now) {
+					iterator.remove();
+					due.add(timeout);
+				}
+				// Otherwise it is due a later lap of the wheel and stays in its slot
+			}
+		}
+		cursorSecond = now;
+
+		for (Timeout timeout : due) {
+			fire(server, timeout);
+		}
+	}
+
+	private static void fire(MinecraftServer server, Timeout timeout) {
+		ServerPlayerEntity player = server.getPlayerManager().getPlayer(timeout.player);
+		if (player == null || !StaffMode.isPlayerInStaffMode(timeout.player)) {
+			return; // Reverted on disconnect; a saved deadline is picked up again on join
+		}
+		if (timeout.warningSeconds > 0) {
+			player.sendMessage(Text.literal("§eYour staff mode session ends in " + formatDuration(timeout.warningSeconds) + "."), false);
+			return;
+		}
+		scheduled.remove(timeout.player);
+		StaffMode.LOGGER.info("Staff mode time limit reached for {}. Reverting to survival.", player.getName().getString());
+		player.sendMessage(Text.literal("§eYour staff mode time limit was reached. Returning to Survival..."), false);
+		StaffMode.revertPlayerToSurvival(player, "the staff mode time limit");
+	}
+
+	private static String formatDuration(int seconds) {
+		if (seconds % 60 == 0) {
+			int minutes = seconds / 60;
+			return minutes + (minutes == 1 ? " minute" : " minutes");
+		}
+		return seconds + (seconds == 1 ? " second" : " seconds");
+	}
+
+	static void load() {
+		deadlines.clear();
+		for (UUID uuid : new ArrayList<>(scheduled.keySet())) {
+			unschedule(uuid);
+		}
+		if (deadlinesFile == null || !deadlinesFile.exists()) {
+			return;
+		}
+		try {
+			NbtCompound root = NbtIo.readCompressed(deadlinesFile.toPath(), NbtSizeTracker.ofUnlimitedBytes());
+			NbtList list = root.getList("Deadlines", NbtElement.COMPOUND_TYPE);
+			for (int i = 0; i < list.size(); i++) {
+				NbtCompound entry = list.getCompound(i);
+				deadlines.put(entry.getUuid("Player"), entry.getLong("Deadline"));
+			}
+			StaffMode.LOGGER.info("Loaded {} staff mode deadlines.", deadlines.size());
+		} catch (IOException e) {
+			StaffMode.LOGGER.error("Failed to load staff mode deadlines from {}: {}", deadlinesFile.getName(), e.getMessage());
+		}
+	}
+
+	private static void save() {
+		if (deadlinesFile == null) {
+			return;
+		}
+		NbtList list = new NbtList();
+		for (Map.Entry<UUID, Long> entry : deadlines.entrySet()) {
+			NbtCompound tag = new NbtCompound();
+			tag.putUuid("Player", entry.getKey());
+			tag.putLong("Deadline", entry.getValue());
+			list.add(tag);
+		}
+		NbtCompound root = new NbtCompound();
+		root.put("Deadlines", list);
+		File tempFile = new File(deadlinesFile.getParentFile(), deadlinesFile.getName() + ".tmp");
+		try {
+			NbtIo.writeCompressed(root, tempFile.toPath());
+			Files.move(tempFile.toPath(), deadlinesFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			StaffMode.LOGGER.error("Failed to save staff mode deadlines: {}", e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,117 @@
+package rezide.staffmode;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.EntityType;
+import net.minecraft.registry.Registries;
+import net.minecraft.util.math.ChunkPos;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Entities and item entities a staff session produced. Each entry is {@value #STRIDE} longs: the
+ * UUID (two longs), the chunk the entity was last seen in, and the dimension index ({@code << 32})
+ * with the entity type raw ID. A chunk index maps each dimension/chunk to its entry offsets, so
+ * per-chunk queries only touch matching entries.
+ */
+class SessionEntities {
+	static final int STRIDE = 4;
+
+	private long[] entries = new long[16 * STRIDE];
+	private int size; // In entries
+	// Key: chunk position mixed with the dimension index, see chunkKey
+	private final Long2ObjectOpenHashMap<IntArrayList> byChunk = new Long2ObjectOpenHashMap<>();
+
+	int size() {
+		return size;
+	}
+
+	void add(UUID uuid, int dimensionIndex, ChunkPos chunkPos, EntityType<?> type) {
+		if ((size + 1) * STRIDE > entries.length) {
+			entries = Arrays.copyOf(entries, entries.length * 2);
+		}
+		int offset = size * STRIDE;
+		entries[offset] = uuid.getMostSignificantBits();
+		entries[offset + 1] = uuid.getLeastSignificantBits();
+		entries[offset + 2] = chunkPos.toLong();
+		entries[offset + 3] = ((long) dimensionIndex << 32) | (Registries.ENTITY_TYPE.getRawId(type) & 0xFFFFFFFFL);
+		byChunk.computeIfAbsent(chunkKey(dimensionIndex, entries[offset + 2]), key -> new IntArrayList()).add(size);
+		size++;
+	}
+
+	/**
+	 * Moves an entry to the chunk the entity is in now.
+	 */
+	void updateChunk(int index, Entity entity) {
+		int offset = index * STRIDE;
+		long newChunk = entity.getChunkPos().toLong();
+		if (entries[offset + 2] == newChunk) {
+			return;
+		}
+		int dimensionIndex = dimensionIndex(index);
+		IntArrayList oldList = byChunk.get(chunkKey(dimensionIndex, entries[offset + 2]));
+		if (oldList != null) {
+			oldList.rem(index);
+			if (oldList.isEmpty()) {
+				byChunk.remove(chunkKey(dimensionIndex, entries[offset + 2]));
+			}
+		}
+		entries[offset + 2] = newChunk;
+		byChunk.computeIfAbsent(chunkKey(dimensionIndex, newChunk), key -> new IntArrayList()).add(index);
+	}
+
+	UUID uuid(int index) {
+		return new UUID(entries[index * STRIDE], entries[index * STRIDE + 1]);
+	}
+
+	ChunkPos chunk(int index) {
+		return new ChunkPos(entries[index * STRIDE + 2]);
+	}
+
+	int dimensionIndex(int index) {
+		return (int) (entries[index * STRIDE + 3] >>> 32);
+	}
+
+	EntityType<?> type(int index) {
+		return Registries.ENTITY_TYPE.get((int) entries[index * STRIDE + 3]);
+	}
+
+	interface ChunkVisitor {
+		void visit(int dimensionIndex, ChunkPos chunkPos, IntArrayList indices);
+	}
+
+	/**
+	 * Visits every chunk that has entries, with the indices of its entries.
+	 */
+	void forEachChunk(ChunkVisitor visitor) {
+		for (IntArrayList indices : byChunk.values()) {
+			int first = indices.getInt(0);
+			visitor.visit(dimensionIndex(first), chunk(first), indices);
+		}
+	}
+
+	long[] toArray() {
+		return Arrays.copyOf(entries, size * STRIDE);
+	}
+
+	static SessionEntities fromArray(long[] array) {
+		SessionEntities loaded = new SessionEntities();
+		for (int offset = 0; offset + STRIDE <= array.length; offset += STRIDE) {
+			if ((loaded.size + 1) * STRIDE > loaded.entries.length) {
+				loaded.entries = Arrays.copyOf(loaded.entries, loaded.entries.length * 2);
+			}
+			System.arraycopy(array, offset, loaded.entries, loaded.size * STRIDE, STRIDE);
+			int dimensionIndex = (int) (array[offset + 3] >>> 32);
+			loaded.byChunk.computeIfAbsent(chunkKey(dimensionIndex, array[offset + 2]), key -> new IntArrayList()).add(loaded.size);
+			loaded.size++;
+		}
+		return loaded;
+	}
+
+	// Chunk coordinates are far below 2^26, so the top bits are free for the dimension index
+	private static long chunkKey(int dimensionIndex, long chunkPos) {
+		return chunkPos ^ ((long) dimensionIndex << 58);
+	}
+}
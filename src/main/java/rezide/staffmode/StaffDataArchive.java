@@ -0,0 +1,310 @@
+package rezide.staffmode;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Backup archive of a world's staff mode data: {@code staff_mode_data.nbt} and every
+ * {@code inventory_history/<uuid>.nbt}. Files are copied through one fixed buffer, so exporting or
+ * importing any number of histories uses the same memory, and nothing in the archive is parsed as NBT.
+ * <p>
+ * Layout: the magic {@code "SMAR"} and a format version, then for each file a {@code 1} byte, its
+ * relative name and its content as chunks of (length, bytes, CRC32 of the chunk) ending with a
+ * zero-length chunk and the CRC32 of the whole file. A {@code 0} byte and the file count end the
+ * archive. Every checksum is verified while a file is extracted, and an import only replaces data once
+ * the whole archive has been read back intact.
+ */
+public final class StaffDataArchive {
+
+	public static final String EXTENSION = ".smarchive";
+	static final String DATA_FILE = "staff_mode_data.nbt";
+	static final String HISTORY_DIRECTORY = "inventory_history";
+
+	private static final int MAGIC = 0x534D4152; // "SMAR"
+	private static final int FORMAT_VERSION = 1;
+	private static final int CHUNK_SIZE = 64 * 1024;
+	private static final byte ENTRY = 1;
+	private static final byte END = 0;
+
+	/**
+	 * Called after every file. {@code filesTotal} is {@code -1} while extracting, as the count is
+	 * only stored at the end of the archive.
+	 */
+	public interface Progress {
+		void update(int filesDone, int filesTotal, long bytesDone);
+	}
+
+	public record Summary(int files, long bytes) {
+	}
+
+	private StaffDataArchive() {
+	}
+
+	/**
+	 * Writes the staff mode data in {@code dataDirectory} to {@code archive}. The archive is written
+	 * next to its destination first, so an interrupted export never leaves a truncated archive behind.
+	 */
+	public static Summary export(Path dataDirectory, Path archive, Progress progress) throws IOException {
+		List<String> names = new ArrayList<>();
+		if (Files.isRegularFile(dataDirectory.resolve(DATA_FILE))) {
+			names.add(DATA_FILE);
+		}
+		Path historyDirectory = dataDirectory.resolve(HISTORY_DIRECTORY);
+		if (Files.isDirectory(historyDirectory)) {
+			try (Stream<Path> files = Files.list(historyDirectory)) {
+				files.map(file -> HISTORY_DIRECTORY + "/" + file.getFileName())
+						.filter(StaffDataArchive::isValidName)
+						.sorted()
+						.forEach(names::add);
+			}
+		}
+
+		Path parent = archive.toAbsolutePath().getParent();
+		Files.createDirectories(parent);
+		Path temporary = Files.createTempFile(parent, archive.getFileName().toString(), ".tmp");
+		byte[] buffer = new byte[CHUNK_SIZE];
+		long bytes = 0;
+		try {
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary), CHUNK_SIZE))) {
+				out.writeInt(MAGIC);
+				out.writeInt(FORMAT_VERSION);
+				for (int i = 0; i < names.size(); i++) {
+					String name = names.get(i);
+					out.writeByte(ENTRY);
+					out.writeUTF(name);
+					try (InputStream in = Files.newInputStream(dataDirectory.resolve(name))) {
+						bytes += writeChunks(in, out, buffer);
+					}
+					if (progress != null) {
+						progress.update(i + 1, names.size(), bytes);
+					}
+				}
+				out.writeByte(END);
+				out.writeInt(names.size());
+			}
+			Files.move(temporary, archive, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+		return new Summary(names.size(), bytes);
+	}
+
+	private static long writeChunks(InputStream in, DataOutputStream out, byte[] buffer) throws IOException {
+		CRC32 fileCrc = new CRC32();
+		CRC32 chunkCrc = new CRC32();
+		long total = 0;
+		int read;
+		while ((read = in.readNBytes(buffer, 0, buffer.length)) > 0) {
+			chunkCrc.reset();
+			chunkCrc.update(buffer, 0, read);
+			fileCrc.update(buffer, 0, read);
+			out.writeInt(read);
+			out.write(buffer, 0, read);
+			out.writeInt((int) chunkCrc.getValue());
+			total += read;
+		}
+		out.writeInt(0);
+		out.writeInt((int) fileCrc.getValue());
+		return total;
+	}
+
+	/**
+	 * Reads the whole archive and checks every checksum without writing anything.
+	 */
+	public static Summary verify(Path archive, Progress progress) throws IOException {
+		return read(archive, null, progress);
+	}
+
+	/**
+	 * Extracts the archive into {@code directory}, which should be a staging directory: on a damaged
+	 * archive it is left with the files read so far. Use {@link #install} to move the files into place.
+	 */
+	public static Summary extract(Path archive, Path directory, Progress progress) throws IOException {
+		return read(archive, directory, progress);
+	}
+
+	private static Summary read(Path archive, Path directory, Progress progress) throws IOException {
+		byte[] buffer = new byte[CHUNK_SIZE];
+		int files = 0;
+		long bytes = 0;
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(archive), CHUNK_SIZE))) {
+			if (in.readInt() != MAGIC) {
+				throw new IOException(archive.getFileName() + " is not a staff mode archive");
+			}
+			int version = in.readInt();
+			if (version != FORMAT_VERSION) {
+				throw new IOException("Unsupported archive format version " + version);
+			}
+			while (true) {
+				byte type = in.readByte();
+				if (type == END) {
+					break;
+				}
+				if (type != ENTRY) {
+					throw new IOException("Corrupt archive: unknown entry type " + type + " after " + files + " files");
+				}
+				String name = in.readUTF();
+				// Names decide where files are written, so anything but the two known layouts is rejected
+				if (!isValidName(name)) {
+					throw new IOException("Corrupt archive: unexpected entry " + name);
+				}
+				if (directory != null) {
+					Path target = directory.resolve(name);
+					Files.createDirectories(target.getParent());
+					try (OutputStream out = Files.newOutputStream(target)) {
+						bytes += readChunks(in, out, buffer, name);
+					}
+				} else {
+					bytes += readChunks(in, OutputStream.nullOutputStream(), buffer, name);
+				}
+				files++;
+				if (progress != null) {
+					progress.update(files, -1, bytes);
+				}
+			}
+			int count = in.readInt();
+			if (count != files) {
+				throw new IOException("Corrupt archive: " + files + " files read but " + count + " recorded");
+			}
+		} catch (EOFException e) {
+			throw new IOException("Archive is truncated after " + files + " files", e);
+		}
+		return new Summary(files, bytes);
+	}
+
+	private static long readChunks(DataInputStream in, OutputStream out, byte[] buffer, String name) throws IOException {
+		CRC32 fileCrc = new CRC32();
+		CRC32 chunkCrc = new CRC32();
+		long total = 0;
+		int length;
+		while ((length = in.readInt()) != 0) {
+			if (length < 0 || length > buffer.length) {
+				throw new IOException("Corrupt archive: bad chunk length " + length + " in " + name);
+			}
+			in.readFully(buffer, 0, length);
+			chunkCrc.reset();
+			chunkCrc.update(buffer, 0, length);
+			if (in.readInt() != (int) chunkCrc.getValue()) {
+				throw new IOException("Checksum mismatch in " + name + " at byte " + total);
+			}
+			fileCrc.update(buffer, 0, length);
+			out.write(buffer, 0, length);
+			total += length;
+		}
+		if (in.readInt() != (int) fileCrc.getValue()) {
+			throw new IOException("Checksum mismatch in " + name);
+		}
+		return total;
+	}
+
+	/**
+	 * Moves the files extracted to {@code staging} into {@code dataDirectory}, replacing the files with
+	 * the same names, and deletes {@code staging}. Histories of players not in the archive are kept.
+	 */
+	public static void install(Path staging, Path dataDirectory) throws IOException {
+		Path stagedHistories = staging.resolve(HISTORY_DIRECTORY);
+		if (Files.isDirectory(stagedHistories)) {
+			Path historyDirectory = dataDirectory.resolve(HISTORY_DIRECTORY);
+			Files.createDirectories(historyDirectory);
+			try (DirectoryStream<Path> files = Files.newDirectoryStream(stagedHistories)) {
+				for (Path file : files) {
+					Files.move(file, historyDirectory.resolve(file.getFileName().toString()), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				}
+			}
+		}
+		Path stagedData = staging.resolve(DATA_FILE);
+		if (Files.isRegularFile(stagedData)) {
+			Files.move(stagedData, dataDirectory.resolve(DATA_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		deleteDirectory(staging);
+	}
+
+	static void deleteDirectory(Path directory) throws IOException {
+		if (!Files.exists(directory)) {
+			return;
+		}
+		try (Stream<Path> paths = Files.walk(directory)) {
+			for (Path path : paths.sorted((a, b) -> b.getNameCount() - a.getNameCount()).toList()) {
+				Files.delete(path);
+			}
+		}
+	}
+
+	static boolean isValidName(String name) {
+		if (name.equals(DATA_FILE)) {
+			return true;
+		}
+		String prefix = HISTORY_DIRECTORY + "/";
+		if (!name.startsWith(prefix) || !name.endsWith(".nbt")) {
+			return false;
+		}
+		String uuid = name.substring(prefix.length(), name.length() - ".nbt".length());
+		try {
+			return UUID.fromString(uuid).toString().equals(uuid);
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * For backups of a stopped server. Importing replaces the data of the players in the archive, so the
+	 * server using {@code <staff-mode directory>} must not be running.
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length < 2 || !(args[0].equals("verify") || args.length >= 3)) {
+			System.err.println("Usage: StaffDataArchive export <staff-mode directory> <archive>");
+			System.err.println("       StaffDataArchive import <archive> <staff-mode directory>");
+			System.err.println("       StaffDataArchive verify <archive>");
+			System.exit(2);
+		}
+		Path dataDirectory = switch (args[0]) {
+			case "export" -> Path.of(args[1]);
+			case "import" -> Path.of(args[2]);
+			default -> null;
+		};
+		// Only left by a crash: the history files are behind it until the server replays it on start
+		Path journal = dataDirectory != null ? dataDirectory.resolve(HISTORY_DIRECTORY).resolve(NbtStaffStateStore.JOURNAL_FILE) : null;
+		if (journal != null && Files.exists(journal) && Files.size(journal) > 0) {
+			System.err.println("The inventory history journal is not empty. Start and stop the server once to apply it first.");
+			System.exit(1);
+		}
+		long start = System.nanoTime();
+		Summary summary;
+		switch (args[0]) {
+			case "export" -> summary = export(dataDirectory, Path.of(args[2]), null);
+			case "import" -> {
+				Path staging = dataDirectory.resolve("import-staging");
+				deleteDirectory(staging);
+				try {
+					summary = extract(Path.of(args[1]), staging, null);
+				} catch (IOException e) {
+					deleteDirectory(staging);
+					throw e;
+				}
+				install(staging, dataDirectory);
+			}
+			case "verify" -> summary = verify(Path.of(args[1]), null);
+			default -> {
+				System.err.println("Unknown action " + args[0] + ", expected export, import or verify");
+				System.exit(2);
+				return;
+			}
+		}
+		System.out.printf("%s: %d files, %d bytes in %d ms%n", args[0], summary.files(), summary.bytes(), (System.nanoTime() - start) / 1_000_000);
+	}
+}
@@ -0,0 +1,184 @@
+package rezide.staffmode;
+
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import net.minecraft.item.ItemStack;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.nbt.NbtList;
+import net.minecraft.registry.RegistryWrapper;
+import net.minecraft.server.MinecraftServer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fingerprints of item stacks that staff obtained in staff mode: everything taken from the creative
+ * menu, plus the creative inventories in the inventory history. {@link RegionScanner} matches world
+ * items against them.
+ * <p>
+ * A fingerprint is FNV-1a over the item ID and the SNBT of its components (keys sorted), so it is the
+ * same whether computed from a live stack or from region file NBT, and ignores the count and the
+ * {@link StaffProvenance} mark, which differs for every grab. Stacks without other components are not
+ * recorded: a plain diamond would match every diamond in the world.
+ * <p>
+ * Creative stacks are only copied when their packet arrives and are encoded at the end of the tick.
+ */
+public final class StaffItemLedger {
+
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	private static final LongOpenHashSet fingerprints = new LongOpenHashSet();
+	private static File ledgerFile;
+	private static boolean dirty;
+	// Creative stacks waiting to be fingerprinted; only touched on the server thread
+	private static final List<ItemStack> pendingStacks = new ArrayList<>();
+
+	private StaffItemLedger() {
+	}
+
+	/**
+	 * Called for stacks staff take from the creative menu, before they are marked. Stacks with
+	 * components are copied and fingerprinted by {@link #recordPendingStacks} at the end of the tick.
+	 */
+	public static void recordCreativeStack(ItemStack stack) {
+		if (stack.isEmpty() || stack.getComponentChanges().isEmpty()) {
+			return;
+		}
+		ItemStack copy = StaffProvenance.strip(stack.copy());
+		if (!copy.getComponentChanges().isEmpty()) {
+			pendingStacks.add(copy);
+		}
+	}
+
+	/**
+	 * Fingerprints the creative stacks recorded since the last call. Runs at the end of every tick and
+	 * before the ledger is read or saved.
+	 */
+	static void recordPendingStacks(MinecraftServer server) {
+		if (pendingStacks.isEmpty()) {
+			return;
+		}
+		RegistryWrapper.WrapperLookup lookup = server.getRegistryManager();
+		for (ItemStack stack : pendingStacks) {
+			if (stack.encode(lookup) instanceof NbtCompound itemTag) {
+				add(fingerprint(itemTag));
+			}
+		}
+		pendingStacks.clear();
+	}
+
+	/**
+	 * Records the stacks of an encoded inventory (a list of item compounds).
+	 */
+	static void recordEncodedInventory(NbtList items) {
+		for (int i = 0; i < items.size(); i++) {
+			add(fingerprint(items.getCompound(i)));
+		}
+	}
+
+	private static synchronized void add(long fingerprint) {
+		if (fingerprint != 0L && fingerprints.add(fingerprint)) {
+			dirty = true;
+		}
+	}
+
+	static synchronized LongOpenHashSet copyFingerprints() {
+		return new LongOpenHashSet(fingerprints);
+	}
+
+	/**
+	 * @return The fingerprint of an encoded item stack, or 0 if it has no components besides the
+	 * provenance mark.
+	 */
+	public static long fingerprint(NbtCompound itemTag) {
+		if (!itemTag.contains("components", NbtElement.COMPOUND_TYPE)) {
+			return 0L;
+		}
+		NbtCompound components = withoutProvenance(itemTag.getCompound("components"));
+		if (components.isEmpty()) {
+			return 0L;
+		}
+		long hash = FNV_OFFSET_BASIS;
+		hash = mix(hash, itemTag.getString("id"));
+		hash = mix(hash, "\0");
+		hash = mix(hash, components.asString());
+		return hash == 0L ? 1L : hash;
+	}
+
+	// Region file items carry the mark from when staff took them; it is copied only if present
+	private static NbtCompound withoutProvenance(NbtCompound components) {
+		NbtCompound customData = components.getCompound("minecraft:custom_data");
+		if (!customData.contains(StaffProvenance.KEY)) {
+			return components;
+		}
+		NbtCompound stripped = components.copy();
+		NbtCompound strippedData = customData.copy();
+		strippedData.remove(StaffProvenance.KEY);
+		if (strippedData.isEmpty()) {
+			stripped.remove("minecraft:custom_data");
+		} else {
+			stripped.put("minecraft:custom_data", strippedData);
+		}
+		return stripped;
+	}
+
+	private static long mix(long hash, String value) {
+		for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+			hash ^= b & 0xFF;
+			hash *= FNV_PRIME;
+		}
+		return hash;
+	}
+
+	static synchronized void load(File file) {
+		ledgerFile = file;
+		fingerprints.clear();
+		dirty = false;
+		if (!file.exists()) {
+			return;
+		}
+		fingerprints.addAll(readFile(file));
+	}
+
+	/**
+	 * Reads a ledger file without loading it as the current ledger, e.g. for the standalone scanner.
+	 */
+	static LongOpenHashSet readFile(File file) {
+		LongOpenHashSet loaded = new LongOpenHashSet();
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				loaded.add(in.readLong());
+			}
+		} catch (IOException e) {
+			StaffMode.LOGGER.error("Failed to load staff item ledger {}: {}", file.getName(), e.getMessage());
+		}
+		return loaded;
+	}
+
+	static synchronized void save() {
+		if (!dirty || ledgerFile == null) {
+			return;
+		}
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(ledgerFile)))) {
+			out.writeInt(fingerprints.size());
+			for (LongIterator iterator = fingerprints.iterator(); iterator.hasNext(); ) {
+				out.writeLong(iterator.nextLong());
+			}
+			dirty = false;
+		} catch (IOException e) {
+			StaffMode.LOGGER.error("Failed to save staff item ledger: {}", e.getMessage());
+		}
+	}
+}
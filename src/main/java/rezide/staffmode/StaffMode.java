@@ -6,16 +6,19 @@ import com.mojang.brigadier.CommandDispatcher;
 import com.mojang.brigadier.arguments.IntegerArgumentType;
 import com.mojang.brigadier.arguments.StringArgumentType;
 import com.mojang.brigadier.context.CommandContext;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import net.fabricmc.api.ModInitializer;
 import net.fabricmc.fabric.api.command.v2.CommandRegistrationCallback;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerEntityEvents;
 import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
 import net.fabricmc.fabric.api.networking.v1.ServerPlayConnectionEvents;
+import net.fabricmc.loader.api.FabricLoader;
 import net.minecraft.command.CommandRegistryAccess;
+import net.minecraft.command.CommandSource;
 import net.minecraft.item.ItemStack;
 import net.minecraft.nbt.NbtCompound;
-import net.minecraft.nbt.NbtIo;
 import net.minecraft.nbt.NbtList;
-import net.minecraft.nbt.NbtSizeTracker;
 import net.minecraft.registry.RegistryWrapper;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.command.ServerCommandSource;
@@ -26,19 +29,24 @@ import net.minecraft.world.GameMode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedInputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.time.LocalDateTime; // Added for inventory history timestamp
-import java.time.format.DateTimeFormatter; // Added for inventory history timestamp formatting
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayDeque; // For inventory history
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Deque; // For inventory history
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 import static net.minecraft.server.command.CommandManager.argument;
 import static net.minecraft.server.command.CommandManager.literal;
@@ -53,22 +61,46 @@ public class StaffMode implements ModInitializer {
 	// New: Inventory history for each player
 	private static final Map<UUID, Deque<PlayerInventorySnapshot>> inventoryHistory = new HashMap<>();
 	private static final int MAX_INVENTORY_HISTORY = 30; // Store last 30 inventory states
+	// Periodic snapshots are capped separately, so they never evict toggle and restore snapshots
+	private static final int MAX_PERIODIC_HISTORY = 10;
 
-	private static StaffModeConfig config;
 	private static File dataFile;
 	private static File inventoryHistoryDir; // Directory for inventory history
+	private static StaffStateStore stateStore;
+	private static String serverId = "";
+	private static final AtomicBoolean scanRunning = new AtomicBoolean();
+	private static final AtomicBoolean archiveRunning = new AtomicBoolean();
+	private static final long ARCHIVE_PROGRESS_INTERVAL_MS = 2000;
+	// /staffmode subcommands, which need a higher permission level than toggling
+	private static final Set<String> SUBCOMMANDS = Set.of("perf", "rollback", "entities", "scan", "export", "import");
 
 	@Override
 	public void onInitialize() {
 		LOGGER.info("Staff Mode initialized!");
 
-		config = StaffModeConfig.getInstance();
+		StaffModeConfig config = StaffModeConfig.getInstance();
+		StaffModePerf.setEnabled(config.isPerfMonitoringEnabled());
+		CommandLogFilter.configure(config);
+
+		// Apply config changes live: perf monitoring, command log rules, Discord bot token and HTTP port
+		StaffModeConfig.addReloadListener((previous, current) -> {
+			if (previous.isPerfMonitoringEnabled() != current.isPerfMonitoringEnabled()) {
+				StaffModePerf.setEnabled(current.isPerfMonitoringEnabled());
+			}
+			if (!previous.getCommandLogInclude().equals(current.getCommandLogInclude())
+					|| !previous.getCommandLogExclude().equals(current.getCommandLogExclude())
+					|| !previous.getCommandLogRedact().equals(current.getCommandLogRedact())) {
+				CommandLogFilter.configure(current);
+			}
+		});
+		StaffModeConfig.addReloadListener(DiscordBotManager::onConfigReloaded);
 
 		CommandRegistrationCallback.EVENT.register((dispatcher, registryAccess, environment) -> {
 			registerCommands(dispatcher, registryAccess);
 		});
 
 		ServerPlayConnectionEvents.JOIN.register((handler, sender, server) -> {
+			PlayerNameIndex.put(handler.player.getGameProfile().getName(), handler.player.getUuid());
 			server.execute(() -> {
 				updatePlayerCount(server);
 				// Enhanced check on player join:
@@ -76,6 +108,13 @@ public class StaffMode implements ModInitializer {
 				// being in staff mode (e.g., manual gamemode change before disconnect,
 				// or a crash where data was lost/corrupted), revert them.
 				if (handler.player.interactionManager.getGameMode() == GameMode.CREATIVE && !isPlayerInStaffMode(handler.player.getUuid())) {
+					// They may have entered staff mode on another server sharing the state store
+					String fromServerId = adoptStaffDataFromOtherServer(server, handler.player.getUuid());
+					if (fromServerId != null) {
+						LOGGER.warn("Player {} joined in creative mode with staff mode data from server {}. Forcing revert to survival with saved inventory.", handler.player.getName().getString(), fromServerId);
+						revertPlayerToSurvival(handler.player, "staff mode carried over from server " + fromServerId);
+						return;
+					}
 					LOGGER.warn("Player {} joined in creative mode without staff mode data. Forcing revert to survival.", handler.player.getName().getString());
 					handler.player.getInventory().clear(); // Clear inventory as we have no saved one
 					handler.player.changeGameMode(GameMode.SURVIVAL); // Revert to survival
@@ -91,72 +130,554 @@ public class StaffMode implements ModInitializer {
 					// This could indicate a manual gamemode change. Force revert to survival with their saved inventory.
 					LOGGER.warn("Player {} joined not in creative mode but had staff mode data. Forcing revert to survival with saved inventory.", handler.player.getName().getString());
 					revertPlayerToSurvival(handler.player);
+				} else if (isPlayerInStaffMode(handler.player.getUuid())) {
+					// Still in staff mode after a crash; the saved time limit keeps running
+					SessionDeadlines.resume(handler.player.getUuid());
+					publishStaffStatus(server);
 				}
 			});
 		});
 
 		ServerPlayConnectionEvents.DISCONNECT.register((handler, server) -> {
 			// Revert player to survival on disconnect, and then save the data.
+			ContainerAudit.onScreenClosed(handler.player); // Flush a container left open, before the inventory is swapped back
 			revertPlayerToSurvival(handler.player);
+			PeriodicSnapshotter.forget(handler.player.getUuid());
+			ContainerAudit.forget(handler.player.getUuid());
 			server.execute(() -> {
 				updatePlayerCount(server);
 			});
 			// saveData(server); // Data is saved on server stopping and after toggle.
 		});
 
+		// Folds per-tick timings into the perf histograms; returns immediately when perf monitoring is off
+		ServerTickEvents.END_SERVER_TICK.register(server -> StaffModePerf.endTick());
+
+		// Feeds the player count time series once per second
+		ServerTickEvents.END_SERVER_TICK.register(server -> {
+			if (server.getTicks() % 20 == 0) {
+				PlayerCountHistory.sample(System.currentTimeMillis(), server.getCurrentPlayerCount(), savedSurvivalInventories.size());
+			}
+		});
+
+		// Fingerprints the stacks staff took from the creative menu during the tick
+		ServerTickEvents.END_SERVER_TICK.register(StaffItemLedger::recordPendingStacks);
+
+		// Periodic change-aware survival inventory snapshots, if configured
+		ServerTickEvents.END_SERVER_TICK.register(PeriodicSnapshotter::tick);
+
+		// Runs queued staff session rollbacks a few hundred blocks per tick
+		ServerTickEvents.END_SERVER_TICK.register(StaffSessions::tick);
+
+		// Staff mode time limit warnings and expiry
+		ServerTickEvents.END_SERVER_TICK.register(SessionDeadlines::tick);
+
+		// Keeps the chunk index of entities produced in staff mode current and applies pending purges
+		ServerEntityEvents.ENTITY_LOAD.register(StaffSessions::onEntityLoad);
+		ServerEntityEvents.ENTITY_UNLOAD.register(StaffSessions::onEntityUnload);
+
 		ServerLifecycleEvents.SERVER_STARTED.register(server -> {
 			LOGGER.info("Minecraft server started. Starting Discord bot and sending initial player count.");
-			File creativeToggleDataDir = server.getSavePath(WorldSavePath.ROOT).resolve(MOD_ID).toFile();
-			if (!creativeToggleDataDir.exists()) {
-				creativeToggleDataDir.mkdirs(); // Ensure the directory exists
-			}
-			dataFile = new File(creativeToggleDataDir, "staff_mode_data.nbt");
-			inventoryHistoryDir = new File(creativeToggleDataDir, "inventory_history");
-			if (!inventoryHistoryDir.exists()) {
-				inventoryHistoryDir.mkdirs();
-			}
+			setDataDirectory(server.getSavePath(WorldSavePath.ROOT).resolve(MOD_ID).toFile());
+			openStateStore(server);
 
 			loadData(server); // Load general staff mode data
+			SessionDeadlines.load();
 			loadInventoryHistory(server); // Load inventory history
+			PlayerNameIndex.build(server, inventoryHistory.keySet());
+			StaffStateView.setServer(server);
+			publishStaffStatus(server);
+			PlayerCountHistory.load(new File(dataFile.getParentFile(), "player_count_history.bin"));
 
-			DiscordBotManager.startBot(config.getDiscordBotToken(), config.getDiscordBotHttpPort(), server, config);
+			DiscordBotManager.startBot(server);
+			StaffModeConfig.startWatching();
 		});
 
 		ServerLifecycleEvents.SERVER_STOPPING.register(server -> {
 			LOGGER.info("Server is stopping. Reverting all creative players to survival and saving data...");
-			for (ServerPlayerEntity player : server.getPlayerManager().getPlayerList()) {
-				revertPlayerToSurvival(player);
-			}
-			saveData(server); // Save general staff mode data
-			saveAllInventoryHistory(server); // Save all inventory history
+			// Reverts everyone in memory, then saves staff mode data and all histories in one pass
+			revertAllPlayersToSurvival(server);
+			closeStateStore();
+			PlayerCountHistory.save();
+			StaffItemLedger.recordPendingStacks(server);
+			StaffItemLedger.save();
 			DiscordBotManager.currentPlayerCount.set(0);
 			DiscordBotManager.updateBotPresence();
 			DiscordBotManager.stopBot();
+			StaffModeConfig.stopWatching();
+			StaffStateView.setServer(null);
 		});
+
+		// Entities unloaded while the worlds closed may have moved since their session was written
+		ServerLifecycleEvents.SERVER_STOPPED.register(server -> StaffSessions.saveStaleSessions());
 	}
 
 	private static void registerCommands(CommandDispatcher<ServerCommandSource> dispatcher, CommandRegistryAccess registryAccess) {
 		dispatcher.register(literal("staffmode")
 				.requires(source -> source.hasPermissionLevel(1))
 				.executes(context -> executeCreativeToggle(context, "No reason provided."))
+				// /staffmode perf [on|off|reset]
+				.then(literal("perf")
+						.requires(source -> source.hasPermissionLevel(2))
+						.executes(StaffMode::showPerfReport)
+						.then(literal("on").executes(context -> setPerfMonitoring(context, true)))
+						.then(literal("off").executes(context -> setPerfMonitoring(context, false)))
+						.then(literal("reset").executes(context -> {
+							StaffModePerf.reset();
+							CommandLogFilter.resetCounters();
+							context.getSource().sendFeedback(() -> Text.literal("§aStaff Mode perf statistics reset."), false);
+							return Command.SINGLE_SUCCESS;
+						}))
+				)
+				// /staffmode rollback <player> [session]
+				.then(literal("rollback")
+						.requires(source -> source.hasPermissionLevel(2))
+						.then(argument("player", StringArgumentType.word())
+								.executes(context -> rollbackSession(context, StringArgumentType.getString(context, "player"), -1))
+								.then(argument("session", IntegerArgumentType.integer(1))
+										.executes(context -> rollbackSession(context, StringArgumentType.getString(context, "player"), IntegerArgumentType.getInteger(context, "session")))
+								)
+						)
+				)
+				// /staffmode entities <player> [session] [purge]
+				.then(literal("entities")
+						.requires(source -> source.hasPermissionLevel(2))
+						.then(argument("player", StringArgumentType.word())
+								.executes(context -> sessionEntities(context, StringArgumentType.getString(context, "player"), -1, false))
+								.then(argument("session", IntegerArgumentType.integer(1))
+										.executes(context -> sessionEntities(context, StringArgumentType.getString(context, "player"), IntegerArgumentType.getInteger(context, "session"), false))
+										.then(literal("purge")
+												.executes(context -> sessionEntities(context, StringArgumentType.getString(context, "player"), IntegerArgumentType.getInteger(context, "session"), true))
+										)
+								)
+						)
+				)
+				// /staffmode scan
+				.then(literal("scan")
+						.requires(source -> source.hasPermissionLevel(2))
+						.executes(StaffMode::scanWorld)
+				)
+				// /staffmode export [name]
+				.then(literal("export")
+						.requires(source -> source.hasPermissionLevel(2))
+						.executes(context -> exportStaffData(context, null))
+						.then(argument("name", StringArgumentType.word())
+								.executes(context -> exportStaffData(context, StringArgumentType.getString(context, "name")))
+						)
+				)
+				// /staffmode import <name>
+				.then(literal("import")
+						.requires(source -> source.hasPermissionLevel(2))
+						.then(argument("name", StringArgumentType.word())
+								.suggests((context, builder) -> CommandSource.suggestMatching(listArchives(), builder))
+								.executes(context -> importStaffData(context, StringArgumentType.getString(context, "name")))
+						)
+				)
 				.then(argument("reason", StringArgumentType.greedyString())
-						.executes(context -> executeCreativeToggle(context, StringArgumentType.getString(context, "reason")))
+						.executes(context -> executeCreativeToggleWithReason(context, StringArgumentType.getString(context, "reason")))
 				)
 		);
 
-		// New command: /inventoryhistory <player> [index]
+		// New command: /inventoryhistory <player> [index] [part]
 		dispatcher.register(literal("inventoryhistory")
 				.requires(source -> source.hasPermissionLevel(2)) // Higher permission for sensitive command
 				.then(argument("player", StringArgumentType.word()) // Use StringArgumentType.word for player name
 						.executes(context -> listInventoryHistory(context, StringArgumentType.getString(context, "player")))
-						.then(argument("index", IntegerArgumentType.integer(0, MAX_INVENTORY_HISTORY - 1)) // Index from 0 to MAX-1
-								.executes(context -> restoreInventoryHistory(context, StringArgumentType.getString(context, "player"), IntegerArgumentType.getInteger(context, "index")))
+						.then(argument("index", IntegerArgumentType.integer(0, MAX_INVENTORY_HISTORY + MAX_PERIODIC_HISTORY - 1)) // Toggle and periodic snapshots share the index range
+								.executes(context -> restoreInventoryHistory(context, StringArgumentType.getString(context, "player"), IntegerArgumentType.getInteger(context, "index"), PlayerStateColumns.Part.INVENTORY.id))
+								// Restores only part of the snapshot, e.g. the ender chest
+								.then(argument("part", StringArgumentType.word())
+										.suggests((context, builder) -> CommandSource.suggestMatching(Arrays.stream(PlayerStateColumns.Part.values()).map(part -> part.id), builder))
+										.executes(context -> restoreInventoryHistory(context, StringArgumentType.getString(context, "player"), IntegerArgumentType.getInteger(context, "index"), StringArgumentType.getString(context, "part")))
+								)
 						)
 				)
 		);
 	}
 
+	private static int showPerfReport(CommandContext<ServerCommandSource> context) {
+		for (String line : StaffModePerf.report()) {
+			context.getSource().sendFeedback(() -> Text.literal(line), false);
+		}
+		String commandLogLine = CommandLogFilter.report();
+		context.getSource().sendFeedback(() -> Text.literal(commandLogLine), false);
+		return Command.SINGLE_SUCCESS;
+	}
+
+	private static int setPerfMonitoring(CommandContext<ServerCommandSource> context, boolean enabled) {
+		StaffModePerf.setEnabled(enabled);
+		context.getSource().sendFeedback(() -> Text.literal(enabled
+				? "§aStaff Mode perf monitoring enabled. Use /staffmode perf to view results."
+				: "§eStaff Mode perf monitoring disabled."), true);
+		return Command.SINGLE_SUCCESS;
+	}
+
+	private static int rollbackSession(CommandContext<ServerCommandSource> context, String playerName, int sessionId) {
+		ServerCommandSource source = context.getSource();
+		MinecraftServer server = source.getServer();
+		ServerPlayerEntity targetPlayer = server.getPlayerManager().getPlayer(playerName);
+		UUID targetUuid = targetPlayer != null ? targetPlayer.getUuid() : PlayerNameIndex.lookup(playerName);
+		if (targetUuid == null) {
+			source.sendError(Text.literal("§cPlayer '" + playerName + "' not found."));
+			return 0;
+		}
+
+		StaffSession active = StaffSessions.getActive(targetUuid);
+		if (sessionId < 0) {
+			// Latest ended session
+			sessionId = StaffSessions.latestSessionId(targetUuid);
+			if (active != null && active.id == sessionId) {
+				sessionId--;
+			}
+		}
+
+		StaffSession session;
+		try {
+			session = sessionId > 0 ? StaffSessions.loadEnded(targetUuid, sessionId) : null;
+		} catch (IOException e) {
+			LOGGER.error("Failed to load staff session {} of {}: {}", sessionId, playerName, e.getMessage());
+			source.sendError(Text.literal("§cFailed to load session #" + sessionId + " of " + playerName + "."));
+			return 0;
+		}
+		if (session == null) {
+			source.sendError(Text.literal("§cNo ended staff session " + (sessionId > 0 ? "#" + sessionId + " " : "") + "found for " + playerName + "."));
+			return 0;
+		}
+
+		long entries;
+		try {
+			entries = StaffSessions.startRollback(server, session, message -> source.sendFeedback(() -> Text.literal(message), true));
+		} catch (IOException e) {
+			LOGGER.error("Failed to read block journal of session {} of {}: {}", session.id, playerName, e.getMessage());
+			source.sendError(Text.literal("§cFailed to read the block journal of session #" + session.id + "."));
+			return 0;
+		}
+		source.sendFeedback(() -> Text.literal(String.format("§eRolling back §a%s§e's staff session #%d (%d block changes)...", playerName, session.id, entries)), true);
+
+		String discordMessage = String.format("**%s** started a rollback of **%s**'s staff session #%d (%d block changes).",
+				source.getName(), playerName, session.id, entries);
+		DiscordBotManager.sendMessageToChannel(getConfig().getAdminLogChannelId(), discordMessage);
+		return Command.SINGLE_SUCCESS;
+	}
+
+	private static int sessionEntities(CommandContext<ServerCommandSource> context, String playerName, int sessionId, boolean purge) {
+		ServerCommandSource source = context.getSource();
+		MinecraftServer server = source.getServer();
+		ServerPlayerEntity targetPlayer = server.getPlayerManager().getPlayer(playerName);
+		UUID targetUuid = targetPlayer != null ? targetPlayer.getUuid() : PlayerNameIndex.lookup(playerName);
+		if (targetUuid == null) {
+			source.sendError(Text.literal("§cPlayer '" + playerName + "' not found."));
+			return 0;
+		}
+		if (sessionId < 0) {
+			sessionId = StaffSessions.latestSessionId(targetUuid); // Latest session, active or not
+		}
+
+		StaffSession session;
+		try {
+			session = sessionId > 0 ? StaffSessions.find(targetUuid, sessionId) : null;
+		} catch (IOException e) {
+			LOGGER.error("Failed to load staff session {} of {}: {}", sessionId, playerName, e.getMessage());
+			source.sendError(Text.literal("§cFailed to load session #" + sessionId + " of " + playerName + "."));
+			return 0;
+		}
+		if (session == null) {
+			source.sendError(Text.literal("§cNo staff session " + (sessionId > 0 ? "#" + sessionId + " " : "") + "found for " + playerName + "."));
+			return 0;
+		}
+
+		if (!purge) {
+			for (String line : StaffSessions.listEntities(server, session)) {
+				source.sendFeedback(() -> Text.literal(line), false);
+			}
+			return Command.SINGLE_SUCCESS;
+		}
+
+		int[] purged = StaffSessions.purgeEntities(server, session);
+		source.sendFeedback(() -> Text.literal(String.format("§aPurged §e%d §aentities of §e%s§a's session #%d; §e%d §ain unloaded chunks will be removed when they load.",
+				purged[0], playerName, session.id, purged[1])), true);
+		String discordMessage = String.format("**%s** purged %d entities produced by **%s**'s staff session #%d (%d more pending in unloaded chunks).",
+				source.getName(), purged[0], playerName, session.id, purged[1]);
+		DiscordBotManager.sendMessageToChannel(getConfig().getAdminLogChannelId(), discordMessage);
+		return Command.SINGLE_SUCCESS;
+	}
+
+	private static int scanWorld(CommandContext<ServerCommandSource> context) {
+		ServerCommandSource source = context.getSource();
+		MinecraftServer server = source.getServer();
+		if (!scanRunning.compareAndSet(false, true)) {
+			source.sendError(Text.literal("§cA world scan is already running."));
+			return 0;
+		}
+
+		// Creative inventories staff left staff mode with also count as staff-obtained
+		for (Deque<PlayerInventorySnapshot> history : inventoryHistory.values()) {
+			for (PlayerInventorySnapshot snapshot : history) {
+				if (snapshot.reason.equals("exit_staff_mode_creative") || snapshot.reason.equals("revert_staff_mode_disconnect")) {
+					StaffItemLedger.recordEncodedInventory(snapshot.toNbt(server.getRegistryManager()).getList("Inventory", NbtCompound.COMPOUND_TYPE));
+				}
+			}
+		}
+		StaffItemLedger.recordPendingStacks(server);
+		StaffItemLedger.save();
+		LongOpenHashSet fingerprints = StaffItemLedger.copyFingerprints();
+		if (fingerprints.isEmpty()) {
+			scanRunning.set(false);
+			source.sendError(Text.literal("§cNo staff-obtained items with components have been recorded yet."));
+			return 0;
+		}
+
+		Path worldDirectory = server.getSavePath(WorldSavePath.ROOT);
+		File reportsDirectory = new File(dataFile.getParentFile(), "scan-reports");
+		int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+		source.sendFeedback(() -> Text.literal(String.format("§eScanning saved region files for §b%d §estaff-obtained item fingerprints on %d threads. Run /save-all first to include recent changes.",
+				fingerprints.size(), threads)), true);
+
+		Thread scanThread = new Thread(() -> {
+			try {
+				RegionScanner.Result result = new RegionScanner(worldDirectory, fingerprints, threads).scan();
+				File report = RegionScanner.writeReport(reportsDirectory, result);
+				LOGGER.info("World scan finished: {} chunks, {} matches in {} ms. Report: {}", result.chunks(), result.hits().size(), result.elapsedMillis(), report);
+				server.execute(() -> {
+					source.sendFeedback(() -> Text.literal(String.format("§aWorld scan finished in %.1fs: §e%d §amatches in %d chunks and %d player files (%d unreadable). Report: §7%s",
+							result.elapsedMillis() / 1000.0, result.hits().size(), result.chunks(), result.playerFiles(), result.failures(), report.getName())), true);
+					int shown = Math.min(result.hits().size(), 10);
+					for (int i = 0; i < shown; i++) {
+						RegionScanner.Hit hit = result.hits().get(i);
+						source.sendFeedback(() -> Text.literal(String.format("§7- %s %s §f%s x%d §7in %s",
+								hit.dimension(), hit.location(), hit.itemId(), hit.count(), hit.containers().isEmpty() ? "the world" : hit.containers())), false);
+					}
+					if (!result.hits().isEmpty()) {
+						DiscordBotManager.sendMessageToChannel(getConfig().getAdminLogChannelId(), String.format("World scan started by **%s** found %d staff-obtained items in the world. Report: `%s`",
+								source.getName(), result.hits().size(), report.getName()));
+					}
+				});
+			} catch (IOException | InterruptedException e) {
+				LOGGER.error("World scan failed: {}", e.getMessage());
+				server.execute(() -> source.sendError(Text.literal("§cWorld scan failed: " + e.getMessage())));
+			} finally {
+				scanRunning.set(false);
+			}
+		}, "StaffMode-RegionScan");
+		scanThread.setDaemon(true);
+		scanThread.start();
+		return Command.SINGLE_SUCCESS;
+	}
+
+	private static File getExportsDirectory() {
+		return new File(dataFile.getParentFile(), "exports");
+	}
+
+	private static List<String> listArchives() {
+		String[] names = getExportsDirectory().list((dir, name) -> name.endsWith(StaffDataArchive.EXTENSION));
+		return names != null ? Arrays.asList(names) : List.of();
+	}
+
+	/**
+	 * Archives only read and replace the files of the NBT store.
+	 */
+	private static boolean checkArchiveSupported(ServerCommandSource source) {
+		if (!(stateStore instanceof NbtStaffStateStore)) {
+			source.sendError(Text.literal("§cExport and import need the nbt state store; this server uses " + stateStore.getName() + "."));
+			return false;
+		}
+		if (!archiveRunning.compareAndSet(false, true)) {
+			source.sendError(Text.literal("§cAn export or import is already running."));
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Reports progress to the command source at most every {@link #ARCHIVE_PROGRESS_INTERVAL_MS}.
+	 */
+	private static StaffDataArchive.Progress archiveProgress(MinecraftServer server, ServerCommandSource source, String action) {
+		long[] lastReport = {System.currentTimeMillis()};
+		return (filesDone, filesTotal, bytesDone) -> {
+			long now = System.currentTimeMillis();
+			if (now - lastReport[0] < ARCHIVE_PROGRESS_INTERVAL_MS) {
+				return;
+			}
+			lastReport[0] = now;
+			String files = filesTotal >= 0 ? filesDone + "/" + filesTotal : String.valueOf(filesDone);
+			server.execute(() -> source.sendFeedback(() -> Text.literal(String.format("§7%s: %s files, %.1f MB...", action, files, bytesDone / 1048576.0)), false));
+		};
+	}
+
+	private static int exportStaffData(CommandContext<ServerCommandSource> context, String name) {
+		ServerCommandSource source = context.getSource();
+		MinecraftServer server = source.getServer();
+		if (!checkArchiveSupported(source)) {
+			return 0;
+		}
+		if (name == null) {
+			name = "staff-mode-" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss"));
+		}
+		if (!name.endsWith(StaffDataArchive.EXTENSION)) {
+			name += StaffDataArchive.EXTENSION;
+		}
+		// Brings the files up to date: histories still waiting for their group commit are written too
+		saveData(server);
+		try {
+			((NbtStaffStateStore) stateStore).flush();
+		} catch (IOException e) {
+			archiveRunning.set(false);
+			source.sendError(Text.literal("§cExport failed: could not commit inventory histories: " + e.getMessage()));
+			return 0;
+		}
+
+		Path dataDirectory = dataFile.getParentFile().toPath();
+		Path archive = getExportsDirectory().toPath().resolve(name);
+		String archiveName = name;
+		source.sendFeedback(() -> Text.literal("§eExporting staff mode data to §7" + archiveName + "§e..."), true);
+
+		Thread exportThread = new Thread(() -> {
+			try {
+				long start = System.currentTimeMillis();
+				StaffDataArchive.Summary summary = StaffDataArchive.export(dataDirectory, archive, archiveProgress(server, source, "Exporting"));
+				long elapsed = System.currentTimeMillis() - start;
+				LOGGER.info("Exported {} staff mode files ({} bytes) to {} in {} ms.", summary.files(), summary.bytes(), archive, elapsed);
+				server.execute(() -> source.sendFeedback(() -> Text.literal(String.format("§aExported %d files (%.1f MB) in %.1fs to §7%s",
+						summary.files(), summary.bytes() / 1048576.0, elapsed / 1000.0, archiveName)), true));
+			} catch (IOException e) {
+				LOGGER.error("Staff mode export failed: {}", e.getMessage());
+				server.execute(() -> source.sendError(Text.literal("§cExport failed: " + e.getMessage())));
+			} finally {
+				archiveRunning.set(false);
+			}
+		}, "StaffMode-Export");
+		exportThread.setDaemon(true);
+		exportThread.start();
+		return Command.SINGLE_SUCCESS;
+	}
+
+	/**
+	 * Extracts and verifies the archive in the background, then replaces the staff mode data and the
+	 * histories of the players in it on the server thread and reloads them. Refused while anyone is in
+	 * staff mode, since their saved survival inventories would be replaced, and when the archive has staff
+	 * mode data for a player who is online.
+	 */
+	private static int importStaffData(CommandContext<ServerCommandSource> context, String name) {
+		ServerCommandSource source = context.getSource();
+		MinecraftServer server = source.getServer();
+		if (!savedSurvivalInventories.isEmpty()) {
+			source.sendError(Text.literal("§cCannot import while " + savedSurvivalInventories.size() + " player(s) are in staff mode."));
+			return 0;
+		}
+		// Archives are only read from the exports directory
+		if (name.startsWith(".") || name.contains("..")) {
+			source.sendError(Text.literal("§cInvalid archive name: " + name));
+			return 0;
+		}
+		if (!name.endsWith(StaffDataArchive.EXTENSION)) {
+			name += StaffDataArchive.EXTENSION;
+		}
+		File archive = new File(getExportsDirectory(), name);
+		if (!archive.isFile()) {
+			source.sendError(Text.literal("§cNo archive named " + name + " in the exports directory."));
+			return 0;
+		}
+		if (!checkArchiveSupported(source)) {
+			return 0;
+		}
+
+		Path dataDirectory = dataFile.getParentFile().toPath();
+		Path staging = dataDirectory.resolve("import-staging");
+		String archiveName = name;
+		source.sendFeedback(() -> Text.literal("§eImporting staff mode data from §7" + archiveName + "§e..."), true);
+
+		Thread importThread = new Thread(() -> {
+			try {
+				StaffDataArchive.deleteDirectory(staging);
+				StaffDataArchive.Summary summary = StaffDataArchive.extract(archive.toPath(), staging, archiveProgress(server, source, "Importing"));
+				server.execute(() -> {
+					try {
+						installImport(server, staging);
+						LOGGER.info("Imported {} staff mode files ({} bytes) from {}.", summary.files(), summary.bytes(), archive);
+						source.sendFeedback(() -> Text.literal(String.format("§aImported %d files (%.1f MB) from §7%s§a. %d players in staff mode, %d histories loaded.",
+								summary.files(), summary.bytes() / 1048576.0, archiveName, savedSurvivalInventories.size(), inventoryHistory.size())), true);
+						DiscordBotManager.sendMessageToChannel(getConfig().getAdminLogChannelId(), String.format("**%s** imported staff mode data from `%s` (%d files).",
+								source.getName(), archiveName, summary.files()));
+					} catch (IOException e) {
+						LOGGER.error("Staff mode import failed: {}", e.getMessage());
+						source.sendError(Text.literal("§cImport failed: " + e.getMessage()));
+					} finally {
+						archiveRunning.set(false);
+					}
+				});
+			} catch (IOException e) {
+				LOGGER.error("Staff mode import of {} failed: {}", archive, e.getMessage());
+				try {
+					StaffDataArchive.deleteDirectory(staging);
+				} catch (IOException deleteError) {
+					LOGGER.warn("Failed to delete import staging directory: {}", deleteError.getMessage());
+				}
+				server.execute(() -> source.sendError(Text.literal("§cImport failed, nothing was changed: " + e.getMessage())));
+				archiveRunning.set(false);
+			}
+		}, "StaffMode-Import");
+		importThread.setDaemon(true);
+		importThread.start();
+		return Command.SINGLE_SUCCESS;
+	}
+
+	private static void installImport(MinecraftServer server, Path staging) throws IOException {
+		// Someone may have entered staff mode while the archive was extracted
+		if (!savedSurvivalInventories.isEmpty()) {
+			StaffDataArchive.deleteDirectory(staging);
+			throw new IOException(savedSurvivalInventories.size() + " player(s) entered staff mode during the import; nothing was changed");
+		}
+		// Loading an entry for an online player would put them in staff mode state while they play in survival
+		Path stagedData = staging.resolve(StaffDataArchive.DATA_FILE);
+		if (Files.isRegularFile(stagedData)) {
+			Set<UUID> stagedStaff = NbtStaffStateStore.readStaffData(stagedData.toFile()).keySet();
+			List<String> onlineStaff = new ArrayList<>();
+			for (ServerPlayerEntity player : server.getPlayerManager().getPlayerList()) {
+				if (stagedStaff.contains(player.getUuid())) {
+					onlineStaff.add(player.getGameProfile().getName());
+				}
+			}
+			if (!onlineStaff.isEmpty()) {
+				StaffDataArchive.deleteDirectory(staging);
+				throw new IOException("the archive has staff mode data for online player(s) " + String.join(", ", onlineStaff) + "; nothing was changed");
+			}
+		}
+		// Empties the history journal, which would otherwise be replayed over the imported files
+		((NbtStaffStateStore) stateStore).flush();
+		StaffDataArchive.install(staging, dataFile.getParentFile().toPath());
+		loadData(server);
+		inventoryHistory.clear();
+		loadInventoryHistory(server);
+		PlayerNameIndex.build(server, inventoryHistory.keySet());
+		for (ServerPlayerEntity player : server.getPlayerManager().getPlayerList()) {
+			PlayerNameIndex.put(player.getGameProfile().getName(), player.getUuid());
+		}
+		publishStaffStatus(server);
+	}
+
+	/**
+	 * The subcommands need permission level 2, so Brigadier hides them from level 1 staff and the reason
+	 * argument takes the word instead; {@code /staffmode perf} must not toggle staff mode with reason "perf".
+	 */
+	private static int executeCreativeToggleWithReason(CommandContext<ServerCommandSource> context, String reason) {
+		String firstWord = reason.split(" ", 2)[0];
+		if (SUBCOMMANDS.contains(firstWord)) {
+			context.getSource().sendError(Text.literal("§cYou do not have permission to use /staffmode " + firstWord + "."));
+			return 0;
+		}
+		return executeCreativeToggle(context, reason);
+	}
+
 	private static int executeCreativeToggle(CommandContext<ServerCommandSource> context, String reason) {
+		long perfStart = StaffModePerf.start();
+		try {
+			return toggleStaffMode(context, reason);
+		} finally {
+			StaffModePerf.stop(StaffModePerf.Probe.CREATIVE_TOGGLE, perfStart);
+		}
+	}
+
+	private static int toggleStaffMode(CommandContext<ServerCommandSource> context, String reason) {
 		ServerPlayerEntity player;
 		try {
 			player = context.getSource().getPlayer();
@@ -176,12 +697,14 @@ public class StaffMode implements ModInitializer {
 			player.sendMessage(Text.literal("§cDetected manual game mode change while in staff mode.\nReverting to creative...\nUse /staffmode again to revert to survival mode"), false);
 			player.changeGameMode(GameMode.CREATIVE);
 			String discordMessage = String.format("Player **%s** attempted manual game mode change while in staff mode. Forced back to Creative.", playerName);
-			DiscordBotManager.sendMessageToChannel(config.getAdminLogChannelId(), discordMessage);
+			DiscordBotManager.sendMessageToChannel(getConfig().getAdminLogChannelId(), discordMessage);
 			return Command.SINGLE_SUCCESS; // Indicate command handled
 		}
 
 		if (currentMode == GameMode.CREATIVE && savedSurvivalInventories.containsKey(uuid)) {
 			// Player is in staff mode, exiting to survival
+			StaffModeEvents.StaffExit exitEvent = new StaffModeEvents.StaffExit();
+			exitEvent.begin();
 			player.sendMessage(Text.literal("§eExiting staff mode (Switching back to Survival)..."), false);
 			LOGGER.info("Player {} exiting staff mode", playerName);
 
@@ -192,7 +715,7 @@ public class StaffMode implements ModInitializer {
 			ItemStack[] savedItems = savedSurvivalInventories.get(uuid);
 			for (int i = 0; i < savedItems.length; i++) {
 				if (!savedItems[i].isEmpty()) {
-					player.getInventory().setStack(i, savedItems[i]);
+					player.getInventory().setStack(i, StaffProvenance.strip(savedItems[i]));
 				}
 			}
 			player.getInventory().updateItems();
@@ -200,6 +723,9 @@ public class StaffMode implements ModInitializer {
 
 			savedSurvivalInventories.remove(uuid);
 			originalGameModes.remove(uuid);
+			StaffSessions.end(uuid);
+			SessionDeadlines.cancel(uuid);
+			publishStaffStatus(server);
 
 			if (wasOriginallyOp.containsKey(uuid)) {
 				boolean originallyOp = wasOriginallyOp.get(uuid);
@@ -213,11 +739,16 @@ public class StaffMode implements ModInitializer {
 			player.sendMessage(Text.literal("§aYou are now in Survival mode."), false);
 
 			String discordMessage = String.format("Player **%s** has exited staff mode (switched to Survival). Reason: `%s`", playerName, reason);
-			DiscordBotManager.sendMessageToChannel(config.getAdminLogChannelId(), discordMessage);
+			DiscordBotManager.sendMessageToChannel(getConfig().getAdminLogChannelId(), discordMessage);
 			saveData(server); // Save data after a player exits staff mode
+			exitEvent.playerUuid = uuid.toString();
+			exitEvent.reason = reason;
+			exitEvent.commit();
 
 		} else if (currentMode == GameMode.SURVIVAL) {
 			// Player is in survival, entering staff mode
+			StaffModeEvents.StaffEnter enterEvent = new StaffModeEvents.StaffEnter();
+			enterEvent.begin();
 			player.sendMessage(Text.literal("§eEntering staff mode (Switching to Creative)..."), false);
 			LOGGER.info("Player {} entering staff mode", playerName);
 
@@ -231,6 +762,9 @@ public class StaffMode implements ModInitializer {
 
 			savedSurvivalInventories.put(uuid, inventoryCopy);
 			originalGameModes.put(uuid, currentMode);
+			StaffSessions.begin(uuid);
+			long deadline = SessionDeadlines.start(uuid);
+			publishStaffStatus(server);
 
 			boolean playerIsOp = server.getPlayerManager().isOperator(playerProfile);
 			wasOriginallyOp.put(uuid, playerIsOp);
@@ -247,10 +781,16 @@ public class StaffMode implements ModInitializer {
 
 			player.sendMessage(Text.literal("§aYou are now in Creative mode."), false);
 			player.sendMessage(Text.literal("§7Use /staffmode again to return to Survival."), false);
+			if (deadline > 0) {
+				player.sendMessage(Text.literal("§7Staff mode ends automatically after " + getConfig().getStaffSessionTimeLimitMinutes() + " minutes."), false);
+			}
 
 			String discordMessage = String.format("Player **%s** has entered staff mode (switched to Creative). Reason: `%s`", playerName, reason);
-			DiscordBotManager.sendMessageToChannel(config.getAdminLogChannelId(), discordMessage);
+			DiscordBotManager.sendMessageToChannel(getConfig().getAdminLogChannelId(), discordMessage);
 			saveData(server); // Save data after a player enters staff mode
+			enterEvent.playerUuid = uuid.toString();
+			enterEvent.reason = reason;
+			enterEvent.commit();
 
 		} else {
 			player.sendMessage(Text.literal("§cYou must be in Survival or have toggled from it to use this command."), false);
@@ -261,6 +801,45 @@ public class StaffMode implements ModInitializer {
 	}
 
 	private static void revertPlayerToSurvival(ServerPlayerEntity player) {
+		revertPlayerToSurvival(player, "disconnect or server stopping");
+	}
+
+	/**
+	 * Reverts a player in staff mode to survival, logs it to Discord and saves the data.
+	 *
+	 * @param cause What caused the revert, for the Discord message.
+	 */
+	static void revertPlayerToSurvival(ServerPlayerEntity player, String cause) {
+		String playerName = player.getName().getString();
+		MinecraftServer server = player.getServer();
+
+		long perfStart = StaffModePerf.start();
+		try {
+			Boolean manualChange = revertPlayerInMemory(player, true);
+			if (manualChange == null) {
+				return; // Not in staff mode, nothing to revert
+			}
+
+			String discordMessage = manualChange
+					? String.format("Player **%s** (manual GM change) was reverted to Survival mode due to %s.", playerName, cause)
+					: String.format("Player **%s** was reverted to Survival mode due to %s.", playerName, cause);
+			DiscordBotManager.sendMessageToChannel(getConfig().getAdminLogChannelId(), discordMessage);
+			saveData(server); // Save data after a player is reverted
+		} finally {
+			StaffModePerf.stop(StaffModePerf.Probe.REVERT_TO_SURVIVAL, perfStart);
+		}
+	}
+
+	/**
+	 * Restores a staff mode player's survival inventory, game mode and operator status without
+	 * sending any Discord message or saving the main data file.
+	 *
+	 * @param player The player to revert.
+	 * @param saveHistory Whether the history snapshot should be written to disk immediately.
+	 * @return {@code null} if the player was not in staff mode, otherwise whether the player had
+	 *         manually left creative mode while in staff mode.
+	 */
+	private static Boolean revertPlayerInMemory(ServerPlayerEntity player, boolean saveHistory) {
 		UUID uuid = player.getUuid();
 		String playerName = player.getName().getString();
 		MinecraftServer server = player.getServer();
@@ -268,72 +847,201 @@ public class StaffMode implements ModInitializer {
 
 		// Only revert if they are currently in Creative and we have saved data for them
 		// OR if they have saved data but are not in creative (manual change)
-		if (isPlayerInStaffMode(uuid) && player.interactionManager.getGameMode() == GameMode.CREATIVE) {
-			LOGGER.info("Reverting player {} to Survival mode due to disconnect/server stopping from STAFF MODE.", playerName);
+		if (!isPlayerInStaffMode(uuid)) {
+			return null;
+		}
 
+		StaffModeEvents.StaffExit exitEvent = new StaffModeEvents.StaffExit();
+		exitEvent.begin();
+		boolean manualChange = player.interactionManager.getGameMode() != GameMode.CREATIVE;
+		if (!manualChange) {
+			LOGGER.info("Reverting player {} to Survival mode due to disconnect/server stopping from STAFF MODE.", playerName);
 			// Save current (creative) inventory to history before clearing
-			addInventorySnapshot(player, "revert_staff_mode_disconnect");
+			addInventorySnapshot(player, "revert_staff_mode_disconnect", saveHistory);
+		} else {
+			// This handles cases where they might have manually changed game mode while in staff mode and then disconnected
+			LOGGER.warn("Player {} had staff mode data but was not in creative mode on disconnect. Forcing revert with saved inventory.", playerName);
+		}
 
-			player.getInventory().clear();
-			ItemStack[] savedItems = savedSurvivalInventories.get(uuid);
-			if (savedItems != null) {
-				for (int i = 0; i < savedItems.length; i++) {
-					if (!savedItems[i].isEmpty()) {
-						player.getInventory().setStack(i, savedItems[i]);
-					}
+		player.getInventory().clear(); // Clear current, potentially empty or wrong inventory
+		ItemStack[] savedItems = savedSurvivalInventories.get(uuid);
+		if (savedItems != null && isClaimedByOtherServer(uuid)) {
+			// Another server adopted the entry and restores the inventory there; doing it here too would duplicate it
+			LOGGER.warn("Staff mode data of {} was taken over by another server. Not restoring the saved inventory here.", playerName);
+			savedItems = null;
+		}
+		if (savedItems != null) {
+			for (int i = 0; i < savedItems.length; i++) {
+				if (!savedItems[i].isEmpty()) {
+					player.getInventory().setStack(i, StaffProvenance.strip(savedItems[i]));
 				}
 			}
-			player.getInventory().updateItems();
-			player.changeGameMode(originalGameModes.get(uuid));
+		}
+		player.getInventory().updateItems();
+		player.changeGameMode(originalGameModes.get(uuid));
+
+		savedSurvivalInventories.remove(uuid);
+		originalGameModes.remove(uuid);
+		StaffSessions.end(uuid);
+		SessionDeadlines.cancel(uuid);
+		publishStaffStatus(server);
+
+		if (wasOriginallyOp.containsKey(uuid)) {
+			boolean originallyOp = wasOriginallyOp.get(uuid);
+			if (!originallyOp && server.getPlayerManager().isOperator(playerProfile)) {
+				server.getPlayerManager().removeFromOperators(playerProfile);
+				LOGGER.info("Player {}'s operator status revoked.", playerName);
+			}
+			wasOriginallyOp.remove(uuid);
+		}
+		exitEvent.playerUuid = uuid.toString();
+		exitEvent.reason = manualChange ? "revert_manual_gamemode_change" : "revert_disconnect_or_stop";
+		exitEvent.commit();
+		return manualChange;
+	}
 
-			savedSurvivalInventories.remove(uuid);
-			originalGameModes.remove(uuid);
+	/**
+	 * Bulk variant of {@link #revertPlayerToSurvival} used on server stop. All players are reverted
+	 * in memory first, then the main data file and every history file are encoded once and written
+	 * in parallel, and a single combined summary is sent to Discord.
+	 */
+	private static void revertAllPlayersToSurvival(MinecraftServer server) {
+		long perfStart = StaffModePerf.start();
+		try {
+			revertAndSaveAllPlayers(server);
+		} finally {
+			StaffModePerf.stop(StaffModePerf.Probe.REVERT_ALL_TO_SURVIVAL, perfStart);
+		}
+	}
 
-			if (wasOriginallyOp.containsKey(uuid)) {
-				boolean originallyOp = wasOriginallyOp.get(uuid);
-				if (!originallyOp && server.getPlayerManager().isOperator(playerProfile)) {
-					server.getPlayerManager().removeFromOperators(playerProfile);
-					LOGGER.info("Player {}'s operator status revoked.", playerName);
-				}
-				wasOriginallyOp.remove(uuid);
+	private static void revertAndSaveAllPlayers(MinecraftServer server) {
+		List<String> revertedPlayers = new ArrayList<>();
+		for (ServerPlayerEntity player : server.getPlayerManager().getPlayerList()) {
+			Boolean manualChange = revertPlayerInMemory(player, false);
+			if (manualChange != null) {
+				String playerName = player.getName().getString();
+				revertedPlayers.add(manualChange ? playerName + " (manual GM change)" : playerName);
 			}
+		}
 
-			String discordMessage = String.format("Player **%s** was reverted to Survival mode due to disconnect or server stopping.", playerName);
-			DiscordBotManager.sendMessageToChannel(config.getAdminLogChannelId(), discordMessage);
-			saveData(server); // Save data after a player is reverted
-		} else if (isPlayerInStaffMode(uuid) && player.interactionManager.getGameMode() != GameMode.CREATIVE) {
-			// This handles cases where they might have manually changed game mode while in staff mode and then disconnected
-			LOGGER.warn("Player {} had staff mode data but was not in creative mode on disconnect. Forcing revert with saved inventory.", playerName);
+		if (stateStore == null) {
+			LOGGER.error("State store not initialized. Cannot save data.");
+			return;
+		}
 
-			player.getInventory().clear(); // Clear current, potentially empty or wrong inventory
-			ItemStack[] savedItems = savedSurvivalInventories.get(uuid);
-			if (savedItems != null) {
-				for (int i = 0; i < savedItems.length; i++) {
-					if (!savedItems[i].isEmpty()) {
-						player.getInventory().setStack(i, savedItems[i]);
-					}
-				}
+		// Encode on the server thread (registry access), then hand everything to the store at once.
+		RegistryWrapper.WrapperLookup lookup = server.getRegistryManager();
+		// One HistorySave per history, like savePlayerInventoryHistory, committed once the batch is saved
+		Map<UUID, NbtCompound> histories = new HashMap<>();
+		List<StaffModeEvents.HistorySave> historyEvents = new ArrayList<>();
+		for (UUID uuid : inventoryHistory.keySet()) {
+			StaffModeEvents.HistorySave historyEvent = new StaffModeEvents.HistorySave();
+			historyEvent.begin();
+			NbtCompound rootTag = buildHistoryNbt(lookup, uuid);
+			histories.put(uuid, rootTag); // null deletes an empty history
+			if (rootTag != null) {
+				historyEvent.playerUuid = uuid.toString();
+				historyEvent.snapshots = inventoryHistory.get(uuid).size();
+				historyEvents.add(historyEvent);
 			}
-			player.getInventory().updateItems();
-			player.changeGameMode(originalGameModes.get(uuid));
+		}
 
-			savedSurvivalInventories.remove(uuid);
-			originalGameModes.remove(uuid);
+		LOGGER.info("Saving Staff Mode data and {} inventory histories...", histories.size());
+		StaffModeEvents.SaveData saveEvent = new StaffModeEvents.SaveData();
+		saveEvent.begin();
+		saveEvent.success = writeStaffData(buildStaffData(lookup));
+		saveEvent.trackedPlayers = savedSurvivalInventories.size();
+		saveEvent.commit();
+		boolean saved = saveEvent.success;
+		try {
+			stateStore.saveHistories(histories);
+			for (StaffModeEvents.HistorySave historyEvent : historyEvents) {
+				historyEvent.commit();
+			}
+		} catch (IOException e) {
+			LOGGER.error("Failed to save inventory histories: {}", e.getMessage());
+			saved = false;
+		}
+		if (saved) {
+			LOGGER.info("Staff Mode data and inventory histories saved successfully.");
+		}
 
-			if (wasOriginallyOp.containsKey(uuid)) {
-				boolean originallyOp = wasOriginallyOp.get(uuid);
-				if (!originallyOp && server.getPlayerManager().isOperator(playerProfile)) {
-					server.getPlayerManager().removeFromOperators(playerProfile);
-					LOGGER.info("Player {}'s operator status revoked.", playerName);
-				}
-				wasOriginallyOp.remove(uuid);
+		if (!revertedPlayers.isEmpty()) {
+			String discordMessage = String.format("Server stopping: reverted %d player(s) to Survival mode: **%s**",
+					revertedPlayers.size(), String.join("**, **", revertedPlayers));
+			DiscordBotManager.sendMessageToChannel(getConfig().getAdminLogChannelId(), discordMessage);
+		}
+	}
+
+	// Package-private so the benchmarks can point persistence at a scratch directory
+	static void setDataDirectory(File creativeToggleDataDir) {
+		if (!creativeToggleDataDir.exists()) {
+			creativeToggleDataDir.mkdirs(); // Ensure the directory exists
+		}
+		dataFile = new File(creativeToggleDataDir, "staff_mode_data.nbt");
+		StaffSessions.setDirectory(creativeToggleDataDir);
+		StaffItemLedger.load(new File(creativeToggleDataDir, "staff_item_ledger.dat"));
+		SessionDeadlines.setFile(new File(creativeToggleDataDir, "staff_session_deadlines.nbt"));
+		inventoryHistoryDir = new File(creativeToggleDataDir, "inventory_history");
+		if (!inventoryHistoryDir.exists()) {
+			inventoryHistoryDir.mkdirs();
+		}
+		closeStateStore();
+		stateStore = new NbtStaffStateStore(dataFile, inventoryHistoryDir);
+	}
+
+	/**
+	 * Switches to the store named by {@code stateStore} in the config. The NBT store set up by
+	 * {@link #setDataDirectory} stays in use if no installed mod provides that store or it fails to open.
+	 */
+	private static void openStateStore(MinecraftServer server) {
+		StaffModeConfig config = getConfig();
+		serverId = config.getServerId().isEmpty()
+				? server.getSavePath(WorldSavePath.ROOT).toAbsolutePath().normalize().toString()
+				: config.getServerId();
+		String storeName = config.getStateStore();
+		if ("nbt".equals(storeName)) {
+			return;
+		}
+		for (StaffStateStoreProvider provider : FabricLoader.getInstance().getEntrypoints(StaffStateStoreProvider.ENTRYPOINT, StaffStateStoreProvider.class)) {
+			if (!provider.getName().equals(storeName)) {
+				continue;
 			}
-			String discordMessage = String.format("Player **%s** (manual GM change) was reverted to Survival mode due to disconnect or server stopping.", playerName);
-			DiscordBotManager.sendMessageToChannel(config.getAdminLogChannelId(), discordMessage);
-			saveData(server);
+			try {
+				StaffStateStore store = provider.create(config, serverId);
+				closeStateStore();
+				stateStore = store;
+				LOGGER.info("Using the {} state store as server {}.", storeName, serverId);
+			} catch (IOException | RuntimeException e) {
+				LOGGER.error("Failed to open the {} state store, using NBT files instead: {}", storeName, e.getMessage());
+				DiscordBotManager.logToFile("Failed to open the " + storeName + " state store, using NBT files instead: " + e.getMessage()); // Log to file
+			}
+			return;
+		}
+		LOGGER.error("State store \"{}\" is not provided by any installed mod. Using NBT files instead.", storeName);
+		DiscordBotManager.logToFile("State store \"" + storeName + "\" is not provided by any installed mod. Using NBT files instead."); // Log to file
+	}
+
+	private static void closeStateStore() {
+		if (stateStore != null) {
+			stateStore.close();
+			stateStore = null;
 		}
 	}
 
+	// Package-private so the benchmarks can populate staff mode state without a running server
+	static void trackStaffPlayer(UUID uuid, ItemStack[] survivalInventory, GameMode originalGameMode, boolean originallyOp) {
+		savedSurvivalInventories.put(uuid, survivalInventory);
+		originalGameModes.put(uuid, originalGameMode);
+		wasOriginallyOp.put(uuid, originallyOp);
+	}
+
+	static void clearStaffState() {
+		savedSurvivalInventories.clear();
+		originalGameModes.clear();
+		wasOriginallyOp.clear();
+	}
+
 	private static void updatePlayerCount(MinecraftServer server) {
 		int playerCount = server.getCurrentPlayerCount();
 		StaffMode.LOGGER.info("Current player count: {}", playerCount);
@@ -344,83 +1052,111 @@ public class StaffMode implements ModInitializer {
 		return savedSurvivalInventories.containsKey(uuid) && originalGameModes.containsKey(uuid);
 	}
 
+	/**
+	 * @return The current config snapshot. Cheap enough for hot paths (a single volatile read).
+	 */
 	public static StaffModeConfig getConfig() {
-		return config;
+		return StaffModeConfig.getInstance();
 	}
 
 	// --- Inventory History Methods ---
 
-	// Snapshot class to store inventory and metadata
-	private static class PlayerInventorySnapshot {
-		public final ItemStack[] inventory;
-		public final String timestamp;
-		public final String reason;
-
-		public PlayerInventorySnapshot(ItemStack[] inventory, String reason) {
-			this.inventory = inventory;
-			this.timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss"));
-			this.reason = reason;
-		}
-
-		public NbtCompound toNbt(RegistryWrapper.WrapperLookup lookup) {
-			NbtCompound tag = new NbtCompound();
-			tag.putString("Timestamp", timestamp);
-			tag.putString("Reason", reason);
-			NbtList itemsTag = new NbtList();
-			for (ItemStack stack : inventory) {
-				if (!stack.isEmpty()) {
-					NbtCompound itemNbt = new NbtCompound();
-					stack.encode(lookup, itemNbt);
-					itemsTag.add(itemNbt);
-				}
+	static void addInventorySnapshot(ServerPlayerEntity player, String reason) {
+		addInventorySnapshot(player, reason, true);
+	}
+
+	private static void addInventorySnapshot(ServerPlayerEntity player, String reason, boolean saveImmediately) {
+		long perfStart = StaffModePerf.start();
+		UUID uuid = player.getUuid();
+
+		// Take snapshot of current inventory and player state
+		if (!addSnapshotToHistory(uuid, PlayerInventorySnapshot.capture(player, reason))) {
+			// Identical to the latest snapshot with this reason: recorded on it, written with the next history save
+			LOGGER.info("Inventory of {} unchanged since the last {} snapshot.", player.getName().getString(), reason);
+		} else {
+			LOGGER.info("Added inventory snapshot for {}. Reason: {}", player.getName().getString(), reason);
+			// Save history immediately unless the caller batches the write
+			if (saveImmediately) {
+				savePlayerInventoryHistory(player.getServer(), player.getUuid());
 			}
-			tag.put("Inventory", itemsTag);
-			return tag;
 		}
+		StaffModePerf.stop(StaffModePerf.Probe.ADD_INVENTORY_SNAPSHOT, perfStart);
+	}
 
-		public static PlayerInventorySnapshot fromNbt(RegistryWrapper.WrapperLookup lookup, NbtCompound tag) {
-			String timestamp = tag.getString("Timestamp");
-			String reason = tag.getString("Reason");
-			NbtList itemsTag = tag.getList("Inventory", NbtCompound.COMPOUND_TYPE);
-			ItemStack[] loadedInventory = new ItemStack[41]; // Assuming standard player inventory size
-			for (int i = 0; i < itemsTag.size(); i++) {
-				if (i < loadedInventory.length) {
-					Optional<ItemStack> itemStackOptional = ItemStack.fromNbt(lookup, itemsTag.getCompound(i));
-					loadedInventory[i] = itemStackOptional.orElse(ItemStack.EMPTY);
+	/**
+	 * Compares the snapshot with the latest one taken for the same reason, so repeated toggles, which
+	 * alternate survival and creative snapshots, collapse too. Snapshots taken before a restore are
+	 * always kept: they hold the state the restore overwrote.
+	 *
+	 * @return Whether the snapshot was added, or {@code false} if it matched that snapshot and was
+	 * only recorded on it as a duplicate.
+	 */
+	private static boolean addSnapshotToHistory(UUID uuid, PlayerInventorySnapshot snapshot) {
+		Deque<PlayerInventorySnapshot> history = inventoryHistory.computeIfAbsent(uuid, k -> new ArrayDeque<>());
+		PlayerInventorySnapshot previous = null;
+		if (!snapshot.reason.startsWith("pre_restore_")) {
+			for (PlayerInventorySnapshot entry : history) {
+				if (entry.reason.equals(snapshot.reason)) {
+					previous = entry;
+					break;
 				}
 			}
-			PlayerInventorySnapshot snapshot = new PlayerInventorySnapshot(loadedInventory, reason);
-			// Overwrite timestamp with loaded one
-			try {
-				java.lang.reflect.Field timestampField = snapshot.getClass().getField("timestamp");
-				timestampField.setAccessible(true);
-				timestampField.set(snapshot, timestamp);
-			} catch (NoSuchFieldException | IllegalAccessException e) {
-				LOGGER.error("Failed to set timestamp for loaded inventory snapshot: {}", e.getMessage());
-			}
-			return snapshot;
 		}
-	}
+		if (previous != null && previous.sameContents(snapshot)) {
+			previous.addDuplicate(snapshot.reason, snapshot.timestamp);
+			StaffStateView.publishHistory(uuid, history);
+			return false;
+		}
+		history.addFirst(snapshot); // Add to the front
 
-	private static void addInventorySnapshot(ServerPlayerEntity player, String reason) {
-		UUID uuid = player.getUuid();
-		Deque<PlayerInventorySnapshot> history = inventoryHistory.computeIfAbsent(uuid, k -> new ArrayDeque<>());
+		trimHistory(history);
+		StaffStateView.publishHistory(uuid, history);
+		return true;
+	}
 
-		// Take snapshot of current inventory
-		ItemStack[] currentInventory = new ItemStack[player.getInventory().size()];
-		for (int i = 0; i < currentInventory.length; i++) {
-			currentInventory[i] = player.getInventory().getStack(i).copy();
+	/**
+	 * Drops the oldest periodic snapshots beyond {@link #MAX_PERIODIC_HISTORY} and the oldest other
+	 * snapshots beyond {@link #MAX_INVENTORY_HISTORY}.
+	 */
+	private static void trimHistory(Deque<PlayerInventorySnapshot> history) {
+		int periodic = 0;
+		int other = 0;
+		for (PlayerInventorySnapshot snapshot : history) {
+			if (snapshot.reason.equals(PeriodicSnapshotter.REASON)) {
+				periodic++;
+			} else {
+				other++;
+			}
 		}
+		Iterator<PlayerInventorySnapshot> oldestFirst = history.descendingIterator();
+		while ((periodic > MAX_PERIODIC_HISTORY || other > MAX_INVENTORY_HISTORY) && oldestFirst.hasNext()) {
+			boolean isPeriodic = oldestFirst.next().reason.equals(PeriodicSnapshotter.REASON);
+			if (isPeriodic && periodic > MAX_PERIODIC_HISTORY) {
+				oldestFirst.remove();
+				periodic--;
+			} else if (!isPeriodic && other > MAX_INVENTORY_HISTORY) {
+				oldestFirst.remove();
+				other--;
+			}
+		}
+	}
 
-		history.addFirst(new PlayerInventorySnapshot(currentInventory, reason)); // Add to the front
-
-		// Trim history if it exceeds max size
-		while (history.size() > MAX_INVENTORY_HISTORY) {
-			history.removeLast();
+	/**
+	 * Publishes who is in staff mode to {@link StaffStateView}. Called on the server thread whenever it changes.
+	 */
+	private static void publishStaffStatus(MinecraftServer server) {
+		List<StaffStateView.StaffEntry> staff = new ArrayList<>();
+		for (UUID uuid : savedSurvivalInventories.keySet()) {
+			ServerPlayerEntity player = server.getPlayerManager().getPlayer(uuid);
+			String name = player != null ? player.getGameProfile().getName() : uuid.toString();
+			if (player == null && server.getUserCache() != null) {
+				name = server.getUserCache().getByUuid(uuid).map(GameProfile::getName).orElse(name);
+			}
+			StaffSession session = StaffSessions.getActive(uuid);
+			staff.add(new StaffStateView.StaffEntry(uuid, name, player != null,
+					session != null ? session.id : 0, session != null ? session.startedAt : 0L, SessionDeadlines.getDeadline(uuid)));
 		}
-		LOGGER.info("Added inventory snapshot for {}. Reason: {}", player.getName().getString(), reason);
-		// Save history immediately
-		savePlayerInventoryHistory(player.getServer(), player.getUuid());
+		StaffStateView.publishStaff(staff);
 	}
 
 	private static int listInventoryHistory(CommandContext<ServerCommandSource> context, String playerName) {
@@ -437,18 +1173,10 @@ public class StaffMode implements ModInitializer {
 		if (targetPlayer != null) {
 			targetUuid = targetPlayer.getUuid();
 		} else {
-			// Try to find UUID from saved data if player is offline
-			targetUuid = null; // Need a way to resolve offline player UUIDs if not currently loaded
-			for (UUID uuid : inventoryHistory.keySet()) {
-				if (server.getPlayerManager().getPlayer(uuid) == null) { // Check if player is not online
-					// This is a crude way to check for offline players.
-					// A more robust solution would involve loading player data from disk
-					// or using an external player database if available.
-					// For now, let's assume direct lookup for simplicity or rely on DiscordBotManager's name lookup.
-				}
-			}
+			// Offline: resolve the UUID from the name index
+			targetUuid = PlayerNameIndex.lookup(playerName);
 			if (targetUuid == null) {
-				context.getSource().sendError(Text.literal("§cPlayer '" + playerName + "' not found or offline."));
+				context.getSource().sendError(Text.literal("§cPlayer '" + playerName + "' not found."));
 				return 0;
 			}
 		}
@@ -464,14 +1192,15 @@ public class StaffMode implements ModInitializer {
 		admin.sendMessage(Text.literal("§bInventory History for §a" + playerName + "§b:"), false);
 		int index = 0;
 		for (PlayerInventorySnapshot snapshot : history) {
-			admin.sendMessage(Text.literal(String.format("§7[%d] §fReason: §e%s, §fTime: §a%s", index, snapshot.reason, snapshot.timestamp)), false);
+			String duplicates = snapshot.getDuplicateCount() == 0 ? "" : String.format(" §7(+%d identical, last: %s)", snapshot.getDuplicateCount(), snapshot.getLastDuplicate());
+			admin.sendMessage(Text.literal(String.format("§7[%d] §fReason: §e%s, §fTime: §a%s%s", index, snapshot.reason, snapshot.timestamp, duplicates)), false);
 			index++;
 		}
-		admin.sendMessage(Text.literal(String.format("§7Use §b/inventoryhistory %s <index> §7to restore.", playerName)), false);
+		admin.sendMessage(Text.literal(String.format("§7Use §b/inventoryhistory %s <index> [part] §7to restore. Parts: %s.", playerName, PlayerStateColumns.Part.idList())), false);
 		return Command.SINGLE_SUCCESS;
 	}
 
-	private static int restoreInventoryHistory(CommandContext<ServerCommandSource> context, String playerName, int index) {
+	private static int restoreInventoryHistory(CommandContext<ServerCommandSource> context, String playerName, int index, String partId) {
 		ServerPlayerEntity admin = context.getSource().getPlayer();
 		if (admin == null) {
 			context.getSource().sendError(Text.literal("§cThis command can only be used by a player."));
@@ -479,258 +1208,373 @@ public class StaffMode implements ModInitializer {
 		}
 
 		MinecraftServer server = context.getSource().getServer();
-		ServerPlayerEntity targetPlayer = server.getPlayerManager().getPlayer(playerName);
-
-		if (targetPlayer == null) {
-			admin.sendMessage(Text.literal("§cPlayer '" + playerName + "' is not online."), false);
+		UUID adminUuid = admin.getUuid();
+		PlayerStateColumns.Part part = PlayerStateColumns.Part.byId(partId);
+		if (part == null) {
+			context.getSource().sendError(Text.literal("§cUnknown part '" + partId + "'. Use one of: " + PlayerStateColumns.Part.idList() + "."));
 			return 0;
 		}
+		boolean started = restoreInventoryHistory(server, playerName, index, null, part, admin.getName().getString(), adminUuid, message -> {
+			ServerPlayerEntity onlineAdmin = server.getPlayerManager().getPlayer(adminUuid);
+			if (onlineAdmin != null) {
+				onlineAdmin.sendMessage(Text.literal(message), false);
+			}
+		});
+		return started ? Command.SINGLE_SUCCESS : 0;
+	}
 
-		UUID targetUuid = targetPlayer.getUuid();
-		Deque<PlayerInventorySnapshot> history = inventoryHistory.get(targetUuid);
+	/**
+	 * Restores a history snapshot, or one part of it, into an online player, or the inventory of a
+	 * history snapshot into an offline player's saved player data. Must run on the server thread; the
+	 * offline file is rewritten on the IO worker pool and the player cannot log in until it is done.
+	 *
+	 * @param expected The snapshot the index referred to when it was listed, or {@code null} to take
+	 *                 whatever is at the index now. Periodic snapshots shift the indexes, so the snapshot
+	 *                 is looked up by its timestamp and reason, and the restore refused if it is gone.
+	 * @param part What to restore; everything but the inventory needs the player online.
+	 * @param adminUuid The admin's UUID, or {@code null} if the restore was not requested in game.
+	 * @param reply Receives the result messages, possibly after this method returned.
+	 * @return Whether the restore was carried out or started.
+	 */
+	static boolean restoreInventoryHistory(MinecraftServer server, String playerName, int index, StaffStateView.HistoryEntry expected,
+			PlayerStateColumns.Part part, String adminName, UUID adminUuid, Consumer<String> reply) {
+		ServerPlayerEntity targetPlayer = server.getPlayerManager().getPlayer(playerName);
+		UUID targetUuid = targetPlayer != null ? targetPlayer.getUuid() : PlayerNameIndex.lookup(playerName);
+		if (targetPlayer == null && (targetUuid == null || !OfflineInventoryEditor.hasPlayerData(server, targetUuid))) {
+			reply.accept("§cPlayer '" + playerName + "' not found.");
+			return false;
+		}
+		if (targetPlayer == null && part != PlayerStateColumns.Part.INVENTORY) {
+			reply.accept("§cOnly the inventory can be restored while " + playerName + " is offline.");
+			return false;
+		}
+		if (targetPlayer == null && isPlayerInStaffMode(targetUuid)) {
+			// Their saved survival inventory would overwrite the restore on the next join
+			reply.accept("§c" + playerName + " still has staff mode data. Restore them once they are back online.");
+			return false;
+		}
 
+		Deque<PlayerInventorySnapshot> history = inventoryHistory.get(targetUuid);
+		if (expected != null) {
+			index = indexOfSnapshot(history, expected.timestamp(), expected.reason());
+			if (index < 0) {
+				reply.accept("§cThat snapshot is no longer in " + playerName + "'s history. List it again and pick another one.");
+				return false;
+			}
+		}
 		if (history == null || history.isEmpty() || index >= history.size() || index < 0) {
-			admin.sendMessage(Text.literal("§cInvalid history index for " + playerName + "."), false);
-			return 0;
+			reply.accept("§cInvalid history index for " + playerName + ".");
+			return false;
 		}
 
 		// Convert Deque to List to access by index
 		PlayerInventorySnapshot snapshotToRestore = history.stream().skip(index).findFirst().orElse(null);
 
 		if (snapshotToRestore == null) {
-			admin.sendMessage(Text.literal("§cError: Could not retrieve snapshot at index " + index + " for " + playerName + "."), false);
-			return 0;
+			reply.accept("§cError: Could not retrieve snapshot at index " + index + " for " + playerName + ".");
+			return false;
+		}
+		if (part != PlayerStateColumns.Part.INVENTORY && snapshotToRestore.getState() == null) {
+			reply.accept("§cSnapshot " + index + " of " + playerName + " only has an inventory.");
+			return false;
 		}
 
-		// Clear current inventory and restore
-		addInventorySnapshot(targetPlayer, "pre_restore_inventory_" + snapshotToRestore.reason + "_" + snapshotToRestore.timestamp); // Save current inventory before overwriting
-		targetPlayer.getInventory().clear();
-		for (int i = 0; i < snapshotToRestore.inventory.length; i++) {
-			if (!snapshotToRestore.inventory[i].isEmpty()) {
-				targetPlayer.getInventory().setStack(i, snapshotToRestore.inventory[i]);
-			}
+		StaffModeEvents.InventoryRestore restoreEvent = new StaffModeEvents.InventoryRestore();
+		restoreEvent.begin();
+		restoreEvent.playerUuid = targetUuid.toString();
+		restoreEvent.adminUuid = adminUuid != null ? adminUuid.toString() : adminName;
+		restoreEvent.index = index;
+
+		if (targetPlayer == null) {
+			reply.accept("§eRestoring offline player §a" + playerName + "§e's inventory...");
+			OfflineInventoryEditor.replaceInventory(server, targetUuid, snapshotToRestore.getInventory()).whenCompleteAsync((previousInventory, throwable) -> {
+				if (throwable != null) {
+					LOGGER.error("Failed to restore offline inventory of {}: {}", playerName, throwable.getMessage());
+					reply.accept("§cFailed to restore " + playerName + "'s inventory: " + throwable.getMessage());
+					return;
+				}
+
+				// Keep the overwritten inventory, like the online restore does
+				addSnapshotToHistory(targetUuid, new PlayerInventorySnapshot(previousInventory, "pre_restore_inventory_" + snapshotToRestore.reason + "_" + snapshotToRestore.timestamp));
+				savePlayerInventoryHistory(server, targetUuid);
+				reply.accept("§aSuccessfully restored offline player §e" + playerName + "§a's inventory to state at §b" + snapshotToRestore.timestamp + " §a(Reason: " + snapshotToRestore.reason + ").");
+
+				String discordMessage = String.format("Admin **%s** restored offline Player **%s**'s inventory to snapshot from `%s` (Reason: `%s`).",
+						adminName, playerName, snapshotToRestore.timestamp, snapshotToRestore.reason);
+				DiscordBotManager.sendMessageToChannel(getConfig().getAdminLogChannelId(), discordMessage);
+				restoreEvent.commit();
+			}, server);
+			return true;
 		}
-		targetPlayer.getInventory().updateItems();
-		targetPlayer.sendMessage(Text.literal("§aYour inventory has been restored to a previous state."), false);
-		admin.sendMessage(Text.literal("§aSuccessfully restored §e" + playerName + "§a's inventory to state at §b" + snapshotToRestore.timestamp + " §a(Reason: " + snapshotToRestore.reason + ")."), false);
 
-		String discordMessage = String.format("Admin **%s** restored Player **%s**'s inventory to snapshot from `%s` (Reason: `%s`).",
-				admin.getName().getString(), playerName, snapshotToRestore.timestamp, snapshotToRestore.reason);
-		DiscordBotManager.sendMessageToChannel(config.getAdminLogChannelId(), discordMessage);
+		// Save the current state before overwriting
+		addInventorySnapshot(targetPlayer, "pre_restore_" + part.id + "_" + snapshotToRestore.reason + "_" + snapshotToRestore.timestamp);
+		if (part == PlayerStateColumns.Part.INVENTORY || part == PlayerStateColumns.Part.ALL) {
+			// Clear current inventory and restore
+			targetPlayer.getInventory().clear();
+			ItemStack[] restoredItems = snapshotToRestore.getInventory();
+			for (int i = 0; i < restoredItems.length; i++) {
+				if (!restoredItems[i].isEmpty()) {
+					targetPlayer.getInventory().setStack(i, restoredItems[i]);
+				}
+			}
+			targetPlayer.getInventory().updateItems();
+		}
+		// Only the requested columns of the state are read
+		if (part != PlayerStateColumns.Part.INVENTORY && !PlayerStateColumns.apply(targetPlayer, snapshotToRestore.getState(), part)) {
+			reply.accept("§eSome of the snapshot's " + part.description + " could not be restored, e.g. because its dimension no longer exists.");
+		}
+		targetPlayer.sendMessage(Text.literal("§aYour " + part.description + " has been restored to a previous state."), false);
+		reply.accept("§aSuccessfully restored §e" + playerName + "§a's " + part.description + " to state at §b" + snapshotToRestore.timestamp + " §a(Reason: " + snapshotToRestore.reason + ").");
+
+		String discordMessage = String.format("Admin **%s** restored Player **%s**'s %s to snapshot from `%s` (Reason: `%s`).",
+				adminName, playerName, part.description, snapshotToRestore.timestamp, snapshotToRestore.reason);
+		DiscordBotManager.sendMessageToChannel(getConfig().getAdminLogChannelId(), discordMessage);
+		restoreEvent.commit();
+		return true;
+	}
 
-		return Command.SINGLE_SUCCESS;
+	/**
+	 * @return The index of the newest snapshot with the timestamp and reason, or -1.
+	 */
+	private static int indexOfSnapshot(Deque<PlayerInventorySnapshot> history, String timestamp, String reason) {
+		if (history != null) {
+			int index = 0;
+			for (PlayerInventorySnapshot snapshot : history) {
+				if (snapshot.timestamp.equals(timestamp) && snapshot.reason.equals(reason)) {
+					return index;
+				}
+				index++;
+			}
+		}
+		return -1;
 	}
 
 	// --- Persistence Methods for Main Data ---
 
 	private static void saveData(MinecraftServer server) {
-		if (dataFile == null) {
-			LOGGER.error("Data file not initialized. Cannot save data.");
+		if (stateStore == null) {
+			LOGGER.error("State store not initialized. Cannot save data.");
+			return;
+		}
+
+		saveData(server.getRegistryManager());
+	}
+
+	static void saveData(RegistryWrapper.WrapperLookup lookup) {
+		if (stateStore == null) {
+			LOGGER.error("State store not initialized. Cannot save data.");
 			return;
 		}
 
 		LOGGER.info("Saving Staff Mode data...");
-		NbtCompound rootTag = new NbtCompound();
+		long perfStart = StaffModePerf.start();
+		StaffModeEvents.SaveData saveEvent = new StaffModeEvents.SaveData();
+		saveEvent.begin();
+		saveEvent.success = writeStaffData(buildStaffData(lookup));
+		if (saveEvent.success) {
+			LOGGER.info("Staff Mode data saved successfully.");
+		}
+		saveEvent.trackedPlayers = savedSurvivalInventories.size();
+		saveEvent.commit();
+		StaffModePerf.stop(StaffModePerf.Probe.SAVE_DATA, perfStart);
+	}
 
-		RegistryWrapper.WrapperLookup lookup = server.getRegistryManager();
+	/**
+	 * @return One entry per player in staff mode, with their saved inventory ("Inventory" and
+	 *         "DataVersion"), original game mode ("GameMode") and operator status ("IsOp").
+	 */
+	private static Map<UUID, NbtCompound> buildStaffData(RegistryWrapper.WrapperLookup lookup) {
+		Map<UUID, NbtCompound> entries = new HashMap<>();
 
-		// Save savedSurvivalInventories
-		NbtList inventoryListTag = new NbtList();
 		for (Map.Entry<UUID, ItemStack[]> entry : savedSurvivalInventories.entrySet()) {
-			NbtCompound playerEntryTag = new NbtCompound();
-			playerEntryTag.putString("UUID", entry.getKey().toString());
-
-			NbtList itemsTag = new NbtList();
-			for (ItemStack stack : entry.getValue()) {
-				if (!stack.isEmpty()) {
-					NbtCompound itemNbt = new NbtCompound();
-					stack.encode(lookup, itemNbt);
-					itemsTag.add(itemNbt);
-				}
-			}
-			playerEntryTag.put("Inventory", itemsTag);
-			inventoryListTag.add(playerEntryTag);
+			NbtCompound data = entries.computeIfAbsent(entry.getKey(), uuid -> new NbtCompound());
+			data.put("Inventory", InventoryCodec.encode(lookup, entry.getValue()));
+			InventoryCodec.putDataVersion(data);
 		}
-		rootTag.put("SavedInventories", inventoryListTag);
-
-		// Save originalGameModes
-		NbtList gameModeListTag = new NbtList();
 		for (Map.Entry<UUID, GameMode> entry : originalGameModes.entrySet()) {
-			NbtCompound playerEntryTag = new NbtCompound();
-			playerEntryTag.putString("UUID", entry.getKey().toString());
-			playerEntryTag.putString("GameMode", entry.getValue().getName());
-			gameModeListTag.add(playerEntryTag);
+			entries.computeIfAbsent(entry.getKey(), uuid -> new NbtCompound()).putString("GameMode", entry.getValue().getName());
 		}
-		rootTag.put("OriginalGameModes", gameModeListTag);
-
-		// Save wasOriginallyOp
-		NbtList opListTag = new NbtList();
 		for (Map.Entry<UUID, Boolean> entry : wasOriginallyOp.entrySet()) {
-			NbtCompound playerEntryTag = new NbtCompound();
-			playerEntryTag.putString("UUID", entry.getKey().toString());
-			playerEntryTag.putBoolean("IsOp", entry.getValue());
-			opListTag.add(playerEntryTag);
+			entries.computeIfAbsent(entry.getKey(), uuid -> new NbtCompound()).putBoolean("IsOp", entry.getValue());
 		}
-		rootTag.put("WasOriginallyOp", opListTag);
+		return entries;
+	}
 
-		try (FileOutputStream fos = new FileOutputStream(dataFile)) {
-			NbtIo.writeCompressed(rootTag, fos);
-			LOGGER.info("Staff Mode data saved successfully.");
+	private static boolean writeStaffData(Map<UUID, NbtCompound> entries) {
+		try {
+			stateStore.saveStaffData(entries);
+			return true;
 		} catch (IOException e) {
-			LOGGER.error("Failed to save Staff Mode data: {}", e.getMessage());
+			LOGGER.error("Failed to save Staff Mode data to the {} store: {}", stateStore.getName(), e.getMessage());
+			return false;
 		}
 	}
 
 	private static void loadData(MinecraftServer server) {
-		if (dataFile == null) {
-			LOGGER.error("Data file not initialized. Cannot load data.");
-			return;
-		}
-		if (!dataFile.exists()) {
-			LOGGER.info("No Staff Mode data file found. Starting with empty data.");
+		loadData(server.getRegistryManager());
+	}
+
+	static void loadData(RegistryWrapper.WrapperLookup lookup) {
+		if (stateStore == null) {
+			LOGGER.error("State store not initialized. Cannot load data.");
 			return;
 		}
 
 		LOGGER.info("Loading Staff Mode data...");
-		try (FileInputStream fis = new FileInputStream(dataFile);
-			 BufferedInputStream bis = new BufferedInputStream(fis)) {
-			NbtCompound rootTag = NbtIo.readCompressed(bis, NbtSizeTracker.ofUnlimitedBytes());
-
-			RegistryWrapper.WrapperLookup lookup = server.getRegistryManager();
-
-			// Load savedSurvivalInventories
-			if (rootTag.contains("SavedInventories")) {
-				NbtList inventoryListTag = rootTag.getList("SavedInventories", NbtCompound.COMPOUND_TYPE);
-				savedSurvivalInventories.clear();
-				for (int i = 0; i < inventoryListTag.size(); i++) {
-					NbtCompound playerEntryTag = inventoryListTag.getCompound(i);
-					UUID uuid = UUID.fromString(playerEntryTag.getString("UUID"));
-					NbtList itemsTag = playerEntryTag.getList("Inventory", NbtCompound.COMPOUND_TYPE);
-					ItemStack[] savedItems = new ItemStack[41];
-					for (int j = 0; j < itemsTag.size(); j++) {
-						if (j < savedItems.length) {
-							Optional<ItemStack> itemStackOptional = ItemStack.fromNbt(lookup, itemsTag.getCompound(j));
-							savedItems[j] = itemStackOptional.orElse(ItemStack.EMPTY);
-						}
-					}
-					savedSurvivalInventories.put(uuid, savedItems);
-				}
+		try {
+			Map<UUID, NbtCompound> entries = stateStore.loadStaffData();
+			clearStaffState();
+			for (Map.Entry<UUID, NbtCompound> entry : entries.entrySet()) {
+				decodeStaffData(lookup, entry.getKey(), entry.getValue());
 			}
+			LOGGER.info("Staff Mode data loaded successfully. {} players in staff mode found.", savedSurvivalInventories.size());
+		} catch (IOException e) {
+			LOGGER.error("Failed to load Staff Mode data: {}", e.getMessage());
+			clearStaffState();
+		}
+	}
 
-			// Load originalGameModes
-			if (rootTag.contains("OriginalGameModes")) {
-				NbtList gameModeListTag = rootTag.getList("OriginalGameModes", NbtCompound.COMPOUND_TYPE);
-				originalGameModes.clear();
-				for (int i = 0; i < gameModeListTag.size(); i++) {
-					NbtCompound playerEntryTag = gameModeListTag.getCompound(i);
-					UUID uuid = UUID.fromString(playerEntryTag.getString("UUID"));
-					GameMode gameMode = GameMode.byName(playerEntryTag.getString("GameMode"));
-					if (gameMode != null) {
-						originalGameModes.put(uuid, gameMode);
-					} else {
-						LOGGER.warn("Invalid GameMode found for player {}. Skipping.", uuid);
-					}
-				}
+	/**
+	 * Puts one entry from {@link #buildStaffData} back into the staff mode maps.
+	 */
+	private static void decodeStaffData(RegistryWrapper.WrapperLookup lookup, UUID uuid, NbtCompound data) {
+		if (data.contains("Inventory")) {
+			NbtList itemsTag = data.getList("Inventory", NbtCompound.COMPOUND_TYPE);
+			savedSurvivalInventories.put(uuid, InventoryCodec.decode(lookup, itemsTag, InventoryCodec.getDataVersion(data)));
+		}
+		if (data.contains("GameMode")) {
+			GameMode gameMode = GameMode.byName(data.getString("GameMode"));
+			if (gameMode != null) {
+				originalGameModes.put(uuid, gameMode);
+			} else {
+				LOGGER.warn("Invalid GameMode found for player {}. Skipping.", uuid);
 			}
+		}
+		if (data.contains("IsOp")) {
+			wasOriginallyOp.put(uuid, data.getBoolean("IsOp"));
+		}
+	}
 
-			// Load wasOriginallyOp
-			if (rootTag.contains("WasOriginallyOp")) {
-				NbtList opListTag = rootTag.getList("WasOriginallyOp", NbtCompound.COMPOUND_TYPE);
-				wasOriginallyOp.clear();
-				for (int i = 0; i < opListTag.size(); i++) {
-					NbtCompound playerEntryTag = opListTag.getCompound(i);
-					UUID uuid = UUID.fromString(playerEntryTag.getString("UUID"));
-					boolean isOp = playerEntryTag.getBoolean("IsOp");
-					wasOriginallyOp.put(uuid, isOp);
-				}
+	/**
+	 * Takes over the staff mode entry another server sharing the state store holds for this player,
+	 * e.g. because the player switched servers in creative mode or that server crashed.
+	 *
+	 * @return The ID of the server the entry came from, or {@code null} if nothing was taken over.
+	 */
+	private static String adoptStaffDataFromOtherServer(MinecraftServer server, UUID playerUuid) {
+		if (stateStore == null) {
+			return null;
+		}
+		try {
+			StaffStateStore.SharedEntry entry = stateStore.findStaffData(playerUuid);
+			if (entry == null || serverId.equals(entry.serverId()) || !stateStore.claimStaffData(playerUuid, entry.serverId())) {
+				return null;
 			}
+			decodeStaffData(server.getRegistryManager(), playerUuid, entry.data());
+			return isPlayerInStaffMode(playerUuid) ? entry.serverId() : null;
+		} catch (IOException e) {
+			LOGGER.error("Failed to look up shared staff mode data of {}: {}", playerUuid, e.getMessage());
+			return null;
+		}
+	}
 
-			LOGGER.info("Staff Mode data loaded successfully. {} players in staff mode found.", savedSurvivalInventories.size());
+	/**
+	 * @return Whether another server sharing the state store took over the player's staff mode entry.
+	 */
+	private static boolean isClaimedByOtherServer(UUID playerUuid) {
+		if (stateStore == null) {
+			return false;
+		}
+		try {
+			StaffStateStore.SharedEntry entry = stateStore.findStaffData(playerUuid);
+			return entry != null && !serverId.equals(entry.serverId());
 		} catch (IOException e) {
-			LOGGER.error("Failed to load Staff Mode data: {}", e.getMessage());
-			savedSurvivalInventories.clear();
-			originalGameModes.clear();
-			wasOriginallyOp.clear();
+			LOGGER.error("Failed to look up shared staff mode data of {}: {}", playerUuid, e.getMessage());
+			return false;
 		}
 	}
 
 	// --- Persistence Methods for Inventory History ---
 
-	private static File getHistoryFileForPlayer(UUID playerUuid) {
-		return new File(inventoryHistoryDir, playerUuid.toString() + ".nbt");
+	private static void savePlayerInventoryHistory(MinecraftServer server, UUID playerUuid) {
+		if (stateStore == null) {
+			LOGGER.error("State store not initialized. Cannot save inventory history.");
+			return;
+		}
+		StaffModeEvents.HistorySave saveEvent = new StaffModeEvents.HistorySave();
+		saveEvent.begin();
+		NbtCompound rootTag = buildHistoryNbt(server.getRegistryManager(), playerUuid);
+
+		try {
+			stateStore.saveHistory(playerUuid, rootTag); // Deletes the history if it is empty
+		} catch (IOException e) {
+			LOGGER.error("Failed to save inventory history of {}: {}", playerUuid, e.getMessage());
+			return;
+		}
+		if (rootTag == null) {
+			return;
+		}
+
+		saveEvent.playerUuid = playerUuid.toString();
+		saveEvent.snapshots = inventoryHistory.get(playerUuid).size();
+		saveEvent.commit();
+		// LOGGER.debug("Saved inventory history for {}.", playerUuid); // Use debug for frequent saves
 	}
 
-	private static void savePlayerInventoryHistory(MinecraftServer server, UUID playerUuid) {
-		File playerHistoryFile = getHistoryFileForPlayer(playerUuid);
+	/**
+	 * @return The encoded history of the player, or {@code null} if the player has no history.
+	 */
+	private static NbtCompound buildHistoryNbt(RegistryWrapper.WrapperLookup lookup, UUID playerUuid) {
 		Deque<PlayerInventorySnapshot> history = inventoryHistory.get(playerUuid);
-
 		if (history == null || history.isEmpty()) {
-			if (playerHistoryFile.exists()) {
-				playerHistoryFile.delete(); // Delete file if history is empty
-			}
-			return;
+			return null;
 		}
 
 		NbtCompound rootTag = new NbtCompound();
 		NbtList historyListTag = new NbtList();
-		RegistryWrapper.WrapperLookup lookup = server.getRegistryManager();
-
 		for (PlayerInventorySnapshot snapshot : history) {
 			historyListTag.add(snapshot.toNbt(lookup));
 		}
 		rootTag.put("History", historyListTag);
-
-		try (FileOutputStream fos = new FileOutputStream(playerHistoryFile)) {
-			NbtIo.writeCompressed(rootTag, fos);
-			// LOGGER.debug("Saved inventory history for {}.", playerUuid); // Use debug for frequent saves
-		} catch (IOException e) {
-			LOGGER.error("Failed to save inventory history for {}: {}", playerUuid, e.getMessage());
-		}
-	}
-
-	private static void saveAllInventoryHistory(MinecraftServer server) {
-		LOGGER.info("Saving all player inventory histories...");
-		for (UUID uuid : inventoryHistory.keySet()) {
-			savePlayerInventoryHistory(server, uuid);
-		}
-		LOGGER.info("All player inventory histories saved.");
+		return rootTag;
 	}
 
 	private static void loadInventoryHistory(MinecraftServer server) {
 		LOGGER.info("Loading all player inventory histories...");
-		if (inventoryHistoryDir == null || !inventoryHistoryDir.exists()) {
-			LOGGER.warn("Inventory history directory not found or not initialized.");
+		if (stateStore == null) {
+			LOGGER.warn("State store not initialized. Cannot load inventory histories.");
 			return;
 		}
 
-		File[] historyFiles = inventoryHistoryDir.listFiles((dir, name) -> name.endsWith(".nbt"));
-		if (historyFiles == null) {
-			LOGGER.warn("No inventory history files found.");
+		Map<UUID, NbtCompound> histories;
+		try {
+			histories = stateStore.loadHistories();
+		} catch (IOException e) {
+			LOGGER.error("Failed to load inventory histories from the {} store: {}", stateStore.getName(), e.getMessage());
 			return;
 		}
 
 		RegistryWrapper.WrapperLookup lookup = server.getRegistryManager();
+		StaffModeEvents.HistoryLoad loadEvent = new StaffModeEvents.HistoryLoad();
+		loadEvent.begin();
 
-		for (File file : historyFiles) {
-			try (FileInputStream fis = new FileInputStream(file);
-				 BufferedInputStream bis = new BufferedInputStream(fis)) {
-				NbtCompound rootTag = NbtIo.readCompressed(bis, NbtSizeTracker.ofUnlimitedBytes());
-				NbtList historyListTag = rootTag.getList("History", NbtCompound.COMPOUND_TYPE);
+		for (Map.Entry<UUID, NbtCompound> entry : histories.entrySet()) {
+			UUID playerUuid = entry.getKey();
+			NbtList historyListTag = entry.getValue().getList("History", NbtCompound.COMPOUND_TYPE);
+			Deque<PlayerInventorySnapshot> history = new ArrayDeque<>();
 
-				UUID playerUuid = UUID.fromString(file.getName().replace(".nbt", ""));
-				Deque<PlayerInventorySnapshot> history = new ArrayDeque<>();
-
-				for (int i = 0; i < historyListTag.size(); i++) {
-					NbtCompound snapshotTag = historyListTag.getCompound(i);
-					history.add(PlayerInventorySnapshot.fromNbt(lookup, snapshotTag));
-				}
-				inventoryHistory.put(playerUuid, history);
-				LOGGER.debug("Loaded history for {}: {} snapshots.", playerUuid, history.size());
-			} catch (IOException | IllegalArgumentException e) {
-				LOGGER.error("Failed to load inventory history from file {}: {}", file.getName(), e.getMessage());
-				// Consider moving corrupted files aside or deleting them here
+			for (int i = 0; i < historyListTag.size(); i++) {
+				NbtCompound snapshotTag = historyListTag.getCompound(i);
+				history.add(PlayerInventorySnapshot.fromNbt(lookup, snapshotTag));
 			}
+			inventoryHistory.put(playerUuid, history);
+			StaffStateView.publishHistory(playerUuid, history);
+			LOGGER.debug("Loaded history for {}: {} snapshots.", playerUuid, history.size());
 		}
+		loadEvent.files = histories.size();
+		loadEvent.players = inventoryHistory.size();
+		loadEvent.commit();
 		LOGGER.info("Finished loading all player inventory histories. Loaded histories for {} players.", inventoryHistory.size());
 	}
-}
\ No newline at end of file
+}
@@ -2,12 +2,32 @@ package rezide.staffmode;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import java.io.IOException;
 import java.io.Reader;
 import java.io.Writer;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.ClosedWatchServiceException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
 
+/**
+ * The mod configuration, loaded from {@code config/staff-mode.json}.
+ * <p>
+ * A loaded instance is never modified after it is published: {@link #getInstance()} returns the
+ * current immutable snapshot with a single volatile read, and {@link #startWatching()} reloads the
+ * file on change, validates it and atomically swaps in a new snapshot before notifying reload listeners.
+ */
 public class StaffModeConfig {
     // Default values
     private String discordBotToken = "YOUR_DISCORD_BOT_TOKEN_HERE"; // IMPORTANT: Replace this
@@ -15,15 +35,86 @@ public class StaffModeConfig {
     private long serverStatusChannelId = 0L; // New: Default to 0 for server status channel
     private int discordBotHttpPort = 8080;
 
+    // "bot" uses the JDA gateway connection from staff-mode-discord, "webhook" posts to the webhook URLs below.
+    // With webhooks, messages for serverStatusChannelId go to serverStatusWebhookUrl and everything else to adminLogWebhookUrl.
+    private String discordTransport = "bot";
+    private String adminLogWebhookUrl = "";
+    private String serverStatusWebhookUrl = "";
+    // Discord role IDs allowed to use the bot's slash commands. The commands only exist in the guild of
+    // adminLogChannelId, and nobody can use them while this is empty.
+    private List<Long> discordCommandRoleIds = new ArrayList<>();
+    // Parsed by validate(), so sending a message never parses a URL; null when unset or invalid
+    private transient URI adminLogWebhookUri;
+    private transient URI serverStatusWebhookUri;
+
     // New fields for file logging
     private boolean logToFileEnabled = true; // Default to false
     private String logFilePath = "logs/staff-mode-server.log"; // Default log file path
 
+    // Per-tick timing of the mod's hot spots, viewable with /staffmode perf. Off by default.
+    private boolean perfMonitoringEnabled = false;
+
+    // Periodic survival inventory snapshots. 0 disables them. Entries in periodicSnapshotPlayers are
+    // player names, UUIDs, "team:<scoreboard team>" or "*" for everyone.
+    private int periodicSnapshotIntervalSeconds = 0;
+    private List<String> periodicSnapshotPlayers = new ArrayList<>();
+
+    // Staff mode ends automatically after this many minutes; 0 means no limit. Players are warned the
+    // given numbers of seconds before it ends. Changes apply to sessions started afterwards.
+    private int staffSessionTimeLimitMinutes = 0;
+    private List<Integer> staffSessionWarningSeconds = new ArrayList<>(List.of(300, 60));
+
+    // Which commands run in staff mode are sent to Discord. Rules are leading command words ("tp",
+    // "gamemode creative"); the longest matching rule wins, and with no include rules everything not
+    // excluded is sent. Redaction rules add ? (keep), # (mask) or * (mask the rest) per argument.
+    private List<String> commandLogInclude = new ArrayList<>();
+    private List<String> commandLogExclude = new ArrayList<>();
+    private List<String> commandLogRedact = new ArrayList<>(List.of("msg ? *", "tell ? *", "w ? *", "teammsg *", "tm *"));
+
+    // Where staff mode state and inventory histories are kept: "nbt" for files in the world directory, or
+    // the name of a store from an add-on such as staff-mode-sql ("sqlite"). Servers that share a store tell
+    // their entries apart by serverId, which defaults to the world path. Changes apply after a restart.
+    private String stateStore = "nbt";
+    private String serverId = "";
+    private String sqlStorePath = "staff-mode-state.db"; // Relative to the server directory
+
     // --- Getters for your configuration values ---
     public String getDiscordBotToken() {
         return discordBotToken;
     }
 
+    public String getDiscordTransport() {
+        return discordTransport;
+    }
+
+    public boolean isWebhookTransport() {
+        return "webhook".equals(discordTransport);
+    }
+
+    public String getAdminLogWebhookUrl() {
+        return adminLogWebhookUrl;
+    }
+
+    public String getServerStatusWebhookUrl() {
+        return serverStatusWebhookUrl;
+    }
+
+    public URI getAdminLogWebhookUri() {
+        return adminLogWebhookUri;
+    }
+
+    public URI getServerStatusWebhookUri() {
+        return serverStatusWebhookUri;
+    }
+
+    public List<Long> getDiscordCommandRoleIds() {
+        return Collections.unmodifiableList(discordCommandRoleIds);
+    }
+
+    public boolean isDiscordBotTokenSet() {
+        return !(discordBotToken.equals("YOUR_DISCORD_BOT_TOKEN_HERE") || discordBotToken.isEmpty());
+    }
+
     public long getAdminLogChannelId() {
         return adminLogChannelId;
     }
@@ -45,16 +136,234 @@ public class StaffModeConfig {
         return logFilePath;
     }
 
+    public boolean isPerfMonitoringEnabled() {
+        return perfMonitoringEnabled;
+    }
+
+    public int getPeriodicSnapshotIntervalSeconds() {
+        return periodicSnapshotIntervalSeconds;
+    }
+
+    public List<String> getPeriodicSnapshotPlayers() {
+        return Collections.unmodifiableList(periodicSnapshotPlayers);
+    }
+
+    public int getStaffSessionTimeLimitMinutes() {
+        return staffSessionTimeLimitMinutes;
+    }
+
+    public List<Integer> getStaffSessionWarningSeconds() {
+        return Collections.unmodifiableList(staffSessionWarningSeconds);
+    }
+
+    public List<String> getCommandLogInclude() {
+        return Collections.unmodifiableList(commandLogInclude);
+    }
+
+    public List<String> getCommandLogExclude() {
+        return Collections.unmodifiableList(commandLogExclude);
+    }
+
+    public List<String> getCommandLogRedact() {
+        return Collections.unmodifiableList(commandLogRedact);
+    }
+
+    public String getStateStore() {
+        return stateStore;
+    }
+
+    public String getServerId() {
+        return serverId;
+    }
+
+    public String getSqlStorePath() {
+        return sqlStorePath;
+    }
+
     // --- Static methods for loading/saving config ---
     private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
     private static final Path CONFIG_PATH = Paths.get("config", StaffMode.MOD_ID + ".json");
-    private static StaffModeConfig INSTANCE;
+    private static final long RELOAD_DEBOUNCE_MS = 250; // Give editors time to finish writing the file
+    private static volatile StaffModeConfig INSTANCE;
+    private static final List<BiConsumer<StaffModeConfig, StaffModeConfig>> reloadListeners = new CopyOnWriteArrayList<>();
+    private static Thread watcherThread;
 
     public static StaffModeConfig getInstance() {
-        if (INSTANCE == null) {
-            INSTANCE = load();
+        StaffModeConfig instance = INSTANCE;
+        if (instance == null) {
+            synchronized (StaffModeConfig.class) {
+                instance = INSTANCE;
+                if (instance == null) {
+                    instance = load();
+                    INSTANCE = instance;
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Registers a listener called with the previous and the new snapshot after every successful reload.
+     * Listeners run on the config watcher thread.
+     */
+    public static void addReloadListener(BiConsumer<StaffModeConfig, StaffModeConfig> listener) {
+        reloadListeners.add(listener);
+    }
+
+    /**
+     * Starts watching {@code config/staff-mode.json} for changes on a background thread.
+     */
+    public static synchronized void startWatching() {
+        if (watcherThread != null) {
+            return;
+        }
+        watcherThread = new Thread(StaffModeConfig::watchConfigFile, "StaffMode-ConfigWatcher");
+        watcherThread.setDaemon(true);
+        watcherThread.start();
+    }
+
+    public static synchronized void stopWatching() {
+        if (watcherThread != null) {
+            watcherThread.interrupt();
+            watcherThread = null;
+        }
+    }
+
+    private static void watchConfigFile() {
+        Path directory = CONFIG_PATH.toAbsolutePath().getParent();
+        try (WatchService watchService = directory.getFileSystem().newWatchService()) {
+            directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            StaffMode.LOGGER.info("Watching {} for config changes.", CONFIG_PATH);
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = watchService.take();
+                boolean configChanged = pollConfigEvents(key);
+                if (!key.reset()) {
+                    StaffMode.LOGGER.warn("Config directory is no longer accessible. Stopped watching {}.", CONFIG_PATH);
+                    return;
+                }
+                if (configChanged) {
+                    Thread.sleep(RELOAD_DEBOUNCE_MS);
+                    // Drop the events the rest of the write produced
+                    WatchKey pending;
+                    while ((pending = watchService.poll()) != null) {
+                        pending.pollEvents();
+                        pending.reset();
+                    }
+                    reload();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Watcher stopped
+        } catch (IOException e) {
+            StaffMode.LOGGER.error("Failed to watch config file {}: {}", CONFIG_PATH, e.getMessage());
+        }
+    }
+
+    private static boolean pollConfigEvents(WatchKey key) {
+        boolean configChanged = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || CONFIG_PATH.getFileName().equals(event.context())) {
+                configChanged = true;
+            }
+        }
+        return configChanged;
+    }
+
+    /**
+     * Re-reads the config file and swaps it in if it is valid and differs from the current snapshot.
+     * An invalid file is rejected and the current snapshot stays active. Unlike the initial load,
+     * a reload never writes the file back.
+     */
+    public static void reload() {
+        StaffModeConfig current = getInstance();
+        StaffModeConfig reloaded;
+        try (Reader reader = Files.newBufferedReader(CONFIG_PATH)) {
+            reloaded = GSON.fromJson(reader, StaffModeConfig.class);
+        } catch (Exception e) {
+            StaffMode.LOGGER.error("Failed to reload config from {}. Keeping the current config. Error: {}", CONFIG_PATH, e.getMessage());
+            return;
+        }
+        if (reloaded == null) {
+            StaffMode.LOGGER.error("Config file {} is empty. Keeping the current config.", CONFIG_PATH);
+            return;
+        }
+
+        applyDefaults(reloaded);
+        String validationError = reloaded.validate();
+        if (validationError != null) {
+            StaffMode.LOGGER.error("Rejected config change in {}: {}. Keeping the current config.", CONFIG_PATH, validationError);
+            return;
+        }
+        if (GSON.toJson(reloaded).equals(GSON.toJson(current))) {
+            return; // Nothing changed (e.g. our own save)
+        }
+
+        INSTANCE = reloaded;
+        StaffMode.LOGGER.info("Reloaded config from {}", CONFIG_PATH);
+        for (BiConsumer<StaffModeConfig, StaffModeConfig> listener : reloadListeners) {
+            try {
+                listener.accept(current, reloaded);
+            } catch (Exception e) {
+                StaffMode.LOGGER.error("Error applying reloaded config: {}", e.getMessage());
+            }
         }
-        return INSTANCE;
+    }
+
+    /**
+     * @return A description of the first invalid value, or {@code null} if the config is valid.
+     */
+    private String validate() {
+        // Checked first so the webhooks keep working when the initial load finds another invalid value
+        if (!isValidWebhookUrl(adminLogWebhookUrl) || !isValidWebhookUrl(serverStatusWebhookUrl)) {
+            return "webhook URLs must be empty or start with https:// or http://";
+        }
+        try {
+            adminLogWebhookUri = parseWebhookUrl(adminLogWebhookUrl);
+            serverStatusWebhookUri = parseWebhookUrl(serverStatusWebhookUrl);
+        } catch (URISyntaxException e) {
+            return "invalid webhook URL: " + e.getMessage();
+        }
+        if (discordBotHttpPort < 0 || discordBotHttpPort > 65535) {
+            return "discordBotHttpPort must be between 0 and 65535";
+        }
+        if (adminLogChannelId < 0 || serverStatusChannelId < 0) {
+            return "channel IDs must not be negative";
+        }
+        if (periodicSnapshotIntervalSeconds < 0) {
+            return "periodicSnapshotIntervalSeconds must not be negative";
+        }
+        if (staffSessionTimeLimitMinutes < 0) {
+            return "staffSessionTimeLimitMinutes must not be negative";
+        }
+        if (staffSessionWarningSeconds.contains(null)) {
+            return "staffSessionWarningSeconds must only contain numbers";
+        }
+        if (commandLogInclude.contains(null) || commandLogExclude.contains(null) || commandLogRedact.contains(null)) {
+            return "command log rules must only contain strings";
+        }
+        if (discordCommandRoleIds.contains(null)) {
+            return "discordCommandRoleIds must only contain role IDs";
+        }
+        if (!"bot".equals(discordTransport) && !"webhook".equals(discordTransport)) {
+            return "discordTransport must be \"bot\" or \"webhook\"";
+        }
+        return null;
+    }
+
+    private static boolean isValidWebhookUrl(String url) {
+        return url.isEmpty() || url.startsWith("https://") || url.startsWith("http://");
+    }
+
+    private static URI parseWebhookUrl(String url) throws URISyntaxException {
+        if (url.isEmpty()) {
+            return null;
+        }
+        URI uri = new URI(url);
+        // HttpRequest rejects URIs without a host, e.g. "https:///api/webhooks/..."
+        if (uri.getHost() == null) {
+            throw new URISyntaxException(url, "Missing host");
+        }
+        return uri;
     }
 
     private static StaffModeConfig load() {
@@ -63,40 +372,12 @@ public class StaffModeConfig {
                 StaffModeConfig config = GSON.fromJson(reader, StaffModeConfig.class);
                 StaffMode.LOGGER.info("Loaded config from {}", CONFIG_PATH);
                 // If a new config value is added later, ensure it's not null and save
-                boolean changed = false;
-
-                // Existing checks
-                if (config.discordBotToken == null || config.discordBotToken.isEmpty() || config.discordBotToken.equals("YOUR_DISCORD_BOT_TOKEN_HERE")) {
-                    StaffMode.LOGGER.warn("Discord Bot Token is not set in config. Please update config/staff-mode.json");
-                    config.discordBotToken = "YOUR_DISCORD_BOT_TOKEN_HERE"; // Ensure default is there if user deleted it
-                    changed = true;
-                }
-                if (config.adminLogChannelId == 0L) {
-                    StaffMode.LOGGER.warn("Discord Admin Log Channel ID is not set in config. Please update config/staff-mode.json");
-                    changed = true;
-                }
-                if (config.serverStatusChannelId == 0L) {
-                    StaffMode.LOGGER.warn("Discord Server Status Channel ID is not set in config. Please update config/staff-mode.json");
-                    changed = true;
-                }
-                if (config.discordBotHttpPort == 0) { // Should not be 0, provide a default if somehow corrupted
-                    StaffMode.LOGGER.warn("Discord Bot HTTP Port is not set in config. Using default 8080.");
-                    config.discordBotHttpPort = 8080;
-                    changed = true;
+                boolean changed = applyDefaults(config);
+                String validationError = config.validate();
+                if (validationError != null) {
+                    StaffMode.LOGGER.error("Invalid value in config {}: {}", CONFIG_PATH, validationError);
                 }
 
-                // New checks for file logging properties
-                // Gson will set boolean primitives to their default (false) if missing, which is fine.
-                // For String, it will be null if missing, so we explicitly check and set defaults.
-                if (config.logFilePath == null || config.logFilePath.isEmpty()) {
-                    StaffMode.LOGGER.warn("Log file path is not set in config. Using default 'logs/staff-mode-server.log'.");
-                    config.logFilePath = "logs/staff-mode-server.log";
-                    changed = true;
-                }
-                // If logToFileEnabled is false, and it was true previously in the file but removed, it would
-                // default to false. No explicit check for boolean needed unless you want to force a default.
-                // The default `false` for `logToFileEnabled` means it will only be true if explicitly set in the config.
-
                 if (changed) {
                     save(config); // Save with any defaults applied
                 }
@@ -116,6 +397,96 @@ public class StaffModeConfig {
         }
     }
 
+    /**
+     * Replaces missing or placeholder values with defaults and warns about unset values.
+     *
+     * @return Whether any value was changed.
+     */
+    private static boolean applyDefaults(StaffModeConfig config) {
+        boolean changed = false;
+
+        // Existing checks
+        if (config.discordBotToken == null || config.discordBotToken.isEmpty() || config.discordBotToken.equals("YOUR_DISCORD_BOT_TOKEN_HERE")) {
+            StaffMode.LOGGER.warn("Discord Bot Token is not set in config. Please update config/staff-mode.json");
+            config.discordBotToken = "YOUR_DISCORD_BOT_TOKEN_HERE"; // Ensure default is there if user deleted it
+            changed = true;
+        }
+        if (config.adminLogChannelId == 0L) {
+            StaffMode.LOGGER.warn("Discord Admin Log Channel ID is not set in config. Please update config/staff-mode.json");
+            changed = true;
+        }
+        if (config.serverStatusChannelId == 0L) {
+            StaffMode.LOGGER.warn("Discord Server Status Channel ID is not set in config. Please update config/staff-mode.json");
+            changed = true;
+        }
+        if (config.discordTransport == null || config.discordTransport.isEmpty()) {
+            config.discordTransport = "bot";
+            changed = true;
+        }
+        if (config.discordCommandRoleIds == null) {
+            config.discordCommandRoleIds = new ArrayList<>();
+            changed = true;
+        }
+        if (config.periodicSnapshotPlayers == null) {
+            config.periodicSnapshotPlayers = new ArrayList<>();
+            changed = true;
+        }
+        if (config.staffSessionWarningSeconds == null) {
+            config.staffSessionWarningSeconds = new ArrayList<>(List.of(300, 60));
+            changed = true;
+        }
+        if (config.commandLogInclude == null) {
+            config.commandLogInclude = new ArrayList<>();
+            changed = true;
+        }
+        if (config.commandLogExclude == null) {
+            config.commandLogExclude = new ArrayList<>();
+            changed = true;
+        }
+        if (config.commandLogRedact == null) {
+            config.commandLogRedact = new ArrayList<>(List.of("msg ? *", "tell ? *", "w ? *", "teammsg *", "tm *"));
+            changed = true;
+        }
+        if (config.stateStore == null || config.stateStore.isEmpty()) {
+            config.stateStore = "nbt";
+            changed = true;
+        }
+        if (config.serverId == null) {
+            config.serverId = "";
+            changed = true;
+        }
+        if (config.sqlStorePath == null || config.sqlStorePath.isEmpty()) {
+            config.sqlStorePath = "staff-mode-state.db";
+            changed = true;
+        }
+        if (config.adminLogWebhookUrl == null) {
+            config.adminLogWebhookUrl = "";
+            changed = true;
+        }
+        if (config.serverStatusWebhookUrl == null) {
+            config.serverStatusWebhookUrl = "";
+            changed = true;
+        }
+        if (config.discordBotHttpPort == 0) { // Should not be 0, provide a default if somehow corrupted
+            StaffMode.LOGGER.warn("Discord Bot HTTP Port is not set in config. Using default 8080.");
+            config.discordBotHttpPort = 8080;
+            changed = true;
+        }
+
+        // New checks for file logging properties
+        // Gson will set boolean primitives to their default (false) if missing, which is fine.
+        // For String, it will be null if missing, so we explicitly check and set defaults.
+        if (config.logFilePath == null || config.logFilePath.isEmpty()) {
+            StaffMode.LOGGER.warn("Log file path is not set in config. Using default 'logs/staff-mode-server.log'.");
+            config.logFilePath = "logs/staff-mode-server.log";
+            changed = true;
+        }
+        // If logToFileEnabled is false, and it was true previously in the file but removed, it would
+        // default to false. No explicit check for boolean needed unless you want to force a default.
+        // The default `false` for `logToFileEnabled` means it will only be true if explicitly set in the config.
+        return changed;
+    }
+
     public static void save(StaffModeConfig config) {
         try {
             Files.createDirectories(CONFIG_PATH.getParent()); // Ensure config directory exists
@@ -0,0 +1,150 @@
+package rezide.staffmode;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JDK Flight Recorder events for the mod's operations, so MSPT spikes in a recording can be tied
+ * to a specific toggle, save or Discord dispatch in JMC. Events are only written while a recording
+ * with them enabled is running; otherwise {@code commit()} is a cheap no-op.
+ */
+public final class StaffModeEvents {
+
+	private StaffModeEvents() {
+	}
+
+	@Name("rezide.staffmode.StaffEnter")
+	@Label("Staff Mode Enter")
+	@Category({"Staff Mode", "Session"})
+	@StackTrace(false)
+	public static class StaffEnter extends Event {
+		@Label("Player UUID")
+		public String playerUuid;
+
+		@Label("Reason")
+		public String reason;
+	}
+
+	@Name("rezide.staffmode.StaffExit")
+	@Label("Staff Mode Exit")
+	@Category({"Staff Mode", "Session"})
+	@StackTrace(false)
+	public static class StaffExit extends Event {
+		@Label("Player UUID")
+		public String playerUuid;
+
+		@Label("Reason")
+		@Description("Command reason, or the cause of an automatic revert")
+		public String reason;
+	}
+
+	@Name("rezide.staffmode.SaveData")
+	@Label("Save Staff Mode Data")
+	@Category({"Staff Mode", "Persistence"})
+	@StackTrace(false)
+	public static class SaveData extends Event {
+		@Label("Tracked Players")
+		public int trackedPlayers;
+
+		@Label("Success")
+		public boolean success;
+	}
+
+	@Name("rezide.staffmode.HistorySave")
+	@Label("Save Inventory History")
+	@Category({"Staff Mode", "Persistence"})
+	@StackTrace(false)
+	public static class HistorySave extends Event {
+		@Label("Player UUID")
+		public String playerUuid;
+
+		@Label("Snapshots")
+		public int snapshots;
+	}
+
+	@Name("rezide.staffmode.HistoryLoad")
+	@Label("Load Inventory History")
+	@Category({"Staff Mode", "Persistence"})
+	@StackTrace(false)
+	public static class HistoryLoad extends Event {
+		@Label("Files")
+		public int files;
+
+		@Label("Players Loaded")
+		public int players;
+	}
+
+	@Name("rezide.staffmode.HistoryCommit")
+	@Label("Commit Inventory Histories")
+	@Category({"Staff Mode", "Persistence"})
+	@StackTrace(false)
+	public static class HistoryCommit extends Event {
+		@Label("Players")
+		@Description("Histories written in this group commit")
+		public int players;
+
+		@Label("Journal Bytes")
+		public long bytes;
+
+		@Label("Checkpoint")
+		@Description("Whether the history files were synced and the journal truncated")
+		public boolean checkpoint;
+	}
+
+	@Name("rezide.staffmode.InventoryRestore")
+	@Label("Inventory History Restore")
+	@Category({"Staff Mode", "Session"})
+	@StackTrace(false)
+	public static class InventoryRestore extends Event {
+		@Label("Player UUID")
+		public String playerUuid;
+
+		@Label("Admin UUID")
+		public String adminUuid;
+
+		@Label("History Index")
+		public int index;
+	}
+
+	@Name("rezide.staffmode.AuditEnqueue")
+	@Label("Audit Message Enqueued")
+	@Category({"Staff Mode", "Audit"})
+	@StackTrace(false)
+	public static class AuditEnqueue extends Event {
+		@Label("Channel ID")
+		public long channelId;
+
+		@Label("Message Length")
+		public int messageLength;
+	}
+
+	@Name("rezide.staffmode.AuditDrop")
+	@Label("Audit Message Dropped")
+	@Description("A message that could not be delivered to Discord and only went to the file log, if enabled")
+	@Category({"Staff Mode", "Audit"})
+	@StackTrace(false)
+	public static class AuditDrop extends Event {
+		@Label("Channel ID")
+		public long channelId;
+
+		@Label("Cause")
+		public String cause;
+	}
+
+	@Name("rezide.staffmode.DiscordDispatch")
+	@Label("Discord REST Dispatch")
+	@Description("Time from queueing a message with JDA or the webhook client until Discord acknowledged or rejected it")
+	@Category({"Staff Mode", "Audit"})
+	@StackTrace(false)
+	public static class DiscordDispatch extends Event {
+		@Label("Channel ID")
+		public long channelId;
+
+		@Label("Success")
+		public boolean success;
+	}
+}
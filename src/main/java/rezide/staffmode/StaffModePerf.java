@@ -0,0 +1,242 @@
+package rezide.staffmode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lightweight timing of the mod's hot spots. Call sites wrap their work in
+ * {@link #start()} / {@link #stop(Probe, long)}; when monitoring is disabled {@code start()}
+ * returns 0 and {@code stop} returns on its first comparison, so the cost is one volatile read.
+ * <p>
+ * Every probe keeps two log-linear (HDR-style) histograms: one of individual call durations and
+ * one of the total time the probe used per server tick. The mod's total per tick only counts
+ * outermost calls on the server thread, tracked with a depth counter only that thread touches, so
+ * e.g. {@code saveData} counts on its own when the deadline expiry calls it, but not a second time
+ * inside {@code revertPlayerToSurvival}.
+ */
+public final class StaffModePerf {
+
+	public enum Probe {
+		CREATIVE_TOGGLE("executeCreativeToggle"),
+		REVERT_TO_SURVIVAL("revertPlayerToSurvival"),
+		REVERT_ALL_TO_SURVIVAL("revertAllPlayersToSurvival"),
+		SAVE_DATA("saveData"),
+		ADD_INVENTORY_SNAPSHOT("addInventorySnapshot"),
+		PERIODIC_SNAPSHOT("PeriodicSnapshotter.tick"),
+		SESSION_ROLLBACK("StaffSessions.tick"),
+		MIXIN_COMMAND_LOGGER("CommandLoggerMixin.onExecute"),
+		MIXIN_INVENTORY_INSERT("PlayerInventoryMixin.onInsertStack"),
+		MIXIN_INVENTORY_REMOVE("PlayerInventoryMixin.onRemoveStack"),
+		MIXIN_CREATIVE_ACTION("CreativeLogMixin.onCreativeInventoryAction"),
+		MIXIN_CONTAINER_AUDIT("ContainerAuditMixin.onHandledScreen");
+
+		private final String displayName;
+
+		Probe(String displayName) {
+			this.displayName = displayName;
+		}
+	}
+
+	private static final Probe[] PROBES = Probe.values();
+	private static final Histogram[] CALL_HISTOGRAMS = new Histogram[PROBES.length];
+	private static final Histogram[] TICK_HISTOGRAMS = new Histogram[PROBES.length];
+	private static final AtomicLong[] TICK_ACCUMULATORS = new AtomicLong[PROBES.length];
+	private static final Histogram TICK_TOTAL_HISTOGRAM = new Histogram();
+
+	// Recorded by endTick. Calls on other threads are not tick time and only go into their own histograms.
+	private static volatile Thread serverThread;
+	// Only touched on the server thread: probe calls running now, and this tick's time in outermost calls
+	private static int serverThreadDepth;
+	private static long outermostNanos;
+
+	static {
+		for (int i = 0; i < PROBES.length; i++) {
+			CALL_HISTOGRAMS[i] = new Histogram();
+			TICK_HISTOGRAMS[i] = new Histogram();
+			TICK_ACCUMULATORS[i] = new AtomicLong();
+		}
+	}
+
+	private static volatile boolean enabled;
+
+	private StaffModePerf() {
+	}
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	public static void setEnabled(boolean value) {
+		enabled = value;
+	}
+
+	/**
+	 * @return The start time in nanoseconds, or 0 if monitoring is disabled.
+	 */
+	public static long start() {
+		if (!enabled) {
+			return 0L;
+		}
+		if (Thread.currentThread() == serverThread) {
+			serverThreadDepth++;
+		}
+		return System.nanoTime();
+	}
+
+	public static void stop(Probe probe, long startNanos) {
+		if (startNanos == 0L) {
+			return;
+		}
+		long elapsed = System.nanoTime() - startNanos;
+		CALL_HISTOGRAMS[probe.ordinal()].record(elapsed);
+		TICK_ACCUMULATORS[probe.ordinal()].addAndGet(elapsed);
+		if (Thread.currentThread() == serverThread && serverThreadDepth > 0 && --serverThreadDepth == 0) {
+			outermostNanos += elapsed;
+		}
+	}
+
+	/**
+	 * Folds the time accumulated during the tick into the per-tick histograms. Called at the end of every server tick.
+	 */
+	public static void endTick() {
+		serverThread = Thread.currentThread();
+		// Every probe call of the tick has ended; also recovers from a call site that missed its stop
+		serverThreadDepth = 0;
+		if (!enabled) {
+			return;
+		}
+		for (int i = 0; i < PROBES.length; i++) {
+			long probeNanos = TICK_ACCUMULATORS[i].getAndSet(0);
+			if (probeNanos != 0) {
+				TICK_HISTOGRAMS[i].record(probeNanos);
+			}
+		}
+		TICK_TOTAL_HISTOGRAM.record(outermostNanos);
+		outermostNanos = 0;
+	}
+
+	public static long getCallCount(Probe probe) {
+		return CALL_HISTOGRAMS[probe.ordinal()].count();
+	}
+
+	public static void reset() {
+		for (int i = 0; i < PROBES.length; i++) {
+			CALL_HISTOGRAMS[i].reset();
+			TICK_HISTOGRAMS[i].reset();
+			TICK_ACCUMULATORS[i].set(0);
+		}
+		TICK_TOTAL_HISTOGRAM.reset();
+	}
+
+	/**
+	 * @return Human-readable report lines with p50, p99 and max for every probe that recorded anything.
+	 */
+	public static List<String> report() {
+		List<String> lines = new ArrayList<>();
+		lines.add(String.format("§bStaff Mode perf (%s) §7- %d ticks sampled, mod time per tick: p50 %s, p99 %s, max %s",
+				enabled ? "§aenabled§b" : "§cdisabled§b", TICK_TOTAL_HISTOGRAM.count(),
+				formatNanos(TICK_TOTAL_HISTOGRAM.percentile(50)), formatNanos(TICK_TOTAL_HISTOGRAM.percentile(99)),
+				formatNanos(TICK_TOTAL_HISTOGRAM.max())));
+		for (int i = 0; i < PROBES.length; i++) {
+			Histogram calls = CALL_HISTOGRAMS[i];
+			if (calls.count() == 0) {
+				continue;
+			}
+			Histogram ticks = TICK_HISTOGRAMS[i];
+			lines.add(String.format("§e%s §7x%d §fcall: §a%s§7/§6%s§7/§c%s §ftick: §a%s§7/§6%s§7/§c%s",
+					PROBES[i].displayName, calls.count(),
+					formatNanos(calls.percentile(50)), formatNanos(calls.percentile(99)), formatNanos(calls.max()),
+					formatNanos(ticks.percentile(50)), formatNanos(ticks.percentile(99)), formatNanos(ticks.max())));
+		}
+		lines.add("§7Columns: p50/p99/max.");
+		return lines;
+	}
+
+	private static String formatNanos(long nanos) {
+		if (nanos < 1_000L) {
+			return nanos + "ns";
+		} else if (nanos < 1_000_000L) {
+			return String.format("%.1fµs", nanos / 1_000.0);
+		}
+		return String.format("%.2fms", nanos / 1_000_000.0);
+	}
+
+	/**
+	 * Log-linear histogram: values below 8 get their own bucket, larger values are bucketed by
+	 * power of two with 8 linear sub-buckets each (at most 12.5% relative error), covering the full
+	 * positive long range in 512 counters.
+	 */
+	static final class Histogram {
+		private static final int SUB_BUCKET_BITS = 3;
+		private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+		private static final int BUCKETS = 512;
+
+		private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+		private final AtomicLong total = new AtomicLong();
+		private final AtomicLong max = new AtomicLong();
+
+		void record(long value) {
+			if (value < 0) {
+				value = 0;
+			}
+			counts.incrementAndGet(indexFor(value));
+			total.incrementAndGet();
+			if (value > max.get()) {
+				max.accumulateAndGet(value, Math::max);
+			}
+		}
+
+		long count() {
+			return total.get();
+		}
+
+		long max() {
+			return max.get();
+		}
+
+		long percentile(double percentile) {
+			long count = total.get();
+			if (count == 0) {
+				return 0;
+			}
+			long rank = Math.max(1, (long) Math.ceil(count * percentile / 100.0));
+			long seen = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				seen += counts.get(i);
+				if (seen >= rank) {
+					return Math.min(highestValueIn(i), max.get());
+				}
+			}
+			return max.get();
+		}
+
+		void reset() {
+			for (int i = 0; i < BUCKETS; i++) {
+				counts.set(i, 0);
+			}
+			total.set(0);
+			max.set(0);
+		}
+
+		static int indexFor(long value) {
+			if (value < SUB_BUCKETS) {
+				return (int) value;
+			}
+			int exponent = 63 - Long.numberOfLeadingZeros(value);
+			int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+			return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+		}
+
+		static long highestValueIn(int index) {
+			if (index < SUB_BUCKETS) {
+				return index;
+			}
+			int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+			long subBucket = index % SUB_BUCKETS;
+			long lowest = (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+			return lowest + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+		}
+	}
+}
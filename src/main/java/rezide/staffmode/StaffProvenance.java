@@ -0,0 +1,135 @@
+package rezide.staffmode;
+
+import com.mojang.authlib.GameProfile;
+import net.minecraft.block.entity.BlockEntity;
+import net.minecraft.block.entity.BlockEntityType;
+import net.minecraft.component.DataComponentTypes;
+import net.minecraft.component.type.NbtComponent;
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.ItemEntity;
+import net.minecraft.item.ItemStack;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.Vec3d;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Marks stacks staff take from the creative menu with who took them, in which staff session and when,
+ * and reports when a marked stack reaches a non-staff player, a container or the ground.
+ * <p>
+ * The mark is a key in the vanilla {@code minecraft:custom_data} component rather than a component
+ * of our own, so clients without the mod and worlds without it installed still load the items. The
+ * hooks on the hot paths only call {@link #isTagged}, a component lookup; everything else runs once a
+ * marked stack is actually found.
+ */
+public final class StaffProvenance {
+
+	public static final String KEY = "staffmode:provenance";
+
+	// Each marked stack is reported at most once per destination
+	private static final int MAX_REPORTED = 4096;
+	private static final Set<String> reported = Collections.newSetFromMap(new LinkedHashMap<>(256, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+			return size() > MAX_REPORTED;
+		}
+	});
+
+	private StaffProvenance() {
+	}
+
+	public static boolean isTagged(ItemStack stack) {
+		NbtComponent customData = stack.get(DataComponentTypes.CUSTOM_DATA);
+		return customData != null && customData.contains(KEY);
+	}
+
+	/**
+	 * Marks a stack a player in staff mode obtained from the creative menu. Stacks that already carry a
+	 * mark keep it, so moving an item around the creative inventory does not reset its origin.
+	 */
+	public static void stamp(ServerPlayerEntity staff, ItemStack stack) {
+		if (stack.isEmpty() || isTagged(stack)) {
+			return;
+		}
+		StaffSession session = StaffSessions.getActive(staff.getUuid());
+		NbtCompound provenance = new NbtCompound();
+		provenance.putUuid("Staff", staff.getUuid());
+		provenance.putInt("Session", session != null ? session.id : 0);
+		provenance.putLong("Time", System.currentTimeMillis());
+		NbtComponent.set(DataComponentTypes.CUSTOM_DATA, stack, nbt -> nbt.put(KEY, provenance));
+	}
+
+	/**
+	 * Removes the mark, leaving any other custom data in place.
+	 *
+	 * @return The same stack, for chaining.
+	 */
+	static ItemStack strip(ItemStack stack) {
+		if (isTagged(stack)) {
+			NbtComponent.set(DataComponentTypes.CUSTOM_DATA, stack, nbt -> nbt.remove(KEY));
+		}
+		return stack;
+	}
+
+	public static void onPlayerReceived(ServerPlayerEntity player, ItemStack stack) {
+		if (StaffMode.isPlayerInStaffMode(player.getUuid())) {
+			return;
+		}
+		report(player.getServer(), stack, "player:" + player.getUuid(),
+				String.format("entered **%s**'s inventory", player.getGameProfile().getName()));
+	}
+
+	public static void onContainerInsert(BlockEntity container, ItemStack stack) {
+		if (!(container.getWorld() instanceof ServerWorld world)) {
+			return;
+		}
+		BlockPos pos = container.getPos();
+		String containerId = String.valueOf(BlockEntityType.getId(container.getType()));
+		report(world.getServer(), stack, "container:" + world.getRegistryKey().getValue() + ":" + pos.asLong(),
+				String.format("was put into a %s at %d %d %d in %s", containerId, pos.getX(), pos.getY(), pos.getZ(), world.getRegistryKey().getValue()));
+	}
+
+	public static void onEntitySpawned(ServerWorld world, Entity entity) {
+		if (!(entity instanceof ItemEntity itemEntity) || !isTagged(itemEntity.getStack())) {
+			return;
+		}
+		Vec3d pos = entity.getPos();
+		report(world.getServer(), itemEntity.getStack(), "ground",
+				String.format("was dropped at %d %d %d in %s", (int) Math.floor(pos.x), (int) Math.floor(pos.y), (int) Math.floor(pos.z), world.getRegistryKey().getValue()));
+	}
+
+	private static void report(MinecraftServer server, ItemStack stack, String destination, String description) {
+		NbtComponent customData = stack.get(DataComponentTypes.CUSTOM_DATA);
+		if (customData == null) {
+			return;
+		}
+		NbtCompound provenance = customData.copyNbt().getCompound(KEY);
+		if (!provenance.containsUuid("Staff")) {
+			return;
+		}
+		UUID staffUuid = provenance.getUuid("Staff");
+		long time = provenance.getLong("Time");
+		if (!reported.add(staffUuid + ":" + time + ":" + destination)) {
+			return;
+		}
+
+		String staffName = server != null && server.getUserCache() != null
+				? server.getUserCache().getByUuid(staffUuid).map(GameProfile::getName).orElse(staffUuid.toString())
+				: staffUuid.toString();
+		int session = provenance.getInt("Session");
+		String message = String.format("⚠️ %d x %s obtained by **%s** in staff mode%s at %s %s.",
+				stack.getCount(), stack.getName().getString(), staffName,
+				session > 0 ? " (session #" + session + ")" : "", Instant.ofEpochMilli(time), description);
+		StaffMode.LOGGER.warn("Staff item leak: {}", message);
+		DiscordBotManager.sendMessageToChannel(StaffMode.getConfig().getAdminLogChannelId(), message);
+	}
+}
@@ -0,0 +1,278 @@
+package rezide.staffmode;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.NbtList;
+import net.minecraft.nbt.NbtSizeTracker;
+import net.minecraft.nbt.NbtString;
+import net.minecraft.registry.RegistryKey;
+import net.minecraft.registry.RegistryKeys;
+import net.minecraft.util.Identifier;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * One stay of a player in staff mode, with the journal of block changes they made and the
+ * {@link SessionEntities entities} they produced.
+ * <p>
+ * Journal entries are {@value #STRIDE} longs: the packed {@link BlockPos}, the old and new block
+ * state raw IDs ({@code old << 32 | new}), and the dimension index ({@code << 48}) with the server
+ * tick in the low 48 bits. Entries are buffered in a {@code long[]} and appended to
+ * {@code sessions/<uuid>/<id>.journal} every {@value #SPILL_ENTRIES} entries and when the session
+ * ends; {@code <id>.nbt} holds the session metadata, the dimension table and the tracked entities.
+ * Block entities (chest contents, sign text) replaced by a change are appended to
+ * {@code <id>.blockentities} with the same spills, each as its entry number and the NBT.
+ * If an append fails, the buffer grows and the append is retried when it is full again, up to
+ * {@value #MAX_BUFFERED_ENTRIES} entries; past that the buffered entries are dropped.
+ */
+class StaffSession {
+	static final int STRIDE = 3;
+	private static final int SPILL_ENTRIES = 4096;
+	private static final int MAX_BUFFERED_ENTRIES = SPILL_ENTRIES * 16;
+	private static final long TICK_MASK = (1L << 48) - 1;
+
+	final UUID playerUuid;
+	final int id;
+	final long startedAt;
+	long endedAt;
+	private final List<RegistryKey<World>> dimensions = new ArrayList<>();
+	SessionEntities entities = new SessionEntities();
+	private long[] buffer; // Allocated by the first entry, freed when the session ends
+	private int bufferedLongs;
+	private long entryCount;
+	// Block entities of the entries not spilled yet
+	private final List<BlockEntityRecord> bufferedBlockEntities = new ArrayList<>();
+	private final File journalFile;
+	private final File blockEntitiesFile;
+	private final File metaFile;
+
+	StaffSession(UUID playerUuid, int id, long startedAt, File directory) {
+		this.playerUuid = playerUuid;
+		this.id = id;
+		this.startedAt = startedAt;
+		this.journalFile = new File(directory, id + ".journal");
+		this.metaFile = new File(directory, id + ".nbt");
+		this.blockEntitiesFile = new File(directory, id + ".blockentities");
+	}
+
+	private record BlockEntityRecord(long entry, NbtCompound nbt) {
+	}
+
+	long getEntryCount() {
+		return entryCount;
+	}
+
+	int dimensionIndex(RegistryKey<World> dimension) {
+		int dimensionIndex = dimensions.indexOf(dimension);
+		if (dimensionIndex < 0) {
+			dimensionIndex = dimensions.size();
+			dimensions.add(dimension);
+		}
+		return dimensionIndex;
+	}
+
+	RegistryKey<World> dimension(int dimensionIndex) {
+		return dimensions.get(dimensionIndex);
+	}
+
+	/**
+	 * @param oldBlockEntity The block entity the change replaced, or {@code null} if there was none.
+	 */
+	void recordBlockChange(RegistryKey<World> dimension, BlockPos pos, int oldStateId, int newStateId, long tick, NbtCompound oldBlockEntity) {
+		int dimensionIndex = dimensionIndex(dimension);
+		if (buffer == null) {
+			buffer = new long[SPILL_ENTRIES * STRIDE];
+		}
+		if (oldBlockEntity != null) {
+			bufferedBlockEntities.add(new BlockEntityRecord(entryCount, oldBlockEntity));
+		}
+		buffer[bufferedLongs++] = pos.asLong();
+		buffer[bufferedLongs++] = ((long) oldStateId << 32) | (newStateId & 0xFFFFFFFFL);
+		buffer[bufferedLongs++] = ((long) dimensionIndex << 48) | (tick & TICK_MASK);
+		entryCount++;
+		if (bufferedLongs == buffer.length) {
+			spill();
+		}
+	}
+
+	/**
+	 * Appends the buffered entries to the journal file. Never throws: it runs inside
+	 * {@code World.setBlockState}.
+	 */
+	void spill() {
+		if (bufferedLongs == 0) {
+			return;
+		}
+		ByteBuffer bytes = ByteBuffer.allocate(bufferedLongs * Long.BYTES);
+		bytes.asLongBuffer().put(buffer, 0, bufferedLongs);
+		journalFile.getParentFile().mkdirs();
+		try {
+			// Block entities first: a retry after a failure may append them twice, which reading tolerates,
+			// but an entry must never be in the journal without its block entity
+			if (!bufferedBlockEntities.isEmpty()) {
+				try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(blockEntitiesFile, true)))) {
+					for (BlockEntityRecord record : bufferedBlockEntities) {
+						out.writeLong(record.entry());
+						NbtIo.write(record.nbt(), out);
+					}
+				}
+				bufferedBlockEntities.clear();
+			}
+			try (FileChannel channel = new FileOutputStream(journalFile, true).getChannel()) {
+				while (bytes.hasRemaining()) {
+					channel.write(bytes);
+				}
+			}
+			bufferedLongs = 0;
+		} catch (IOException e) {
+			StaffMode.LOGGER.error("Failed to write block journal {}: {}", journalFile.getName(), e.getMessage());
+			if (bufferedLongs < buffer.length) {
+				return; // Retried on the next spill
+			}
+			if (buffer.length >= MAX_BUFFERED_ENTRIES * STRIDE) {
+				int dropped = bufferedLongs / STRIDE;
+				entryCount -= dropped;
+				bufferedLongs = 0;
+				bufferedBlockEntities.removeIf(record -> record.entry() >= entryCount);
+				StaffMode.LOGGER.error("Dropped {} block journal entries of session {} of {}; they cannot be rolled back.", dropped, id, playerUuid);
+				DiscordBotManager.logToFile("Dropped " + dropped + " block journal entries of session " + id + " of " + playerUuid + " after repeated write failures."); // Log to file
+			} else {
+				buffer = Arrays.copyOf(buffer, buffer.length * 2);
+			}
+		}
+	}
+
+	/**
+	 * Spills the remaining entries, frees the buffer and writes the metadata file.
+	 */
+	void finish(long endTime) {
+		endedAt = endTime;
+		spill();
+		if (bufferedLongs == 0) {
+			buffer = null; // Kept only if the last spill failed, so readEntries still sees the entries
+		}
+		writeMeta();
+	}
+
+	void writeMeta() {
+		NbtCompound tag = new NbtCompound();
+		tag.putString("Player", playerUuid.toString());
+		tag.putLong("Start", startedAt);
+		tag.putLong("End", endedAt);
+		tag.putLong("Entries", entryCount);
+		tag.putInt("StateIds", StaffSessions.blockStateIdCount());
+		NbtList dimensionsTag = new NbtList();
+		for (RegistryKey<World> dimension : dimensions) {
+			dimensionsTag.add(NbtString.of(dimension.getValue().toString()));
+		}
+		tag.put("Dimensions", dimensionsTag);
+		tag.putLongArray("Entities", entities.toArray());
+		try {
+			NbtIo.writeCompressed(tag, metaFile.toPath());
+		} catch (IOException e) {
+			StaffMode.LOGGER.error("Failed to write session metadata {}: {}", metaFile.getName(), e.getMessage());
+		}
+	}
+
+	/**
+	 * Loads an ended session's metadata.
+	 *
+	 * @return The session, or {@code null} if it does not exist or was recorded with a different
+	 * block state table (other game version or mods), so its state IDs cannot be trusted.
+	 */
+	static StaffSession load(UUID playerUuid, int id, File directory) throws IOException {
+		File metaFile = new File(directory, id + ".nbt");
+		if (!metaFile.exists()) {
+			return null;
+		}
+		NbtCompound tag = NbtIo.readCompressed(metaFile.toPath(), NbtSizeTracker.ofUnlimitedBytes());
+		if (tag.getInt("StateIds") != StaffSessions.blockStateIdCount()) {
+			StaffMode.LOGGER.warn("Session {} of {} was recorded with a different block state table. Ignoring it.", id, playerUuid);
+			return null;
+		}
+		StaffSession session = new StaffSession(playerUuid, id, tag.getLong("Start"), directory);
+		session.endedAt = tag.getLong("End");
+		session.entryCount = tag.getLong("Entries");
+		NbtList dimensionsTag = tag.getList("Dimensions", NbtCompound.STRING_TYPE);
+		for (int i = 0; i < dimensionsTag.size(); i++) {
+			session.dimensions.add(RegistryKey.of(RegistryKeys.WORLD, Identifier.of(dimensionsTag.getString(i))));
+		}
+		session.entities = SessionEntities.fromArray(tag.getLongArray("Entities"));
+		return session;
+	}
+
+	/**
+	 * @return All journal entries, oldest first, from the journal file followed by the buffer.
+	 */
+	long[] readEntries() throws IOException {
+		long fileLongs = journalFile.exists() ? journalFile.length() / Long.BYTES : 0;
+		long[] entries = new long[Math.toIntExact(fileLongs + bufferedLongs)];
+		if (fileLongs > 0) {
+			try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)))) {
+				for (int i = 0; i < fileLongs; i++) {
+					entries[i] = in.readLong();
+				}
+			}
+		}
+		if (bufferedLongs > 0) {
+			System.arraycopy(buffer, 0, entries, (int) fileLongs, bufferedLongs);
+		}
+		return entries;
+	}
+
+	/**
+	 * @return The recorded block entities by entry number, from the file followed by the buffer.
+	 */
+	Long2ObjectMap<NbtCompound> readBlockEntities() throws IOException {
+		Long2ObjectMap<NbtCompound> blockEntities = new Long2ObjectOpenHashMap<>();
+		if (blockEntitiesFile.exists()) {
+			try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(blockEntitiesFile)))) {
+				while (true) {
+					long entry;
+					try {
+						entry = in.readLong();
+					} catch (EOFException e) {
+						break;
+					}
+					blockEntities.put(entry, NbtIo.readCompound(in, NbtSizeTracker.ofUnlimitedBytes()));
+				}
+			} catch (EOFException e) {
+				// Torn last record from a failed append; its entry was retried or dropped
+			}
+		}
+		for (BlockEntityRecord record : bufferedBlockEntities) {
+			blockEntities.put(record.entry(), record.nbt());
+		}
+		return blockEntities;
+	}
+
+	RegistryKey<World> dimensionOf(long packedTickAndDimension) {
+		return dimension((int) (packedTickAndDimension >>> 48));
+	}
+
+	static int oldStateId(long packedStates) {
+		return (int) (packedStates >>> 32);
+	}
+
+	static int newStateId(long packedStates) {
+		return (int) packedStates;
+	}
+}
@@ -0,0 +1,487 @@
+package rezide.staffmode;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+import net.minecraft.block.entity.BlockEntity;
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.EntityType;
+import net.minecraft.entity.ItemEntity;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.world.World;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Staff sessions (one per stay in staff mode), their block change journals and the entities they produced.
+ * <p>
+ * {@code ServerPlayerInteractionManagerMixin} marks the player whose break/use is being processed,
+ * and {@code CommandLoggerMixin} the player running a command such as {@code /fill}; while that
+ * player is in staff mode, every block change the action causes (including its direct
+ * side effects) is journaled through {@code WorldBlockJournalMixin}. Rollbacks replay a journal
+ * backwards over several ticks.
+ * <p>
+ * Entities spawned during such an action, and item entities thrown by a staff mode player, are
+ * recorded through {@code ServerWorldEntityTrackingMixin}. Listing and purging go straight to the
+ * session's entries and look each entity up by UUID; entities in unloaded chunks are purged when
+ * their chunk loads. Everything here runs on the server thread.
+ */
+public final class StaffSessions {
+
+	private static final int ROLLBACK_BLOCKS_PER_TICK = 512;
+	private static final long ROLLBACK_NANOS_PER_TICK = 2_000_000L;
+	private static final int MAX_LISTED_CHUNKS = 10;
+
+	private static final Map<UUID, StaffSession> activeSessions = new HashMap<>();
+	private static final List<Rollback> rollbacks = new ArrayList<>();
+	private static File sessionsDir;
+
+	// Where each tracked entity is recorded, to keep its chunk current when it unloads
+	private static final Map<UUID, TrackedEntity> trackedEntities = new HashMap<>();
+	// Ended sessions whose entity chunks changed after their metadata was written, rewritten once per tick
+	private static final Set<StaffSession> staleSessions = new HashSet<>();
+	// Entities to discard as soon as they load, persisted in sessions/pending_purges.dat
+	private static final Set<UUID> pendingPurges = new HashSet<>();
+	private static final List<Entity> entitiesToDiscard = new ArrayList<>();
+
+	private record TrackedEntity(StaffSession session, int index) {
+	}
+
+	// The staff mode player whose interaction is being processed, and the block states before each change
+	private static ServerPlayerEntity actingPlayer;
+	private static int actionDepth;
+	private static final ArrayDeque<BlockState> oldStates = new ArrayDeque<>();
+	// The block entities of the old states that have one
+	private static final ArrayDeque<NbtCompound> oldBlockEntities = new ArrayDeque<>();
+
+	private StaffSessions() {
+	}
+
+	static void setDirectory(File dataDirectory) {
+		sessionsDir = new File(dataDirectory, "sessions");
+		loadPendingPurges();
+	}
+
+	static int blockStateIdCount() {
+		return Block.STATE_IDS.size();
+	}
+
+	private static File getPlayerDirectory(UUID playerUuid) {
+		return new File(sessionsDir, playerUuid.toString());
+	}
+
+	static StaffSession begin(UUID playerUuid) {
+		StaffSession previous = activeSessions.remove(playerUuid);
+		if (previous != null) {
+			previous.finish(System.currentTimeMillis());
+		}
+		File directory = getPlayerDirectory(playerUuid);
+		directory.mkdirs();
+		StaffSession session = new StaffSession(playerUuid, latestSessionId(playerUuid) + 1, System.currentTimeMillis(), directory);
+		session.writeMeta();
+		activeSessions.put(playerUuid, session);
+		return session;
+	}
+
+	static StaffSession getActive(UUID playerUuid) {
+		return activeSessions.get(playerUuid);
+	}
+
+	static void end(UUID playerUuid) {
+		StaffSession session = activeSessions.remove(playerUuid);
+		if (session != null) {
+			session.finish(System.currentTimeMillis());
+			StaffMode.LOGGER.info("Staff session {} of {} ended with {} block changes.", session.id, playerUuid, session.getEntryCount());
+		}
+	}
+
+	/**
+	 * @return The highest session ID on disk for the player, or 0 if there is none.
+	 */
+	static int latestSessionId(UUID playerUuid) {
+		File[] files = getPlayerDirectory(playerUuid).listFiles((dir, name) -> name.endsWith(".nbt") || name.endsWith(".journal"));
+		int latest = 0;
+		if (files != null) {
+			for (File file : files) {
+				String name = file.getName();
+				try {
+					latest = Math.max(latest, Integer.parseInt(name.substring(0, name.indexOf('.'))));
+				} catch (NumberFormatException ignored) {
+					// Not a session file
+				}
+			}
+		}
+		return latest;
+	}
+
+	/**
+	 * @return The active or ended session, or {@code null} if it does not exist or cannot be used.
+	 */
+	static StaffSession find(UUID playerUuid, int sessionId) throws IOException {
+		StaffSession active = activeSessions.get(playerUuid);
+		if (active != null && active.id == sessionId) {
+			return active;
+		}
+		return StaffSession.load(playerUuid, sessionId, getPlayerDirectory(playerUuid));
+	}
+
+	/**
+	 * @return The ended session, or {@code null} if it does not exist, is still active or cannot be used.
+	 */
+	static StaffSession loadEnded(UUID playerUuid, int sessionId) throws IOException {
+		StaffSession active = activeSessions.get(playerUuid);
+		if (active != null && active.id == sessionId) {
+			return null;
+		}
+		return StaffSession.load(playerUuid, sessionId, getPlayerDirectory(playerUuid));
+	}
+
+	// --- Journal hooks, called from mixins ---
+
+	public static void beginAction(ServerPlayerEntity player) {
+		if (actionDepth++ == 0 && StaffMode.isPlayerInStaffMode(player.getUuid())) {
+			actingPlayer = player;
+		}
+	}
+
+	public static void endAction() {
+		if (actionDepth > 0 && --actionDepth == 0) {
+			actingPlayer = null;
+			oldStates.clear();
+		}
+	}
+
+	public static void beforeBlockChange(World world, BlockPos pos) {
+		if (actingPlayer != null && !world.isClient()) {
+			BlockState oldState = world.getBlockState(pos);
+			oldStates.push(oldState);
+			if (oldState.hasBlockEntity()) {
+				// Pushed even if missing, to stay paired with the state; an empty compound means none
+				BlockEntity blockEntity = world.getBlockEntity(pos);
+				oldBlockEntities.push(blockEntity != null ? blockEntity.createNbtWithIdentifyingData(world.getRegistryManager()) : new NbtCompound());
+			}
+		}
+	}
+
+	public static void afterBlockChange(World world, BlockPos pos, boolean changed) {
+		if (actingPlayer == null || world.isClient() || oldStates.isEmpty()) {
+			return;
+		}
+		BlockState oldState = oldStates.pop();
+		NbtCompound oldBlockEntity = oldState.hasBlockEntity() && !oldBlockEntities.isEmpty() ? oldBlockEntities.pop() : null;
+		BlockState newState = world.getBlockState(pos);
+		if (!changed || oldState == newState) {
+			return;
+		}
+		UUID uuid = actingPlayer.getUuid();
+		StaffSession session = activeSessions.get(uuid);
+		if (session == null) {
+			session = begin(uuid); // e.g. staff mode data restored after a crash
+		}
+		session.recordBlockChange(world.getRegistryKey(), pos, Block.getRawIdFromState(oldState),
+				Block.getRawIdFromState(newState), actingPlayer.getServer().getTicks(),
+				oldBlockEntity == null || oldBlockEntity.isEmpty() ? null : oldBlockEntity);
+	}
+
+	public static void onEntitySpawned(ServerWorld world, Entity entity) {
+		ServerPlayerEntity staffPlayer = actingPlayer;
+		if (staffPlayer == null && entity instanceof ItemEntity itemEntity
+				&& itemEntity.getOwner() instanceof ServerPlayerEntity thrower && StaffMode.isPlayerInStaffMode(thrower.getUuid())) {
+			staffPlayer = thrower;
+		}
+		if (staffPlayer == null || entity == staffPlayer) {
+			return;
+		}
+		UUID uuid = staffPlayer.getUuid();
+		StaffSession session = activeSessions.get(uuid);
+		if (session == null) {
+			session = begin(uuid);
+		}
+		int index = session.entities.size();
+		session.entities.add(entity.getUuid(), session.dimensionIndex(world.getRegistryKey()), entity.getChunkPos(), entity.getType());
+		trackedEntities.put(entity.getUuid(), new TrackedEntity(session, index));
+	}
+
+	static void onEntityLoad(Entity entity, ServerWorld world) {
+		if (!pendingPurges.isEmpty() && pendingPurges.remove(entity.getUuid())) {
+			entitiesToDiscard.add(entity); // Not while the world is adding it
+			savePendingPurges();
+		}
+	}
+
+	static void onEntityUnload(Entity entity, ServerWorld world) {
+		TrackedEntity tracked = trackedEntities.get(entity.getUuid());
+		if (tracked == null) {
+			return;
+		}
+		Entity.RemovalReason removalReason = entity.getRemovalReason();
+		if (removalReason != null && removalReason.shouldDestroy()) {
+			trackedEntities.remove(entity.getUuid()); // Killed, picked up or despawned
+		} else {
+			tracked.session.entities.updateChunk(tracked.index, entity);
+			// An active session writes its metadata when it ends; an ended one has to be written again
+			if (tracked.session.endedAt != 0) {
+				staleSessions.add(tracked.session);
+			}
+		}
+	}
+
+	/**
+	 * Writes the metadata of ended sessions whose entities moved. Also called once the server stopped,
+	 * as entities unload when the worlds close after the last tick.
+	 */
+	static void saveStaleSessions() {
+		if (staleSessions.isEmpty()) {
+			return;
+		}
+		for (StaffSession session : staleSessions) {
+			session.writeMeta();
+		}
+		staleSessions.clear();
+	}
+
+	/**
+	 * @return Report lines for the session's entities, grouped by chunk.
+	 */
+	static List<String> listEntities(MinecraftServer server, StaffSession session) {
+		List<String> lines = new ArrayList<>();
+		SessionEntities entities = session.entities;
+		int[] loaded = new int[1];
+		List<String> chunkLines = new ArrayList<>();
+		entities.forEachChunk((dimensionIndex, chunkPos, indices) -> {
+			ServerWorld world = server.getWorld(session.dimension(dimensionIndex));
+			Map<String, Integer> typeCounts = new TreeMap<>();
+			int loadedHere = 0;
+			for (int i = 0; i < indices.size(); i++) {
+				int index = indices.getInt(i);
+				if (world != null && world.getEntity(entities.uuid(index)) != null) {
+					loadedHere++;
+				}
+				typeCounts.merge(EntityType.getId(entities.type(index)).getPath(), 1, Integer::sum);
+			}
+			loaded[0] += loadedHere;
+			chunkLines.add(String.format("§7%s §f[%d, %d] §7(blocks %d, %d): §e%d §7(%d loaded) §f%s",
+					session.dimension(dimensionIndex).getValue().getPath(), chunkPos.x, chunkPos.z,
+					chunkPos.getStartX(), chunkPos.getStartZ(), indices.size(), loadedHere, typeCounts));
+		});
+		lines.add(String.format("§bSession #%d produced §e%d §bentities, §e%d §bloaded, in §e%d §bchunks:",
+				session.id, entities.size(), loaded[0], chunkLines.size()));
+		lines.addAll(chunkLines.subList(0, Math.min(chunkLines.size(), MAX_LISTED_CHUNKS)));
+		if (chunkLines.size() > MAX_LISTED_CHUNKS) {
+			lines.add(String.format("§7... and %d more chunks.", chunkLines.size() - MAX_LISTED_CHUNKS));
+		}
+		return lines;
+	}
+
+	/**
+	 * Discards every loaded entity the session produced and queues the rest for when their chunk loads.
+	 *
+	 * @return The number of entities discarded now and the number queued.
+	 */
+	static int[] purgeEntities(MinecraftServer server, StaffSession session) {
+		SessionEntities entities = session.entities;
+		int discarded = 0;
+		int queued = 0;
+		for (int index = 0; index < entities.size(); index++) {
+			UUID uuid = entities.uuid(index);
+			ServerWorld world = server.getWorld(session.dimension(entities.dimensionIndex(index)));
+			Entity entity = world != null ? world.getEntity(uuid) : null;
+			if (entity != null) {
+				if (!entity.isRemoved()) {
+					entity.discard();
+					discarded++;
+				}
+			} else if (pendingPurges.add(uuid)) {
+				queued++;
+			}
+		}
+		if (queued > 0) {
+			savePendingPurges();
+		}
+		return new int[]{discarded, queued};
+	}
+
+	private static void loadPendingPurges() {
+		pendingPurges.clear();
+		File file = new File(sessionsDir, "pending_purges.dat");
+		if (!file.exists()) {
+			return;
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				pendingPurges.add(new UUID(in.readLong(), in.readLong()));
+			}
+		} catch (IOException e) {
+			StaffMode.LOGGER.error("Failed to load pending entity purges: {}", e.getMessage());
+		}
+	}
+
+	private static void savePendingPurges() {
+		File file = new File(sessionsDir, "pending_purges.dat");
+		sessionsDir.mkdirs();
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+			out.writeInt(pendingPurges.size());
+			for (UUID uuid : pendingPurges) {
+				out.writeLong(uuid.getMostSignificantBits());
+				out.writeLong(uuid.getLeastSignificantBits());
+			}
+		} catch (IOException e) {
+			StaffMode.LOGGER.error("Failed to save pending entity purges: {}", e.getMessage());
+		}
+	}
+
+	// --- Rollback ---
+
+	/**
+	 * Queues a rollback of the session's block changes, newest first. A block is only reverted if it
+	 * still has the state the session left it in, so later changes by other players are kept.
+	 * Journaled block entities are restored with their block. Blocks in unloaded chunks are skipped
+	 * rather than loading the chunk; rolling back again once they are loaded reverts only those.
+	 *
+	 * @param onDone Receives a summary once the rollback finished.
+	 * @return The number of journal entries to replay.
+	 */
+	static long startRollback(MinecraftServer server, StaffSession session, Consumer<String> onDone) throws IOException {
+		long[] entries = session.readEntries();
+		rollbacks.add(new Rollback(server, session, entries, session.readBlockEntities(), onDone));
+		return entries.length / StaffSession.STRIDE;
+	}
+
+	static void tick(MinecraftServer server) {
+		// Recover from an interaction that threw before its RETURN injection ran
+		actingPlayer = null;
+		actionDepth = 0;
+		oldStates.clear();
+		oldBlockEntities.clear();
+
+		saveStaleSessions();
+
+		if (!entitiesToDiscard.isEmpty()) {
+			for (Entity entity : entitiesToDiscard) {
+				entity.discard();
+			}
+			entitiesToDiscard.clear();
+		}
+
+		if (rollbacks.isEmpty()) {
+			return;
+		}
+		long perfStart = StaffModePerf.start();
+		long deadline = System.nanoTime() + ROLLBACK_NANOS_PER_TICK;
+		int budget = ROLLBACK_BLOCKS_PER_TICK;
+		Iterator<Rollback> iterator = rollbacks.iterator();
+		while (iterator.hasNext() && budget > 0 && System.nanoTime() < deadline) {
+			Rollback rollback = iterator.next();
+			budget -= rollback.step(budget, deadline);
+			if (rollback.isDone()) {
+				iterator.remove();
+				String summary = String.format("§aRollback of session #%d finished: §e%d §ablocks restored, §e%d §askipped (changed since).",
+						rollback.session.id, rollback.restored, rollback.skipped);
+				if (rollback.unloaded > 0) {
+					summary += String.format(" §e%d §ablocks were in unloaded chunks; load them and roll back again.", rollback.unloaded);
+				}
+				if (rollback.emptied > 0) {
+					summary += String.format(" §c%d §crestored blocks had no journaled contents (recorded by an older version).", rollback.emptied);
+				}
+				rollback.onDone.accept(summary);
+			}
+		}
+		StaffModePerf.stop(StaffModePerf.Probe.SESSION_ROLLBACK, perfStart);
+	}
+
+	private static final class Rollback {
+		private static final int FLAGS = Block.NOTIFY_LISTENERS | Block.FORCE_STATE | Block.SKIP_DROPS;
+
+		private final MinecraftServer server;
+		private final StaffSession session;
+		private final long[] entries;
+		private final Long2ObjectMap<NbtCompound> blockEntities; // By entry number
+		private final Consumer<String> onDone;
+		private int nextEntry; // Offset of the next entry to revert, counting down
+		private int restored;
+		private int skipped;
+		private int unloaded;
+		private int emptied; // Restored with a block entity but without its journaled contents
+
+		private Rollback(MinecraftServer server, StaffSession session, long[] entries, Long2ObjectMap<NbtCompound> blockEntities, Consumer<String> onDone) {
+			this.server = server;
+			this.session = session;
+			this.entries = entries;
+			this.blockEntities = blockEntities;
+			this.onDone = onDone;
+			this.nextEntry = entries.length - StaffSession.STRIDE;
+		}
+
+		private boolean isDone() {
+			return nextEntry < 0;
+		}
+
+		/**
+		 * @return The number of entries processed.
+		 */
+		private int step(int budget, long deadline) {
+			BlockPos.Mutable pos = new BlockPos.Mutable();
+			int processed = 0;
+			while (nextEntry >= 0 && processed < budget && ((processed & 63) != 0 || System.nanoTime() < deadline)) {
+				long packedStates = entries[nextEntry + 1];
+				ServerWorld world = server.getWorld(session.dimensionOf(entries[nextEntry + 2]));
+				pos.set(entries[nextEntry]);
+				long entry = nextEntry / StaffSession.STRIDE;
+				nextEntry -= StaffSession.STRIDE;
+				processed++;
+
+				if (world == null) {
+					skipped++;
+					continue;
+				}
+				// getBlockState would load the chunk synchronously
+				if (!world.isChunkLoaded(ChunkSectionPos.getSectionCoord(pos.getX()), ChunkSectionPos.getSectionCoord(pos.getZ()))) {
+					unloaded++;
+					continue;
+				}
+				if (world.getBlockState(pos) != Block.getStateFromRawId(StaffSession.newStateId(packedStates))) {
+					skipped++;
+					continue;
+				}
+				BlockState oldState = Block.getStateFromRawId(StaffSession.oldStateId(packedStates));
+				world.setBlockState(pos, oldState, FLAGS);
+				if (oldState.hasBlockEntity()) {
+					NbtCompound nbt = blockEntities.get(entry);
+					BlockEntity blockEntity = world.getBlockEntity(pos);
+					if (nbt != null && blockEntity != null) {
+						blockEntity.read(nbt, world.getRegistryManager());
+						blockEntity.markDirty();
+					} else {
+						emptied++;
+					}
+				}
+				restored++;
+			}
+			return processed;
+		}
+	}
+}
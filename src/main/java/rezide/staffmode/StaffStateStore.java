@@ -0,0 +1,74 @@
+package rezide.staffmode;
+
+import net.minecraft.nbt.NbtCompound;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Persistence for staff mode state and inventory histories. {@link StaffMode} encodes everything to
+ * NBT on the server thread; a store only moves the compounds to and from storage. The default keeps
+ * the NBT files in the world's {@code staff-mode} directory; other stores are contributed through the
+ * {@value StaffStateStoreProvider#ENTRYPOINT} entrypoint and picked with {@code stateStore} in the config.
+ * <p>
+ * A store can be shared by several servers. Each server then only loads and replaces its own entries,
+ * identified by its server ID, but can look up and claim an entry another server left behind.
+ */
+public interface StaffStateStore extends AutoCloseable {
+
+	/**
+	 * A player's staff mode entry and the ID of the server that wrote it.
+	 */
+	record SharedEntry(String serverId, NbtCompound data) {
+	}
+
+	String getName();
+
+	/**
+	 * @return This server's staff mode entries by player.
+	 */
+	Map<UUID, NbtCompound> loadStaffData() throws IOException;
+
+	/**
+	 * Replaces this server's staff mode entries with the given ones.
+	 */
+	void saveStaffData(Map<UUID, NbtCompound> entries) throws IOException;
+
+	/**
+	 * Looks up a player's staff mode entry written by any server sharing this store.
+	 *
+	 * @return The entry, or {@code null} if there is none or the store is not shared.
+	 */
+	default SharedEntry findStaffData(UUID playerUuid) throws IOException {
+		return null;
+	}
+
+	/**
+	 * Makes another server's entry this server's, unless it changed owner or was removed meanwhile.
+	 *
+	 * @return Whether the entry now belongs to this server.
+	 */
+	default boolean claimStaffData(UUID playerUuid, String fromServerId) throws IOException {
+		return false;
+	}
+
+	/**
+	 * @return This server's encoded inventory histories by player.
+	 */
+	Map<UUID, NbtCompound> loadHistories() throws IOException;
+
+	/**
+	 * @param history The encoded history, or {@code null} to delete the player's history.
+	 */
+	void saveHistory(UUID playerUuid, NbtCompound history) throws IOException;
+
+	/**
+	 * Saves several histories at once, e.g. on shutdown. {@code null} values delete.
+	 */
+	void saveHistories(Map<UUID, NbtCompound> histories) throws IOException;
+
+	@Override
+	default void close() {
+	}
+}
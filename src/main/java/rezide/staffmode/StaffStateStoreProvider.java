@@ -0,0 +1,23 @@
+package rezide.staffmode;
+
+import java.io.IOException;
+
+/**
+ * Creates a {@link StaffStateStore}. Storage mods register an implementation under the
+ * {@value #ENTRYPOINT} entrypoint in their fabric.mod.json. Providers are instantiated at server
+ * start, so they must not touch their library classes until {@link #create} is called.
+ */
+public interface StaffStateStoreProvider {
+
+	String ENTRYPOINT = "staff-mode:state-store";
+
+	/**
+	 * @return The name used for this store in the {@code stateStore} config value.
+	 */
+	String getName();
+
+	/**
+	 * @param serverId Identifies this server among the servers sharing the store.
+	 */
+	StaffStateStore create(StaffModeConfig config, String serverId) throws IOException;
+}
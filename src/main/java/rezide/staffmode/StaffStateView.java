@@ -0,0 +1,117 @@
+package rezide.staffmode;
+
+import net.minecraft.server.MinecraftServer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Read-only view of staff mode state for other threads, e.g. Discord slash commands. The server thread
+ * publishes immutable copies whenever the state changes, so readers never lock or touch live game
+ * objects; anything that changes the game is handed to the server thread with {@code server.execute}.
+ */
+public final class StaffStateView {
+
+	/**
+	 * A player currently in staff mode.
+	 *
+	 * @param sessionStart Epoch millis, or 0 if there is no active session (e.g. offline after a crash).
+	 * @param deadline Epoch millis when staff mode ends automatically, or 0 without a time limit.
+	 */
+	public record StaffEntry(UUID uuid, String name, boolean online, int sessionId, long sessionStart, long deadline) {
+	}
+
+	/**
+	 * One inventory history snapshot, without its items. {@code index} is the one /inventoryhistory uses.
+	 */
+	public record HistoryEntry(int index, String timestamp, String reason, int stacks, int duplicates) {
+	}
+
+	private static volatile MinecraftServer server;
+	private static volatile List<StaffEntry> staff = List.of();
+	private static final Map<UUID, List<HistoryEntry>> history = new ConcurrentHashMap<>();
+
+	private StaffStateView() {
+	}
+
+	public static List<StaffEntry> getStaff() {
+		return staff;
+	}
+
+	/**
+	 * @return The player's history, newest first, or an empty list.
+	 */
+	public static List<HistoryEntry> getHistory(UUID playerUuid) {
+		return history.getOrDefault(playerUuid, List.of());
+	}
+
+	/**
+	 * Resolves a player name from the name index, which covers everyone with inventory history and
+	 * everyone who joined since the server started.
+	 */
+	public static UUID resolvePlayer(String name) {
+		return PlayerNameIndex.lookup(name);
+	}
+
+	public static int getPlayerCount() {
+		return DiscordBotManager.currentPlayerCount.get();
+	}
+
+	/**
+	 * Restores a history snapshot like {@code /inventoryhistory <player> <index> [part]}. Returns
+	 * immediately; the restore runs on the server thread and {@code reply} is called from there with
+	 * the result.
+	 *
+	 * @param snapshot The snapshot as listed by {@link #getHistory}. The server thread looks it up by
+	 *                 its timestamp and reason, since newer snapshots shift the indexes, and refuses the
+	 *                 restore if it is no longer there.
+	 * @param part The part to restore, e.g. "inventory" or "enderchest"; see {@link #getRestoreParts()}.
+	 */
+	public static void requestRestore(String playerName, HistoryEntry snapshot, String part, String requestedBy, Consumer<String> reply) {
+		MinecraftServer current = server;
+		if (current == null) {
+			reply.accept("§cThe server is not running.");
+			return;
+		}
+		PlayerStateColumns.Part restorePart = PlayerStateColumns.Part.byId(part);
+		if (restorePart == null) {
+			reply.accept("§cUnknown part '" + part + "'. Use one of: " + PlayerStateColumns.Part.idList() + ".");
+			return;
+		}
+		current.execute(() -> StaffMode.restoreInventoryHistory(current, playerName, snapshot.index(), snapshot, restorePart, requestedBy, null, reply));
+	}
+
+	/**
+	 * @return The part names {@link #requestRestore} accepts.
+	 */
+	public static List<String> getRestoreParts() {
+		return Arrays.stream(PlayerStateColumns.Part.values()).map(part -> part.id).toList();
+	}
+
+	static void setServer(MinecraftServer runningServer) {
+		server = runningServer;
+		if (runningServer == null) {
+			staff = List.of();
+			history.clear();
+		}
+	}
+
+	static void publishStaff(List<StaffEntry> entries) {
+		staff = List.copyOf(entries);
+	}
+
+	static void publishHistory(UUID playerUuid, Deque<PlayerInventorySnapshot> snapshots) {
+		List<HistoryEntry> entries = new ArrayList<>(snapshots.size());
+		int index = 0;
+		for (PlayerInventorySnapshot snapshot : snapshots) {
+			entries.add(new HistoryEntry(index++, snapshot.timestamp, snapshot.reason, snapshot.getStackCount(), snapshot.getDuplicateCount()));
+		}
+		history.put(playerUuid, List.copyOf(entries));
+	}
+}
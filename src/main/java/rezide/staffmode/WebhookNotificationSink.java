@@ -0,0 +1,232 @@
+package rezide.staffmode;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.LongFunction;
+
+/**
+ * Posts messages to Discord webhooks with the JDK {@link HttpClient}, without a gateway session.
+ * <p>
+ * One client is shared for all requests so connections are kept alive. Messages for the same
+ * webhook are sent one at a time and in order; Discord's {@code X-RateLimit-*} headers and
+ * {@code 429} responses pause that webhook until its bucket resets instead of failing the message.
+ * All bookkeeping runs on a single scheduler thread, so the server thread only enqueues.
+ */
+public class WebhookNotificationSink implements NotificationSink {
+
+	private static final int MAX_CONTENT_LENGTH = 2000; // Discord's message limit
+	private static final int MAX_ATTEMPTS = 5;
+	private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(10);
+
+	private final HttpClient client;
+	private final LongFunction<URI> webhookResolver;
+	private final ScheduledExecutorService scheduler;
+	private final Map<URI, Route> routes = new ConcurrentHashMap<>();
+
+	// Messages accepted but not yet delivered or dropped, so shutdown can wait for them
+	private final Set<CompletableFuture<Void>> pendingMessages = ConcurrentHashMap.newKeySet();
+
+	public WebhookNotificationSink() {
+		this(HttpClient.newBuilder().connectTimeout(REQUEST_TIMEOUT).build(), WebhookNotificationSink::resolveFromConfig);
+	}
+
+	/**
+	 * @param client          The client used for all requests.
+	 * @param webhookResolver Maps a channel ID to its webhook URL, or {@code null} if there is none.
+	 *                        Lets tests point the sink at a local HTTP stub.
+	 */
+	public WebhookNotificationSink(HttpClient client, LongFunction<URI> webhookResolver) {
+		this.client = client;
+		this.webhookResolver = webhookResolver;
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "StaffMode-Webhook");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	private static URI resolveFromConfig(long channelId) {
+		StaffModeConfig config = StaffModeConfig.getInstance();
+		// Parsed and validated when the config was loaded
+		return channelId != 0L && channelId == config.getServerStatusChannelId() && config.getServerStatusWebhookUri() != null
+				? config.getServerStatusWebhookUri()
+				: config.getAdminLogWebhookUri();
+	}
+
+	@Override
+	public void sendMessage(long channelId, String message) {
+		URI webhook = webhookResolver.apply(channelId);
+		if (webhook == null) {
+			DiscordBotManager.reportDeliveryFailure(channelId, "No webhook URL configured");
+			return;
+		}
+		String content = message.length() > MAX_CONTENT_LENGTH ? message.substring(0, MAX_CONTENT_LENGTH) : message;
+		PendingMessage pending = new PendingMessage(channelId, content);
+		pendingMessages.add(pending.done);
+		pending.done.whenComplete((ignored, throwable) -> pendingMessages.remove(pending.done));
+
+		Route route = routes.computeIfAbsent(webhook, Route::new);
+		route.queue.offerLast(pending);
+		scheduler.execute(() -> drain(route));
+	}
+
+	// Runs on the scheduler thread only
+	private void drain(Route route) {
+		if (route.inFlight || route.queue.isEmpty()) {
+			return;
+		}
+		long waitNanos = route.blockedUntilNanos - System.nanoTime();
+		if (waitNanos > 0) {
+			if (!route.drainScheduled) {
+				route.drainScheduled = true;
+				scheduler.schedule(() -> {
+					route.drainScheduled = false;
+					drain(route);
+				}, waitNanos, TimeUnit.NANOSECONDS);
+			}
+			return;
+		}
+
+		PendingMessage pending = route.queue.pollFirst();
+		route.inFlight = true;
+		pending.attempts++;
+
+		JsonObject payload = new JsonObject();
+		payload.addProperty("content", pending.content);
+		// Player names and chat in logged commands must never ping anyone
+		JsonObject allowedMentions = new JsonObject();
+		allowedMentions.add("parse", new JsonArray());
+		payload.add("allowed_mentions", allowedMentions);
+		HttpRequest request = HttpRequest.newBuilder(route.uri)
+				.timeout(REQUEST_TIMEOUT)
+				.header("Content-Type", "application/json")
+				.POST(HttpRequest.BodyPublishers.ofString(payload.toString()))
+				.build();
+
+		StaffModeEvents.DiscordDispatch dispatchEvent = new StaffModeEvents.DiscordDispatch();
+		dispatchEvent.channelId = pending.channelId;
+		dispatchEvent.begin();
+		client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+				.whenCompleteAsync((response, throwable) -> onResponse(route, pending, dispatchEvent, response, throwable), scheduler);
+	}
+
+	// Runs on the scheduler thread only
+	private void onResponse(Route route, PendingMessage pending, StaffModeEvents.DiscordDispatch dispatchEvent,
+							HttpResponse<Void> response, Throwable throwable) {
+		route.inFlight = false;
+
+		if (throwable != null) {
+			finish(pending, dispatchEvent, throwable.getMessage());
+		} else {
+			applyRateLimit(route, response);
+			int status = response.statusCode();
+			if (status == 429 && pending.attempts < MAX_ATTEMPTS) {
+				// Rate limited: keep the message at the head of the queue and retry after the reset
+				route.queue.offerFirst(pending);
+			} else if (status >= 200 && status < 300) {
+				finish(pending, dispatchEvent, null);
+			} else {
+				finish(pending, dispatchEvent, "HTTP " + status);
+			}
+		}
+		drain(route);
+	}
+
+	/**
+	 * Blocks the route until its rate limit bucket resets if Discord reports it exhausted.
+	 */
+	private static void applyRateLimit(Route route, HttpResponse<Void> response) {
+		double waitSeconds = 0;
+		if (response.statusCode() == 429) {
+			// Retry-After is in whole seconds; X-RateLimit-Reset-After is more precise when present
+			waitSeconds = parseSeconds(response.headers().firstValue("Retry-After")).orElse(1.0);
+			waitSeconds = parseSeconds(response.headers().firstValue("X-RateLimit-Reset-After")).orElse(waitSeconds);
+		} else if (parseSeconds(response.headers().firstValue("X-RateLimit-Remaining")).orElse(1.0) <= 0) {
+			waitSeconds = parseSeconds(response.headers().firstValue("X-RateLimit-Reset-After")).orElse(0.0);
+		}
+		if (waitSeconds > 0) {
+			route.blockedUntilNanos = System.nanoTime() + (long) (waitSeconds * 1_000_000_000L);
+		}
+	}
+
+	private static Optional<Double> parseSeconds(Optional<String> header) {
+		try {
+			return header.map(Double::parseDouble);
+		} catch (NumberFormatException e) {
+			return Optional.empty();
+		}
+	}
+
+	private static void finish(PendingMessage pending, StaffModeEvents.DiscordDispatch dispatchEvent, String failure) {
+		dispatchEvent.success = failure == null;
+		dispatchEvent.commit();
+		if (failure != null) {
+			DiscordBotManager.reportDeliveryFailure(pending.channelId, failure);
+		}
+		pending.done.complete(null);
+	}
+
+	@Override
+	public void flush(long timeoutMs) {
+		if (pendingMessages.isEmpty()) {
+			return;
+		}
+		try {
+			CompletableFuture.allOf(pendingMessages.toArray(new CompletableFuture[0])).get(timeoutMs, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (TimeoutException e) {
+			StaffMode.LOGGER.warn("Timed out waiting for {} Discord webhook message(s) to send.", pendingMessages.size());
+			DiscordBotManager.logToFile(String.format("Timed out waiting for %d Discord webhook message(s) to send.", pendingMessages.size())); // Log to file
+		} catch (ExecutionException e) {
+			// Individual failures are already reported by finish
+		}
+	}
+
+	@Override
+	public void stop() {
+		scheduler.shutdownNow();
+	}
+
+	private static final class Route {
+		private final URI uri;
+		private final ConcurrentLinkedDeque<PendingMessage> queue = new ConcurrentLinkedDeque<>();
+		// Only touched on the scheduler thread
+		private boolean inFlight;
+		private boolean drainScheduled;
+		private long blockedUntilNanos = System.nanoTime();
+
+		private Route(URI uri) {
+			this.uri = uri;
+		}
+	}
+
+	private static final class PendingMessage {
+		private final long channelId;
+		private final String content;
+		private final CompletableFuture<Void> done = new CompletableFuture<>();
+		private int attempts;
+
+		private PendingMessage(long channelId, String content) {
+			this.channelId = channelId;
+			this.content = content;
+		}
+	}
+}
@@ -0,0 +1,22 @@
+package rezide.staffmode;
+
+/**
+ * Built-in provider for the {@code "webhook"} Discord transport.
+ */
+public class WebhookNotificationSinkProvider implements NotificationSinkProvider {
+
+	@Override
+	public String getName() {
+		return "Discord webhook";
+	}
+
+	@Override
+	public boolean isEnabled(StaffModeConfig config) {
+		return config.isWebhookTransport() && config.getAdminLogWebhookUri() != null;
+	}
+
+	@Override
+	public NotificationSink create() {
+		return new WebhookNotificationSink();
+	}
+}
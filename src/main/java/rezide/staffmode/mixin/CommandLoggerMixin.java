@@ -9,7 +9,10 @@ import org.spongepowered.asm.mixin.Mixin;
 import org.spongepowered.asm.mixin.injection.At;
 import org.spongepowered.asm.mixin.injection.Inject;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+import rezide.staffmode.CommandLogFilter;
 import rezide.staffmode.StaffMode;
+import rezide.staffmode.StaffModePerf;
+import rezide.staffmode.StaffSessions;
 import rezide.staffmode.DiscordBotManager;
 
 import java.util.UUID;
@@ -19,18 +22,36 @@ public class CommandLoggerMixin {
 
     @Inject(method = "execute", at = @At("HEAD"))
     private void onExecute(ParseResults<ServerCommandSource> parseResults, String command, CallbackInfo ci) {
-        // Get the source from the ParseResults
-        ServerCommandSource source = parseResults.getContext().getSource(); // Corrected line
+        long perfStart = StaffModePerf.start();
+        try {
+            // Get the source from the ParseResults
+            ServerCommandSource source = parseResults.getContext().getSource(); // Corrected line
 
-        if (source.getEntity() instanceof ServerPlayerEntity player) {
-            UUID uuid = player.getUuid();
-            GameMode mode = player.interactionManager.getGameMode();
+            if (source.getEntity() instanceof ServerPlayerEntity player) {
+                // Journals blocks changed by /fill, /setblock, /clone and the like for rollback
+                StaffSessions.beginAction(player);
+                UUID uuid = player.getUuid();
+                GameMode mode = player.interactionManager.getGameMode();
 
-            if (mode == GameMode.CREATIVE && StaffMode.isPlayerInStaffMode(uuid)) {
-                String playerName = player.getGameProfile().getName();
-                String message = String.format("🛡️ Player **%s** executed command in staff mode: `%s`", playerName, command);
-                DiscordBotManager.sendMessageToChannel(StaffMode.getConfig().getAdminLogChannelId(), message);
+                if (mode == GameMode.CREATIVE && StaffMode.isPlayerInStaffMode(uuid)) {
+                    // Applies the configured include/exclude and redaction rules; null if filtered out
+                    String loggedCommand = CommandLogFilter.filter(command);
+                    if (loggedCommand != null) {
+                        String playerName = player.getGameProfile().getName();
+                        String message = String.format("🛡️ Player **%s** executed command in staff mode: `%s`", playerName, loggedCommand);
+                        DiscordBotManager.sendMessageToChannel(StaffMode.getConfig().getAdminLogChannelId(), message);
+                    }
+                }
             }
+        } finally {
+            StaffModePerf.stop(StaffModePerf.Probe.MIXIN_COMMAND_LOGGER, perfStart);
+        }
+    }
+
+    @Inject(method = "execute", at = @At("RETURN"))
+    private void onExecuteReturn(ParseResults<ServerCommandSource> parseResults, String command, CallbackInfo ci) {
+        if (parseResults.getContext().getSource().getEntity() instanceof ServerPlayerEntity) {
+            StaffSessions.endAction();
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,24 @@
+package rezide.staffmode.mixin;
+
+import net.minecraft.block.entity.BlockEntity;
+import net.minecraft.block.entity.LockableContainerBlockEntity;
+import net.minecraft.block.entity.LootableContainerBlockEntity;
+import net.minecraft.item.ItemStack;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+import rezide.staffmode.StaffProvenance;
+
+// Reports marked staff items put into chests, barrels, shulker boxes, hoppers and other container block entities.
+// Lootable containers override setStack, so both are targeted; one of them may not declare it in every version.
+@Mixin({LockableContainerBlockEntity.class, LootableContainerBlockEntity.class})
+public class ContainerProvenanceMixin {
+
+    @Inject(method = "setStack", at = @At("HEAD"), require = 0)
+    private void onSetStack(int slot, ItemStack stack, CallbackInfo ci) {
+        if (StaffProvenance.isTagged(stack)) {
+            StaffProvenance.onContainerInsert((BlockEntity) (Object) this, stack);
+        }
+    }
+}
@@ -7,8 +7,11 @@ import net.minecraft.world.GameMode;
 import org.spongepowered.asm.mixin.Mixin;
 import org.spongepowered.asm.mixin.injection.At;
 import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
 import rezide.staffmode.StaffMode;
+import rezide.staffmode.StaffModePerf;
+import rezide.staffmode.StaffProvenance;
 import rezide.staffmode.DiscordBotManager;
 
 import java.util.UUID;
@@ -18,23 +21,39 @@ public class PlayerInventoryMixin {
 
     @Inject(method = "insertStack(ILnet/minecraft/item/ItemStack;)Z", at = @At("HEAD"))
     private void onInsertStack(int slot, ItemStack stack, CallbackInfoReturnable<Boolean> cir) {
-        // Get the PlayerInventory instance
-        PlayerInventory inventory = (PlayerInventory) (Object) this;
+        long perfStart = StaffModePerf.start();
+        try {
+            // Get the PlayerInventory instance
+            PlayerInventory inventory = (PlayerInventory) (Object) this;
 
-        // Ensure this is a server-side player inventory
-        if (inventory.player instanceof ServerPlayerEntity player) {
-            UUID uuid = player.getUuid();
-            GameMode mode = player.interactionManager.getGameMode();
+            // Ensure this is a server-side player inventory
+            if (inventory.player instanceof ServerPlayerEntity player) {
+                if (StaffProvenance.isTagged(stack)) {
+                    StaffProvenance.onPlayerReceived(player, stack);
+                }
+                UUID uuid = player.getUuid();
+                GameMode mode = player.interactionManager.getGameMode();
 
-            // Check if the player is in creative mode and staff mode
-            if (mode == GameMode.CREATIVE && StaffMode.isPlayerInStaffMode(uuid)) {
-                String playerName = player.getGameProfile().getName();
-                String itemName = stack.getName().getString();
-                int itemCount = stack.getCount();
+                // Check if the player is in creative mode and staff mode
+                if (mode == GameMode.CREATIVE && StaffMode.isPlayerInStaffMode(uuid)) {
+                    String playerName = player.getGameProfile().getName();
+                    String itemName = stack.getName().getString();
+                    int itemCount = stack.getCount();
 
-                String message = String.format("🛡️ Player **%s** inserted %d x %s into inventory in staff mode.", playerName, itemCount, itemName);
-                DiscordBotManager.sendMessageToChannel(StaffMode.getConfig().getAdminLogChannelId(), message);
+                    String message = String.format("🛡️ Player **%s** inserted %d x %s into inventory in staff mode.", playerName, itemCount, itemName);
+                    DiscordBotManager.sendMessageToChannel(StaffMode.getConfig().getAdminLogChannelId(), message);
+                }
             }
+        } finally {
+            StaffModePerf.stop(StaffModePerf.Probe.MIXIN_INVENTORY_INSERT, perfStart);
+        }
+    }
+
+    // Slot clicks and shift-clicks out of containers place stacks with setStack rather than insertStack
+    @Inject(method = "setStack", at = @At("HEAD"))
+    private void onSetStack(int slot, ItemStack stack, CallbackInfo ci) {
+        if (StaffProvenance.isTagged(stack) && ((PlayerInventory) (Object) this).player instanceof ServerPlayerEntity player) {
+            StaffProvenance.onPlayerReceived(player, stack);
         }
     }
 
@@ -47,21 +66,26 @@ public class PlayerInventoryMixin {
     // Example for removeStack(int slot, int amount)
     @Inject(method = "removeStack(II)Lnet/minecraft/item/ItemStack;", at = @At("HEAD"), cancellable = true)
     private void onRemoveStack(int slot, int amount, CallbackInfoReturnable<ItemStack> cir) {
-        PlayerInventory inventory = (PlayerInventory) (Object) this;
-        if (inventory.player instanceof ServerPlayerEntity player) {
-            UUID uuid = player.getUuid();
-            GameMode mode = player.interactionManager.getGameMode();
+        long perfStart = StaffModePerf.start();
+        try {
+            PlayerInventory inventory = (PlayerInventory) (Object) this;
+            if (inventory.player instanceof ServerPlayerEntity player) {
+                UUID uuid = player.getUuid();
+                GameMode mode = player.interactionManager.getGameMode();
 
-            if (mode == GameMode.CREATIVE && StaffMode.isPlayerInStaffMode(uuid)) {
-                ItemStack removedStack = inventory.getStack(slot).copy(); // Get a copy before it's removed
-                String playerName = player.getGameProfile().getName();
-                String itemName = removedStack.getName().getString();
-                int currentItemCount = removedStack.getCount(); // Get current count for logging purposes
+                if (mode == GameMode.CREATIVE && StaffMode.isPlayerInStaffMode(uuid)) {
+                    ItemStack removedStack = inventory.getStack(slot).copy(); // Get a copy before it's removed
+                    String playerName = player.getGameProfile().getName();
+                    String itemName = removedStack.getName().getString();
+                    int currentItemCount = removedStack.getCount(); // Get current count for logging purposes
 
-                String message = String.format("🛡️ Player **%s** attempting to remove %d x %s from slot %d in staff mode (current count: %d).",
-                        playerName, amount, itemName, slot, currentItemCount);
-                DiscordBotManager.sendMessageToChannel(StaffMode.getConfig().getAdminLogChannelId(), message);
+                    String message = String.format("🛡️ Player **%s** attempting to remove %d x %s from slot %d in staff mode (current count: %d).",
+                            playerName, amount, itemName, slot, currentItemCount);
+                    DiscordBotManager.sendMessageToChannel(StaffMode.getConfig().getAdminLogChannelId(), message);
+                }
             }
+        } finally {
+            StaffModePerf.stop(StaffModePerf.Probe.MIXIN_INVENTORY_REMOVE, perfStart);
         }
     }
 }
\ No newline at end of file
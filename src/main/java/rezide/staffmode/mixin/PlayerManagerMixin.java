@@ -0,0 +1,42 @@
+package rezide.staffmode.mixin;
+
+import com.mojang.authlib.GameProfile;
+import net.minecraft.network.ClientConnection;
+import net.minecraft.server.PlayerManager;
+import net.minecraft.server.network.ConnectedClientData;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.text.Text;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Unique;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+import rezide.staffmode.OfflineInventoryEditor;
+
+import java.net.SocketAddress;
+
+@Mixin(PlayerManager.class)
+public class PlayerManagerMixin {
+
+    @Unique
+    private static final Text INVENTORY_LOCKED_MESSAGE = Text.literal("Your inventory is being restored by staff. Please reconnect in a few seconds.");
+
+    // Keep players out while staff are rewriting their saved inventory
+    @Inject(method = "checkCanJoin", at = @At("HEAD"), cancellable = true)
+    private void onCheckCanJoin(SocketAddress address, GameProfile profile, CallbackInfoReturnable<Text> cir) {
+        if (OfflineInventoryEditor.isLocked(profile.getId())) {
+            cir.setReturnValue(INVENTORY_LOCKED_MESSAGE);
+        }
+    }
+
+    // A player still in the configuration phase passed checkCanJoin but is not in the player list yet,
+    // so an offline edit can start for them; drop them before their player data is read
+    @Inject(method = "onPlayerConnect", at = @At("HEAD"), cancellable = true)
+    private void onPlayerConnect(ClientConnection connection, ServerPlayerEntity player, ConnectedClientData clientData, CallbackInfo ci) {
+        if (OfflineInventoryEditor.isLocked(player.getUuid())) {
+            connection.disconnect(INVENTORY_LOCKED_MESSAGE);
+            ci.cancel();
+        }
+    }
+}
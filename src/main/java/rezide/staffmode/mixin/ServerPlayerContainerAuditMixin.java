@@ -0,0 +1,41 @@
+package rezide.staffmode.mixin;
+
+import net.minecraft.screen.NamedScreenHandlerFactory;
+import net.minecraft.server.network.ServerPlayerEntity;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+import rezide.staffmode.ContainerAudit;
+import rezide.staffmode.StaffModePerf;
+
+import java.util.OptionalInt;
+
+// Counts container contents when a screen opens and logs the net change when it closes
+@Mixin(ServerPlayerEntity.class)
+public class ServerPlayerContainerAuditMixin {
+
+    @Inject(method = "openHandledScreen", at = @At("RETURN"))
+    private void onOpenHandledScreen(NamedScreenHandlerFactory factory, CallbackInfoReturnable<OptionalInt> cir) {
+        if (factory == null || cir.getReturnValue().isEmpty()) {
+            return;
+        }
+        long perfStart = StaffModePerf.start();
+        try {
+            ContainerAudit.onScreenOpened((ServerPlayerEntity) (Object) this, factory);
+        } finally {
+            StaffModePerf.stop(StaffModePerf.Probe.MIXIN_CONTAINER_AUDIT, perfStart);
+        }
+    }
+
+    @Inject(method = "onHandledScreenClosed", at = @At("HEAD"))
+    private void onHandledScreenClosed(CallbackInfo ci) {
+        long perfStart = StaffModePerf.start();
+        try {
+            ContainerAudit.onScreenClosed((ServerPlayerEntity) (Object) this);
+        } finally {
+            StaffModePerf.stop(StaffModePerf.Probe.MIXIN_CONTAINER_AUDIT, perfStart);
+        }
+    }
+}
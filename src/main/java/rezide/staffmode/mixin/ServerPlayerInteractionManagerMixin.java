@@ -0,0 +1,56 @@
+package rezide.staffmode.mixin;
+
+import net.minecraft.item.ItemStack;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.server.network.ServerPlayerInteractionManager;
+import net.minecraft.util.ActionResult;
+import net.minecraft.util.Hand;
+import net.minecraft.util.hit.BlockHitResult;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+import org.spongepowered.asm.mixin.Final;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+import rezide.staffmode.StaffSessions;
+
+// Marks the player whose block break or item use is being processed, so StaffSessions can journal the block changes
+@Mixin(ServerPlayerInteractionManager.class)
+public class ServerPlayerInteractionManagerMixin {
+
+    @Shadow
+    @Final
+    protected ServerPlayerEntity player;
+
+    @Inject(method = "tryBreakBlock", at = @At("HEAD"))
+    private void onTryBreakBlockHead(BlockPos pos, CallbackInfoReturnable<Boolean> cir) {
+        StaffSessions.beginAction(player);
+    }
+
+    @Inject(method = "tryBreakBlock", at = @At("RETURN"))
+    private void onTryBreakBlockReturn(BlockPos pos, CallbackInfoReturnable<Boolean> cir) {
+        StaffSessions.endAction();
+    }
+
+    @Inject(method = "interactBlock", at = @At("HEAD"))
+    private void onInteractBlockHead(ServerPlayerEntity player, World world, ItemStack stack, Hand hand, BlockHitResult hitResult, CallbackInfoReturnable<ActionResult> cir) {
+        StaffSessions.beginAction(player);
+    }
+
+    @Inject(method = "interactBlock", at = @At("RETURN"))
+    private void onInteractBlockReturn(ServerPlayerEntity player, World world, ItemStack stack, Hand hand, BlockHitResult hitResult, CallbackInfoReturnable<ActionResult> cir) {
+        StaffSessions.endAction();
+    }
+
+    @Inject(method = "interactItem", at = @At("HEAD"))
+    private void onInteractItemHead(ServerPlayerEntity player, World world, ItemStack stack, Hand hand, CallbackInfoReturnable<ActionResult> cir) {
+        StaffSessions.beginAction(player);
+    }
+
+    @Inject(method = "interactItem", at = @At("RETURN"))
+    private void onInteractItemReturn(ServerPlayerEntity player, World world, ItemStack stack, Hand hand, CallbackInfoReturnable<ActionResult> cir) {
+        StaffSessions.endAction();
+    }
+}
@@ -0,0 +1,23 @@
+package rezide.staffmode.mixin;
+
+import net.minecraft.entity.Entity;
+import net.minecraft.server.world.ServerWorld;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+import rezide.staffmode.StaffProvenance;
+import rezide.staffmode.StaffSessions;
+
+// Records entities spawned by staff actions and items thrown by players in staff mode, and reports marked staff items hitting the ground
+@Mixin(ServerWorld.class)
+public class ServerWorldEntityTrackingMixin {
+
+    @Inject(method = "spawnEntity", at = @At("RETURN"))
+    private void onSpawnEntity(Entity entity, CallbackInfoReturnable<Boolean> cir) {
+        if (cir.getReturnValueZ()) {
+            StaffSessions.onEntitySpawned((ServerWorld) (Object) this, entity);
+            StaffProvenance.onEntitySpawned((ServerWorld) (Object) this, entity);
+        }
+    }
+}
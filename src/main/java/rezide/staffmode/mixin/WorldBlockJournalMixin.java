@@ -0,0 +1,25 @@
+package rezide.staffmode.mixin;
+
+import net.minecraft.block.BlockState;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.World;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+import rezide.staffmode.StaffSessions;
+
+// Journals block changes caused by players in staff mode; a single static read when no staff action is running
+@Mixin(World.class)
+public abstract class WorldBlockJournalMixin {
+
+    @Inject(method = "setBlockState(Lnet/minecraft/util/math/BlockPos;Lnet/minecraft/block/BlockState;II)Z", at = @At("HEAD"))
+    private void onSetBlockStateHead(BlockPos pos, BlockState state, int flags, int maxUpdateDepth, CallbackInfoReturnable<Boolean> cir) {
+        StaffSessions.beforeBlockChange((World) (Object) this, pos);
+    }
+
+    @Inject(method = "setBlockState(Lnet/minecraft/util/math/BlockPos;Lnet/minecraft/block/BlockState;II)Z", at = @At("RETURN"))
+    private void onSetBlockStateReturn(BlockPos pos, BlockState state, int flags, int maxUpdateDepth, CallbackInfoReturnable<Boolean> cir) {
+        StaffSessions.afterBlockChange((World) (Object) this, pos, cir.getReturnValueZ());
+    }
+}